@@ -0,0 +1,229 @@
+package dev.mamo.craftlangc;
+
+import dev.mamo.craftlangc.ir.*;
+
+import java.util.*;
+
+// Assigns the addresses of the stack frame shared by a function and its helpers. Locals and temporaries whose live
+// ranges don't overlap are packed into the same slot. Helpers are analysed together with their callers: calling a
+// helper reads whatever is live when it's entered and may write whatever it (transitively) writes
+public class Allocator {
+	private final Map<FQN, List<Instruction>> group;
+	private final FQN rootFQN;
+	private final Set<Score> locals = new LinkedHashSet<>();
+	private final Map<FQN, Set<Score>> liveIns = new HashMap<>();
+	private final Map<FQN, Set<Score>> liveOuts = new HashMap<>();
+	private final Map<FQN, Set<Score>> writes = new HashMap<>();
+
+	private Allocator(Map<FQN, List<Instruction>> group, FQN rootFQN, int localCount) {
+		this.group = group;
+		this.rootFQN = rootFQN;
+		for (int i = 0; i < localCount; i++) {
+			locals.add(new FrameScore(i, false));
+		}
+		for (FQN functionFQN : group.keySet()) {
+			liveIns.put(functionFQN, new HashSet<>());
+			liveOuts.put(functionFQN, new HashSet<>());
+			writes.put(functionFQN, new HashSet<>());
+		}
+	}
+
+	// Rewrites the instructions of the group in place and returns the size of the resulting stack frame. Raw commands
+	// may refer to locals by their address, so locals keep their address in groups containing any of them
+	public static int allocate(Map<FQN, List<Instruction>> group, FQN rootFQN, int localCount) {
+		Allocator allocator = new Allocator(group, rootFQN, localCount);
+		boolean pinned = group.values().stream().flatMap(List::stream).anyMatch(Allocator::isCommand);
+
+		allocator.analyze();
+		Map<Score, Set<Score>> interferences = new LinkedHashMap<>();
+		Map<Score, Set<Score>> copies = new HashMap<>();
+		allocator.interfere(interferences, copies);
+
+		Map<Score, Integer> addresses = new HashMap<>();
+		int frameSize = 0;
+		if (pinned) {
+			for (Score local : allocator.locals) {
+				addresses.put(local, ((FrameScore) local).getAddress());
+			}
+			frameSize = localCount;
+		}
+
+		for (Score score : interferences.keySet()) {
+			if (addresses.containsKey(score)) {
+				continue;
+			}
+
+			Set<Integer> taken = new HashSet<>();
+			for (Score neighbor : interferences.get(score)) {
+				Integer address = addresses.get(neighbor);
+				if (address != null) {
+					taken.add(address);
+				}
+			}
+
+			// Prefer the address of a score this one is copied from or to, so that the copy disappears
+			Integer address = null;
+			for (Score related : copies.getOrDefault(score, Collections.emptySet())) {
+				Integer candidate = addresses.get(related);
+				if (candidate != null && !taken.contains(candidate)) {
+					address = candidate;
+					break;
+				}
+			}
+			if (address == null) {
+				address = 0;
+				while (taken.contains(address)) {
+					address++;
+				}
+			}
+
+			addresses.put(score, address);
+			frameSize = Math.max(frameSize, address + 1);
+		}
+
+		for (List<Instruction> instructions : group.values()) {
+			instructions.replaceAll(i -> Instructions.map(i, s -> addresses.containsKey(s) ? new FrameScore(addresses.get(s), false) : s));
+			List<Instruction> result = Optimizer.removeSelfCopies(instructions);
+			instructions.clear();
+			instructions.addAll(result);
+		}
+
+		return frameSize;
+	}
+
+	// Computes the scores live at the entry and at the exit of each function of the group, iterating until the
+	// (possibly recursive) helpers agree with each other
+	private void analyze() {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+
+			for (Map.Entry<FQN, List<Instruction>> entry : group.entrySet()) {
+				Set<Score> functionWrites = new HashSet<>();
+				for (Instruction instruction : entry.getValue()) {
+					functionWrites.addAll(getWrites(instruction));
+				}
+				changed |= writes.get(entry.getKey()).addAll(functionWrites);
+			}
+
+			Map<FQN, Set<Score>> newLiveOuts = new HashMap<>();
+			for (FQN functionFQN : group.keySet()) {
+				newLiveOuts.put(functionFQN, new HashSet<>());
+			}
+
+			for (Map.Entry<FQN, List<Instruction>> entry : group.entrySet()) {
+				List<Instruction> instructions = entry.getValue();
+				Set<Score> live = new HashSet<>(liveOuts.get(entry.getKey()));
+
+				for (ListIterator<Instruction> iterator = instructions.listIterator(instructions.size()); iterator.hasPrevious(); ) {
+					Instruction instruction = iterator.previous();
+					FQN helperFQN = getCalledHelper(instruction);
+					if (helperFQN != null) {
+						newLiveOuts.get(helperFQN).addAll(live);
+					}
+					live.removeAll(Instructions.getKills(instruction));
+					live.addAll(getReads(instruction));
+				}
+
+				changed |= liveIns.get(entry.getKey()).addAll(live);
+			}
+
+			for (Map.Entry<FQN, Set<Score>> entry : newLiveOuts.entrySet()) {
+				changed |= liveOuts.get(entry.getKey()).addAll(entry.getValue());
+			}
+		}
+	}
+
+	// Every score written by an instruction interferes with the scores live right after it, except for the source of a
+	// plain copy, which may share its address with the target
+	private void interfere(Map<Score, Set<Score>> interferences, Map<Score, Set<Score>> copies) {
+		for (Map.Entry<FQN, List<Instruction>> entry : group.entrySet()) {
+			for (Instruction instruction : entry.getValue()) {
+				for (Score score : Instructions.getScores(instruction)) {
+					if (score instanceof FrameScore) {
+						interferences.putIfAbsent(score, new LinkedHashSet<>());
+					}
+				}
+			}
+		}
+
+		for (Map.Entry<FQN, List<Instruction>> entry : group.entrySet()) {
+			List<Instruction> instructions = entry.getValue();
+			Set<Score> live = new HashSet<>(liveOuts.get(entry.getKey()));
+
+			for (ListIterator<Instruction> iterator = instructions.listIterator(instructions.size()); iterator.hasPrevious(); ) {
+				Instruction instruction = iterator.previous();
+				Score copySource = null;
+
+				if (instruction instanceof OperationInstruction) {
+					OperationInstruction operation = (OperationInstruction) instruction;
+					if (operation.getOperator() == ScoreOperator.ASSIGN && operation.getSource() instanceof FrameScore) {
+						copySource = operation.getSource();
+						copies.computeIfAbsent(operation.getTarget(), s -> new LinkedHashSet<>()).add(copySource);
+						copies.computeIfAbsent(copySource, s -> new LinkedHashSet<>()).add(operation.getTarget());
+					}
+				}
+
+				for (Score written : getWrites(instruction)) {
+					if (!(written instanceof FrameScore)) {
+						continue;
+					}
+					for (Score other : live) {
+						if (!other.equals(written) && !other.equals(copySource) && other instanceof FrameScore) {
+							interferences.computeIfAbsent(written, s -> new LinkedHashSet<>()).add(other);
+							interferences.computeIfAbsent(other, s -> new LinkedHashSet<>()).add(written);
+						}
+					}
+				}
+
+				live.removeAll(Instructions.getKills(instruction));
+				live.addAll(getReads(instruction));
+			}
+		}
+	}
+
+	private Set<Score> getReads(Instruction instruction) {
+		Set<Score> reads = Instructions.getReads(instruction);
+		FQN helperFQN = getCalledHelper(instruction);
+		if (helperFQN != null) {
+			reads.addAll(liveIns.get(helperFQN));
+		}
+		if (isCommand(instruction)) {
+			reads.addAll(locals);
+		}
+		return reads;
+	}
+
+	private Set<Score> getWrites(Instruction instruction) {
+		Set<Score> result = Instructions.getWrites(instruction);
+		FQN helperFQN = getCalledHelper(instruction);
+		if (helperFQN != null) {
+			result.addAll(writes.get(helperFQN));
+		}
+		if (isCommand(instruction)) {
+			result.addAll(locals);
+		}
+		return result;
+	}
+
+	// Calls to functions outside of the group, including recursive calls to the function itself, get their own frame
+	private FQN getCalledHelper(Instruction instruction) {
+		if (instruction instanceof ExecuteInstruction) {
+			Instruction body = ((ExecuteInstruction) instruction).getBody();
+			return body != null ? getCalledHelper(body) : null;
+		}
+		if (instruction instanceof CallInstruction) {
+			FQN functionFQN = ((CallInstruction) instruction).getFunctionFQN();
+			return group.containsKey(functionFQN) && !functionFQN.equals(rootFQN) ? functionFQN : null;
+		}
+		return null;
+	}
+
+	private static boolean isCommand(Instruction instruction) {
+		if (instruction instanceof ExecuteInstruction) {
+			Instruction body = ((ExecuteInstruction) instruction).getBody();
+			return body != null && isCommand(body);
+		}
+		return instruction instanceof CommandInstruction;
+	}
+}
\ No newline at end of file
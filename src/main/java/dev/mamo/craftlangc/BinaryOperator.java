@@ -14,5 +14,7 @@ public enum BinaryOperator {
 	LESS_OR_EQUAL,
 	LESS,
 	GREATER_OR_EQUAL,
-	GREATER
+	GREATER,
+	CONDITIONAL_AND,
+	CONDITIONAL_OR
 }
\ No newline at end of file
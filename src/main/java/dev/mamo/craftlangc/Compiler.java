@@ -1,793 +1,538 @@
 package dev.mamo.craftlangc;
 
 import dev.mamo.craftlangc.ast.*;
-import dev.mamo.craftlangc.ast.expression.*;
-import dev.mamo.craftlangc.ast.statement.*;
-import dev.mamo.craftlangc.core.*;
+import dev.mamo.craftlangc.ir.*;
 import dev.mamo.craftlangc.type.*;
 
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
 import java.util.Map.*;
+import java.util.regex.*;
 
 public class Compiler {
 	private static final String NL = "\r\n";
 	private static final String TAB = "\t";
 	private static final boolean TRAILING_NL = false;
+	static final String GLOBAL_OBJECTIVE = "cr_global";
+	private static final String DATA_STORAGE = "craftlang:data";
+	private static final Pattern ID_PATTERN = Pattern.compile("[-0-9a-z_.]+:[-0-9a-z_./]+");
+	private static final Pattern OBJECTIVE_PATTERN = Pattern.compile("cr_[0-9a-z_]+");
 	private static final Map<Path, StringBuilder> BUFFERS = new LinkedHashMap<>();
+	private static final Map<FQN, List<Instruction>> FUNCTIONS = new LinkedHashMap<>();
+	private static final Set<FQN> HELPERS = new HashSet<>();
+	private static Target target;
 
 	private Compiler() {}
 
 	public static void compile(Path base, Collection<Unit> units) throws IOException {
+		compile(base, units, new Options());
+	}
+
+	public static void compile(Path base, Collection<Unit> units, Options options) throws IOException {
 		BUFFERS.clear();
+		FUNCTIONS.clear();
+		HELPERS.clear();
+		target = options.getTarget();
 
 		Map<FQN, Type> types = Resolver.resolveTypes(units);
 		Map<FQN, Store> globals = Resolver.resolveGlobals(units, types);
 		Map<FQN, FunctionDefinition> functions = Resolver.resolveFunctions(units);
 		Map<FQN, Set<FQN>> tags = Resolver.resolveTags(units);
-		Map<Namespace, Integer> maxAddresses = new LinkedHashMap<>();
+		Map<Integer, Map<Integer, List<FQN>>> wheels = Resolver.resolveWheels(units);
+		Interpreter interpreter = new Interpreter(types, functions);
+		Map<FQN, Integer> frameSizes = new HashMap<>();
 
 		// TODO: resolve variables...
 
-		for (Unit unit : units) {
+		// The loader function is shared by the whole data pack and lives next to the functions of the first unit
+		FQN loadFQN = units.isEmpty() ? null : new FQN(getCraftlangNamespace(units.iterator().next().getNamespace()), "load");
+		if (loadFQN != null) {
 			FQN loadTag = new FQN("minecraft", "load");
 			tags.putIfAbsent(loadTag, new HashSet<>());
-			tags.get(loadTag).add(new FQN(getCraftlangNamespace(unit.getNamespace()), "load"));
+			tags.get(loadTag).add(loadFQN);
 		}
 
 		emit(
 			base.resolve("pack.mcmeta"),
 			"{",
 			TAB + "\"pack\": {",
-			TAB + TAB + "\"pack_format\": 4,",
+			TAB + TAB + "\"pack_format\": " + target.getPackFormat() + ',',
 			TAB + TAB + "\"description\": \"\"",
 			TAB + '}',
 			"}"
 		);
 
-		// Compile the functions of each unit
-		for (Unit unit : units) {
-			Namespace namespace = unit.getNamespace();
-			Namespace craftlangNamespace = getCraftlangNamespace(namespace);
-
-			for (FunctionDefinition function : unit.getFunctionDefinitions()) {
-				String functionName = function.getName();
-				Path[] path = {getFunctionPath(base, new FQN(namespace, functionName))};
-				Scope<String, Store>[] locals = Utils.arrayOf(new Scope<>());
-				int[] maxLocalAddress = {0};
-				Deque<Store> stack = new ArrayDeque<>();
-				int[] sp = {0};
-				int[] helperCount = {0};
-
-				// Summon the stack frame entity
-				emit(
-					path[0],
-					"summon minecraft:area_effect_cloud ~ ~ ~ {Tags:[\"cr_frame\"]}",
-					"execute as @e[tag=cr_frame] unless score @s cr_id matches -2147483648.. store result score @s cr_id run scoreboard players add #cr cr_fp 1"
-				);
-
-				// Declare the variables for the function arguments and initialize the scores of the stack frame
-				for (TypeAndName parameter : function.getParameters()) {
-					FQN typeFQN = parameter.getTypeFQN();
-					Type type = types.get(typeFQN);
-					if (type == null) {
-						throw new CompileException(parameter.getSource().getBeginIndex(), "Unknown type: " + typeFQN);
-					}
-
-					String name = parameter.getName();
-					if (locals[0].isDefined(name)) {
-						throw new CompileException(parameter.getSource().getBeginIndex(), "Variable already declared: " + name);
-					}
-
-					locals[0].define(name, new Store(type, sp[0]));
-					for (int i = 0, size = type.size(); i < size; i++) {
-						asSFE(path[0], "run scoreboard players operation @s cr_" + sp[0] + " = #cr cr_" + sp[0]);
-						sp[0]++;
-					}
-				}
-
-				// Declare the variable containing the returned value
-				FQN returnTypeFQN = function.getReturnTypeFQN();
-				Type returnType = null;
-				if (returnTypeFQN != null) {
-					returnType = types.get(returnTypeFQN);
-					locals[0].define(functionName, new Store(returnType, sp[0]));
-					sp[0] += returnType.size();
-				}
-
-				// The expression compiler. Needed for the later defined statement compiler
-				ExpressionVisitor<Void, RuntimeException> expressionCompiler = new ExpressionVisitor<Void, RuntimeException>() {
-					@Override
-					public Void visitBinaryExpression(BinaryExpression expression) {
-						expression.getLeft().accept(this);
-						expression.getRight().accept(this);
-						Store right = stack.pop();
-						Type type = right.getType();
-						sp[0] -= type.size();
-						Store left = stack.getFirst();
-
-						if (!left.getType().equals(type)) {
-							throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-						}
-
-						switch (expression.getOperator()) {
-							case PLUS:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation @s cr_" + left.getAddress() + " += @s cr_" + right.getAddress());
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case MINUS:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation @s cr_" + left.getAddress() + " -= @s cr_" + right.getAddress());
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case TIMES:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation @s cr_" + left.getAddress() + " *= @s cr_" + right.getAddress());
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case DIVIDE:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation @s cr_" + left.getAddress() + " /= @s cr_" + right.getAddress());
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case REMAINDER:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation @s cr_" + left.getAddress() + " %= @s cr_" + right.getAddress());
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case AND:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									asSFE(path[0], "run scoreboard players operation @s cr_" + left.getAddress() + " *= @s cr_" + right.getAddress());
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case XOR:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									asSFE(path[0], "store success score @s cr_" + left.getAddress() + " if score @s cr_" + left.getAddress() + " != @s cr_" + right.getAddress());
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case OR:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									asSFE(path[0], "store success score @s cr_" + left.getAddress() + " unless entity @e[scores={cr_" + left.getAddress() + "=0,cr_" + right.getAddress() + "=0}]");
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case EQUAL:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									asSFE(path[0], "store success score @s cr_" + left.getAddress() + " if score @s cr_" + left.getAddress() + " = @s cr_" + right.getAddress());
-								} else if (type.equals(PrimitiveType.INTEGER)) {
-									int leftAddress = left.getAddress();
-									asSFE(path[0], "store success score @s cr_" + leftAddress + " if score @s cr_" + leftAddress + " = @s cr_" + right.getAddress());
-									left.setType(PrimitiveType.BOOLEAN);
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case NOT_EQUAL:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									asSFE(path[0], "store success score @s cr_" + left.getAddress() + " if score @s cr_" + left.getAddress() + " != @s cr_" + right.getAddress());
-								} else if (type.equals(PrimitiveType.INTEGER)) {
-									int leftAddress = left.getAddress();
-									asSFE(path[0], "store success score @s cr_" + leftAddress + " if score @s cr_" + leftAddress + " != @s cr_" + right.getAddress());
-									left.setType(PrimitiveType.BOOLEAN);
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case LESS_OR_EQUAL:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									int leftAddress = left.getAddress();
-									asSFE(path[0], "store success score @s cr_" + leftAddress + " if score @s cr_" + leftAddress + " <= @s cr_" + right.getAddress());
-									left.setType(PrimitiveType.BOOLEAN);
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case LESS:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									int leftAddress = left.getAddress();
-									asSFE(path[0], "store success score @s cr_" + leftAddress + " if score @s cr_" + leftAddress + " < @s cr_" + right.getAddress());
-									left.setType(PrimitiveType.BOOLEAN);
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case GREATER_OR_EQUAL:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									int leftAddress = left.getAddress();
-									asSFE(path[0], "store success score @s cr_" + leftAddress + " if score @s cr_" + leftAddress + " >= @s cr_" + right.getAddress());
-									left.setType(PrimitiveType.BOOLEAN);
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case GREATER:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									int leftAddress = left.getAddress();
-									asSFE(path[0], "store success score @s cr_" + leftAddress + " if score @s cr_" + leftAddress + " > @s cr_" + right.getAddress());
-									left.setType(PrimitiveType.BOOLEAN);
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							default:
-								assert false : expression.getOperator();
-						}
-
-						return null;
-					}
+		// Clone the functions for the arguments which are constant at their call sites
+		Specializer specializer = new Specializer(types, functions, interpreter);
+		specializer.specialize();
 
-					@Override
-					public Void visitUnaryExpression(UnaryExpression expression) {
-						expression.getOperand().accept(this);
-						Store operand = stack.getFirst();
-						Type type = operand.getType();
-
-						switch (expression.getOperator()) {
-							case NOT:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									int operandAddress = operand.getAddress();
-									asSFE(path[0], "store success score @s cr_" + operandAddress + " if score @s cr_" + operandAddress + " matches 0");
-								} else {
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case PLUS:
-								if (!type.equals(PrimitiveType.INTEGER)) {
-									throw new CompileException(expression.getSource().getEndIndex(), "Unsupported operation");
-								}
-								break;
-
-							case MINUS:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									int tempAddress = sp[0] + 1;
-									emit(
-										path[0],
-										"execute as @e[tag=cr_frame] if score @s cr_id = #cr cr_fp run scoreboard players set @s cr_" + tempAddress + " -1",
-										"execute as @e[tag=cr_frame] if score @s cr_id = #cr cr_fp run scoreboard players operation @s cr_" + operand.getAddress() + " *= @s cr_" + tempAddress
-									);
-									maxAddresses.put(namespace, Math.max(maxAddresses.getOrDefault(namespace, 0), tempAddress));
-								} else {
-									throw new CompileException(expression.getSource().getEndIndex(), "Unsupported operation");
-								}
-								break;
-
-							default:
-								assert false : expression.getOperator();
-								break;
-						}
+		// Pick the compound types kept in NBT data rather than scores
+		Set<Type> storedTypes = StorageSelector.select(types, globals, functions, specializer);
 
-						return null;
-					}
+		// Compile the functions of each unit, along with their clones and the functions running their sliced loops
+		Deque<FunctionCompiler> pending = new ArrayDeque<>();
+		for (Entry<FQN, FunctionDefinition> entry : functions.entrySet()) {
+			pending.add(new FunctionCompiler(types, storedTypes, globals, functions, interpreter, specializer.getNamespace(entry.getKey()), entry.getKey(), entry.getValue()));
+		}
+		while (!pending.isEmpty()) {
+			FunctionCompiler functionCompiler = pending.pop();
+			Map<FQN, List<Instruction>> group = functionCompiler.compile();
+			pending.addAll(functionCompiler.getSlices());
+
+			// Optimize the function together with its helpers, inline the helpers which are left with a single
+			// instruction, then pack their locals and temporaries into as few addresses as possible
+			for (Entry<FQN, List<Instruction>> groupEntry : group.entrySet()) {
+				groupEntry.setValue(Optimizer.optimize(groupEntry.getValue()));
+			}
+			Optimizer.flattenBranches(group, functionCompiler.getFunctionFQN(), functionCompiler.getEntries());
+			for (Entry<FQN, List<Instruction>> groupEntry : group.entrySet()) {
+				groupEntry.setValue(Optimizer.optimize(groupEntry.getValue()));
+			}
+			int frameSize = Allocator.allocate(group, functionCompiler.getFunctionFQN(), functionCompiler.getLocalCount());
+			FUNCTIONS.putAll(group);
+			HELPERS.addAll(group.keySet());
+			HELPERS.remove(functionCompiler.getFunctionFQN());
+			frameSizes.put(functionCompiler.getFunctionFQN(), Math.max(frameSize, functionCompiler.getRegisterCount()));
+			FUNCTIONS.putAll(functionCompiler.getResumers());
+		}
 
-					@Override
-					public Void visitIntegerExpression(IntegerExpression expression) {
-						asSFE(path[0], "run scoreboard players set @s cr_" + sp[0] + ' ' + expression.getValue());
-						stack.push(new Store(PrimitiveType.INTEGER, sp[0]));
-						maxAddresses.put(namespace, Math.max(maxAddresses.getOrDefault(namespace, 0), ++sp[0]));
-						return null;
-					}
+		for (Entry<FQN, FunctionDefinition> entry : functions.entrySet()) {
+			if (entry.getValue().getLifetime() != null) {
+				FUNCTIONS.put(getForgetFQN(entry.getKey()), new ArrayList<>(Collections.singletonList(
+					new CommandInstruction("scoreboard players reset * " + getMemoObjective(entry.getKey()))
+				)));
+			}
+		}
 
-					@Override
-					public Void visitCommandExpression(CommandExpression expression) {
-						emit(path[0], expression.getCommand());
-						return null;
-					}
+		// Periodic functions are run by a dispatcher tagged minecraft:tick. Each period has a wheel, that is, a counter
+		// going round its ticks, and the phases with functions to run are found by a binary search on the counter, so a
+		// tick takes a few checks per period regardless of the number of functions
+		if (loadFQN != null && !wheels.isEmpty()) {
+			FQN tickFQN = new FQN(loadFQN.getNamespace(), "tick");
+			List<Instruction> tick = new ArrayList<>();
+			for (Entry<Integer, Map<Integer, List<FQN>>> entry : wheels.entrySet()) {
+				int period = entry.getKey();
+				Map<Integer, List<FQN>> wheel = entry.getValue();
+				if (period == 1) {
+					tick.add(new CallInstruction(getBucket(tickFQN, period, 0, wheel.get(0))));
+					continue;
+				}
 
-					@Override
-					public Void visitFunctionCallExpression(CallExpression expression) {
-						FQN functionFQN = expression.getFunctionFQN();
-						if (functionFQN.getNamespace() == null) {
-							functionFQN = new FQN(namespace, functionFQN.getName());
-						}
+				Score counter = new PlayerScore("#every" + period, GLOBAL_OBJECTIVE);
+				tick.add(new AddInstruction(counter, 1));
+				tick.add(new ExecuteInstruction(new MatchesCondition(false, counter, period, null), new SetInstruction(counter, 0)));
+				tick.addAll(dispatch(tickFQN, period, counter, new ArrayList<>(wheel.keySet()), wheel));
+			}
+			FUNCTIONS.put(tickFQN, tick);
 
-						if (!functions.containsKey(functionFQN)) {
-							throw new CompileException(expression.getSource().getBeginIndex(), "Unknown function: " + functionFQN);
-						}
+			FQN tickTag = new FQN("minecraft", "tick");
+			tags.putIfAbsent(tickTag, new LinkedHashSet<>());
+			tags.get(tickTag).add(tickFQN);
+		}
 
-						FunctionDefinition function = functions.get(functionFQN);
-						FQN returnTypeFQN = function.getReturnTypeFQN();
-						List<TypeAndName> parameters = function.getParameters();
-						List<Expression> arguments = expression.getArguments();
+		// Drop the functions which can't be reached from a tag, an exported function or a raw command, along with the
+		// objective of the globals if none is used anymore
+		Set<String> objectives = null;
+		if (options.isTreeShaking()) {
+			Set<FQN> roots = new LinkedHashSet<>(options.getExports());
+			for (Set<FQN> tagged : tags.values()) {
+				roots.addAll(tagged);
+			}
+			shake(roots);
+			objectives = getObjectives();
+		}
 
-						if (arguments.size() != parameters.size()) {
-							throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
-						}
+		int maxAddress = 0;
+		for (Entry<FQN, Integer> entry : frameSizes.entrySet()) {
+			if (FUNCTIONS.containsKey(entry.getKey())) {
+				maxAddress = Math.max(maxAddress, entry.getValue());
+			}
+		}
 
-						Iterator<Type> parameterIterator = parameters.stream().map(p -> types.get(p.getTypeFQN())).iterator();
-						int address = 0;
-						for (Expression argumentExpression : arguments) {
-							argumentExpression.accept(this);
-							Store argument = stack.pop();
-							Type type = argument.getType();
-							sp[0] -= type.size();
-
-							if (!type.equals(parameterIterator.next())) {
-								throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
-							}
-
-							int argumentAddress = argument.getAddress();
-							for (int i = 0, typeSize = type.size(); i < typeSize; i++) {
-								asSFE(path[0], "run scoreboard players operation #cr cr_" + (address + i) + " = @s cr_" + (argumentAddress + i));
-							}
-							address += type.size();
-						}
+		// Identical helpers are written only once, even across functions
+		Optimizer.deduplicateHelpers(FUNCTIONS, HELPERS);
 
-						emit(path[0], "function " + getMinecraftId(functionFQN));
+		// Generate the loader function, that is, a function which creates the objectives necessary to pass arguments,
+		// keep local and global variables and return from a function, and fills the constant pool. Globals aren't reset,
+		// so that their values survive reloads
+		if (loadFQN != null) {
+			List<Instruction> load = new ArrayList<>();
 
-						if (returnTypeFQN != null && !returnTypeFQN.equals(new FQN("void"))) {
-							Type returnType = types.get(returnTypeFQN);
-							stack.push(new Store(returnType, sp[0]));
-							for (int i = 0, size = returnType.size(); i < size; i++) {
-								asSFE(path[0], "run scoreboard players operation @s cr_" + sp[0] + " = #cr cr_" + i);
-								sp[0]++;
-							}
-						}
+			load.add(new CommandInstruction("gamerule maxCommandChainLength 2147483647"));
+			load.add(new CommandInstruction("scoreboard objectives add cr_id dummy"));
+			load.add(new CommandInstruction("scoreboard objectives add cr_fp dummy"));
 
-						return null;
-					}
+			if ((!globals.isEmpty() || !wheels.isEmpty()) && (objectives == null || objectives.contains(GLOBAL_OBJECTIVE))) {
+				load.add(new CommandInstruction("scoreboard objectives add " + GLOBAL_OBJECTIVE + " dummy"));
+			}
 
-					@Override
-					public Void visitVariableExpression(VariableExpression expression) {
-						FQN variableFQN = expression.getFQN();
-						boolean[] local = {variableFQN.getNamespace() == null};
-						Store store = local[0] ? locals[0].get(variableFQN.getName()) : globals.get(variableFQN);
+			for (int i = 0; i < maxAddress; i++) {
+				load.add(new CommandInstruction("scoreboard objectives add cr_" + i + " dummy"));
+			}
 
-						if (store == null && local[0]) {
-							globals.get(new FQN(namespace, variableFQN.getName()));
-							local[0] = false;
-						}
+			// The caches of memoized functions start out empty at every load
+			for (Entry<FQN, FunctionDefinition> entry : functions.entrySet()) {
+				String objective = getMemoObjective(entry.getKey());
+				if (entry.getValue().isMemo() && (objectives == null || objectives.contains(objective))) {
+					load.add(new CommandInstruction("scoreboard objectives add " + objective + " dummy"));
+					load.add(new CommandInstruction("scoreboard players reset * " + objective));
+				}
+			}
 
-						if (store == null) {
-							switch (variableFQN.getName()) {
-								case "true":
-									int address = stack.size();
-									asSFE(path[0], "run scoreboard players set @s cr_" + address + " 1");
-									stack.push(new Store(PrimitiveType.BOOLEAN, address));
-									maxAddresses.put(namespace, Math.max(maxAddresses.getOrDefault(namespace, 0), stack.size()));
-									return null;
-
-								case "false":
-									address = stack.size();
-									asSFE(path[0], "run scoreboard players set @s cr_" + address + " 0");
-									stack.push(new Store(PrimitiveType.BOOLEAN, address));
-									maxAddresses.put(namespace, Math.max(maxAddresses.getOrDefault(namespace, 0), stack.size()));
-									return null;
-
-								default:
-									throw new CompileException(expression.getSource().getBeginIndex(), "Unknown variable " + variableFQN);
-							}
-						}
+			// Stored globals are created with all of their members set to 0, unless they're already there
+			for (Store store : globals.values()) {
+				if (storedTypes.contains(store.getType())) {
+					String location = render(FunctionCompiler.getGlobalData(store.getAddress()));
+					load.add(new CommandInstruction("execute unless data " + location + " run data modify " + location + " set value " + FunctionCompiler.getZero(store.getType())));
+				}
+			}
 
-						Type type = store.getType();
-						stack.push(new Store(type, sp[0]));
-						for (int i = 0, typeSize = type.size(); i < typeSize; i++) {
-							asSFE(path[0], "run scoreboard players operation @s cr_" + sp[0] + " = " + (local[0] ? "@s" : "#cr") + " cr_" + store.getAddress());
-							sp[0]++;
+			// Initialize the constant pool with every constant operand used by the data pack
+			Set<Integer> constants = new TreeSet<>();
+			for (List<Instruction> instructions : FUNCTIONS.values()) {
+				for (Instruction instruction : instructions) {
+					for (Score score : Instructions.getScores(instruction)) {
+						if (score instanceof ConstantScore) {
+							constants.add(((ConstantScore) score).getValue());
 						}
-						maxAddresses.put(namespace, Math.max(maxAddresses.getOrDefault(namespace, 0), sp[0]));
-
-						return null;
 					}
-				};
-
-				// The statement compiler. Needed later
-				StatementVisitor<Void, RuntimeException> statementCompiler = new StatementVisitor<Void, RuntimeException>() {
-					@Override
-					public Void visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) {
-						String variableName = statement.getVariableName();
-						if (locals[0].isDefined(variableName)) {
-							throw new CompileException(statement.getSource().getBeginIndex(), "Variable already declared: " + variableName);
-						}
-
-						FQN expectedTypeFQN = statement.getVariableTypeFQN();
-						if (expectedTypeFQN != null && !types.containsKey(expectedTypeFQN)) {
-							throw new CompileException(statement.getSource().getBeginIndex(), "Unknown type: " + expectedTypeFQN);
-						}
-
-						Type expectedType = types.get(expectedTypeFQN);
-						statement.getAssignedValue().accept(expressionCompiler);
-						Store value = stack.getFirst();
-						Type type = value.getType();
-
-						if (expectedType != null && !type.equals(expectedType)) {
-							throw new CompileException(statement.getSource().getBeginIndex(), "Assigned value doesn't match the expected type");
-						}
-
-						locals[0].define(variableName, new Store(type, value.getAddress()));
+				}
+			}
+			if (!constants.isEmpty()) {
+				load.add(new CommandInstruction("scoreboard objectives add " + ConstantScore.OBJECTIVE + " dummy"));
+			}
+			for (int constant : constants) {
+				load.add(new SetInstruction(new ConstantScore(constant), constant));
+			}
 
-						return null;
-					}
+			load.add(new SetInstruction(new PlayerScore("#cr", "cr_fp"), -1));
+			FUNCTIONS.put(loadFQN, load);
+		}
 
-					@Override
-					public Void visitVariableDeclarationStatement(VariableDeclarationStatement statement) {
-						String name = statement.getVariableName();
-						if (locals[0].isDefined(name)) {
-							throw new CompileException(statement.getSource().getBeginIndex(), "Variable already declared: " + name);
-						}
+		// Generate the JSON tag files for each function
+		for (Map.Entry<FQN, Set<FQN>> entry : tags.entrySet()) {
+			Iterator<FQN> functionFQNIterator = entry.getValue().iterator();
+			if (!functionFQNIterator.hasNext()) {
+				continue;
+			}
 
-						FQN typeFQN = statement.getVariableTypeFQN();
-						if (!types.containsKey(typeFQN)) {
-							throw new CompileException(statement.getSource().getBeginIndex(), "Unknown type: " + typeFQN);
-						}
+			StringBuilder json = new StringBuilder("{" + NL + TAB + "\"values\": [");
+			json.append(NL + TAB + TAB + '"').append(getMinecraftId(functionFQNIterator.next())).append('"');
+			while (functionFQNIterator.hasNext()) {
+				json.append(',' + NL + TAB + TAB + '"').append(getMinecraftId(functionFQNIterator.next())).append('"');
+			}
+			json.append(NL + TAB + ']' + NL + '}');
 
-						Type type = types.get(typeFQN);
-						locals[0].define(name, new Store(type, sp[0]));
-						sp[0] += type.size();
-						maxAddresses.put(namespace, Math.max(maxAddresses.getOrDefault(namespace, 0), sp[0]));
-						maxLocalAddress[0] = Math.max(maxLocalAddress[0], sp[0]);
+			emit(getTagPath(base, entry.getKey()), json.toString());
+		}
 
-						return null;
-					}
+		PrintStream irDump = options.getIRDump();
+		if (irDump != null) {
+			dump(irDump);
+		}
 
-					@Override
-					public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
-						FQN variableFQN = statement.getVariableFQN();
-						Store store;
-						String player;
-
-						if (variableFQN.getNamespace() == null) {
-							store = locals[0].get(variableFQN.getName());
-							if (store != null) {
-								player = "@s";
-							} else {
-								store = globals.get(new FQN(namespace, variableFQN.getName()));
-								player = "#cr";
-							}
-						} else {
-							store = globals.get(variableFQN);
-							player = "#cr";
-						}
+		flush(base);
+	}
 
-						if (store == null) {
-							throw new CompileException(statement.getSource().getBeginIndex(), "Undeclared variable " + variableFQN);
-						}
+	private static void shake(Set<FQN> roots) {
+		Map<String, FQN> ids = new HashMap<>();
+		for (FQN functionFQN : FUNCTIONS.keySet()) {
+			ids.put(getMinecraftId(functionFQN), functionFQN);
+		}
 
-						sp[0] = maxLocalAddress[0] + 1;
-						statement.getValue().accept(expressionCompiler);
-						Store value = stack.pop();
-						Type type = value.getType();
-						sp[0] = 0;
+		Set<FQN> reachable = new HashSet<>();
+		Deque<FQN> pending = new ArrayDeque<>(roots);
+		while (!pending.isEmpty()) {
+			FQN functionFQN = pending.pop();
+			List<Instruction> instructions = FUNCTIONS.get(functionFQN);
+			if (instructions == null || !reachable.add(functionFQN)) {
+				continue;
+			}
 
-						if (!type.equals(store.getType())) {
-							throw new CompileException(statement.getSource().getBeginIndex(), "Assigned value doesn't match the expected type");
-						}
+			for (Instruction instruction : instructions) {
+				FQN calleeFQN = Instructions.getCall(instruction);
+				if (calleeFQN != null) {
+					pending.push(calleeFQN);
+				}
 
-						switch (statement.getOperator()) {
-							case EQUAL:
-								asSFE(path[0], "run scoreboard players operation " + player + " cr_" + store.getAddress() + " = @s cr_" + value.getAddress());
-								break;
-
-							case PLUS_EQUAL:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation " + player + " cr_" + store.getAddress() + " += @s cr_" + value.getAddress());
-								} else {
-									throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case MINUS_EQUAL:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation " + player + " cr_" + store.getAddress() + " -= @s cr_" + value.getAddress());
-								} else {
-									throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case TIMES_EQUAL:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation " + player + " cr_" + store.getAddress() + " *= @s cr_" + value.getAddress());
-								} else {
-									throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case DIVIDE_EQUAL:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation " + player + " cr_" + store.getAddress() + " /= @s cr_" + value.getAddress());
-								} else {
-									throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case REMAINDER_EQUAL:
-								if (type.equals(PrimitiveType.INTEGER)) {
-									asSFE(path[0], "run scoreboard players operation " + player + " cr_" + store.getAddress() + " %= @s cr_" + value.getAddress());
-								} else {
-									throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case AND_EQUAL:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									asSFE(path[0], "run scoreboard players operation " + player + " cr_" + store.getAddress() + " *= @s cr_" + value.getAddress());
-								} else {
-									throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case XOR_EQUAL:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									asSFE(path[0], "store success score " + player + " cr_" + store.getAddress() + " if score @s cr_" + store.getAddress() + " != @s cr_" + value.getAddress());
-								} else {
-									throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							case OR_EQUAL:
-								if (type.equals(PrimitiveType.BOOLEAN)) {
-									asSFE(path[0], "store success score " + player + " cr_" + store.getAddress() + " unless entity @e[scores={cr_" + store.getAddress() + "=0,cr_" + value.getAddress() + "=0}]");
-								} else {
-									throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
-								}
-								break;
-
-							default:
-								assert false : statement.getOperator();
+				String command = getCommand(instruction);
+				if (command != null) {
+					Matcher matcher = ID_PATTERN.matcher(command);
+					while (matcher.find()) {
+						FQN referencedFQN = ids.get(matcher.group());
+						if (referencedFQN != null) {
+							pending.push(referencedFQN);
 						}
-
-						return null;
 					}
+				}
+			}
+		}
 
-					@Override
-					public Void visitIfStatement(IfStatement statement) {
-						List<Statement> falseBranch = statement.getFalseBranch();
-						boolean hasFalseBranch = !falseBranch.isEmpty();
-
-						Store condition;
-						Type conditionType;
-						statement.getCondition().accept(expressionCompiler);
-						if (hasFalseBranch) {
-							condition = stack.getFirst();
-							conditionType = condition.getType();
-						} else {
-							condition = stack.pop();
-							conditionType = condition.getType();
-							sp[0] -= conditionType.size();
-						}
-
-						if (!conditionType.equals(PrimitiveType.BOOLEAN)) {
-							throw new CompileException(statement.getCondition().getSource().getBeginIndex(), "Not a boolean expression");
-						}
-
-						{
-							FQN helperFQN = new FQN(craftlangNamespace, function.getName() + '.' + helperCount[0]++);
-							asSFE(path[0], "if score @s cr_" + condition.getAddress() + " matches 1 run function " + getMinecraftId(helperFQN));
-
-							Path p = path[0];
-							path[0] = getFunctionPath(base, helperFQN);
-							locals[0] = new Scope<>(locals[0]);
+		FUNCTIONS.keySet().retainAll(reachable);
+		HELPERS.retainAll(reachable);
+	}
 
-							for (Statement s : statement.getTrueBranch()) {
-								s.accept(this);
-							}
+	// Checks which of the phases the counter is at, halving them until there are few enough to check one by one
+	private static List<Instruction> dispatch(FQN tickFQN, int period, Score counter, List<Integer> phases, Map<Integer, List<FQN>> wheel) {
+		List<Instruction> instructions = new ArrayList<>();
+		if (phases.size() <= 2) {
+			for (int phase : phases) {
+				instructions.add(new ExecuteInstruction(new MatchesCondition(false, counter, phase), new CallInstruction(getBucket(tickFQN, period, phase, wheel.get(phase)))));
+			}
+			return instructions;
+		}
 
-							locals[0] = locals[0].getParent();
-							path[0] = p;
-						}
+		int middle = phases.size() / 2;
+		for (List<Integer> half : Arrays.asList(phases.subList(0, middle), phases.subList(middle, phases.size()))) {
+			if (half.size() == 1) {
+				instructions.addAll(dispatch(tickFQN, period, counter, half, wheel));
+				continue;
+			}
 
-						if (hasFalseBranch) {
-							sp[0] -= stack.pop().getType().size();
-							FQN helperFQN = new FQN(craftlangNamespace, function.getName() + '.' + helperCount[0]++);
-							asSFE(path[0], "if score @s cr_" + condition.getAddress() + " matches 0 run function " + getMinecraftId(helperFQN));
+			int first = half.get(0);
+			int last = half.get(half.size() - 1);
+			FQN nodeFQN = new FQN(tickFQN.getNamespace(), tickFQN.getName() + '.' + period + '.' + first + '-' + last);
+			FUNCTIONS.put(nodeFQN, dispatch(tickFQN, period, counter, half, wheel));
+			instructions.add(new ExecuteInstruction(new MatchesCondition(false, counter, first, last), new CallInstruction(nodeFQN)));
+		}
+		return instructions;
+	}
 
-							Path p = path[0];
-							path[0] = getFunctionPath(base, helperFQN);
-							locals[0] = new Scope<>(locals[0]);
+	// Returns the function running all of the functions due at the phase, which is the function itself if it's alone
+	private static FQN getBucket(FQN tickFQN, int period, int phase, List<FQN> functions) {
+		if (functions.size() == 1) {
+			return functions.get(0);
+		}
 
-							for (Statement s : falseBranch) {
-								s.accept(this);
-							}
+		FQN bucketFQN = new FQN(tickFQN.getNamespace(), tickFQN.getName() + '.' + period + '.' + phase);
+		List<Instruction> bucket = new ArrayList<>();
+		for (FQN functionFQN : functions) {
+			bucket.add(new CallInstruction(functionFQN));
+		}
+		FUNCTIONS.put(bucketFQN, bucket);
+		return bucketFQN;
+	}
 
-							locals[0] = locals[0].getParent();
-							path[0] = p;
-						}
+	// The objectives referenced by the functions, either by their instructions or by their raw commands
+	private static Set<String> getObjectives() {
+		Set<String> objectives = new HashSet<>();
+		for (List<Instruction> instructions : FUNCTIONS.values()) {
+			for (Instruction instruction : instructions) {
+				for (Score score : Instructions.getScores(instruction)) {
+					objectives.add(score.getObjective());
+				}
 
-						return null;
+				String command = getCommand(instruction);
+				if (command != null) {
+					Matcher matcher = OBJECTIVE_PATTERN.matcher(command);
+					while (matcher.find()) {
+						objectives.add(matcher.group());
 					}
+				}
+			}
+		}
+		return objectives;
+	}
 
-					@Override
-					public Void visitWhileStatement(WhileStatement statement) {
-						FQN helper1FQN = new FQN(craftlangNamespace, function.getName() + '.' + helperCount[0]++);
-						String helper1MinecraftId = getMinecraftId(helper1FQN);
-						emit(path[0], "function " + helper1MinecraftId);
-
-						Path p = path[0];
-						path[0] = getFunctionPath(base, helper1FQN);
-
-						statement.getCondition().accept(expressionCompiler);
-						Store condition = stack.pop();
-						Type conditionType = condition.getType();
-						sp[0] -= conditionType.size();
-						if (!conditionType.equals(PrimitiveType.BOOLEAN)) {
-							throw new CompileException(statement.getCondition().getSource().getBeginIndex(), "Not a boolean expression");
-						}
+	private static String getCommand(Instruction instruction) {
+		if (instruction instanceof ExecuteInstruction) {
+			Instruction body = ((ExecuteInstruction) instruction).getBody();
+			return body != null ? getCommand(body) : null;
+		}
+		return instruction instanceof CommandInstruction ? ((CommandInstruction) instruction).getCommand() : null;
+	}
 
-						FQN helper2FQN = new FQN(craftlangNamespace, function.getName() + '.' + helperCount[0]++);
-						asSFE(path[0], "if score @s cr_" + condition.getAddress() + " matches 1 run function " + getMinecraftId(helper2FQN));
-						path[0] = getFunctionPath(base, helper2FQN);
-						locals[0] = new Scope<>(locals[0]);
+	private static void emit(Path path, String... lines) {
+		BUFFERS.putIfAbsent(path, new StringBuilder());
+		StringBuilder buffer = BUFFERS.get(path);
+		for (String line : lines) {
+			buffer.append(line).append(NL);
+		}
+	}
 
-						for (Statement s : statement.getBody()) {
-							s.accept(this);
-						}
+	private static void dump(PrintStream out) {
+		for (Entry<FQN, List<Instruction>> entry : FUNCTIONS.entrySet()) {
+			out.println(entry.getKey() + ":");
+			for (Instruction instruction : entry.getValue()) {
+				out.println(TAB + instruction);
+			}
+			out.println();
+		}
+	}
 
-						locals[0] = locals[0].getParent();
-						emit(path[0], "function " + helper1MinecraftId);
-						path[0] = p;
+	private static void flush(Path base) throws IOException {
+		int nlLength = NL.length();
 
-						return null;
-					}
+		for (Entry<FQN, List<Instruction>> entry : FUNCTIONS.entrySet()) {
+			Path path = getFunctionPath(base, entry.getKey());
+			BUFFERS.putIfAbsent(path, new StringBuilder());
+			for (Instruction instruction : entry.getValue()) {
+				emit(path, render(instruction));
+			}
+		}
 
-					@Override
-					public Void visitDoWhileStatement(DoWhileStatement statement) {
-						FQN helperFQN = new FQN(craftlangNamespace, function.getName() + '.' + helperCount[0]++);
-						String helperMinecraftId = getMinecraftId(helperFQN);
-						emit(path[0], "function " + helperMinecraftId);
+		for (Entry<Path, StringBuilder> entry : BUFFERS.entrySet()) {
+			Path path = entry.getKey();
+			StringBuilder buffer = entry.getValue();
+			int bufferLength = buffer.length();
 
-						Path p = path[0];
-						path[0] = getFunctionPath(base, helperFQN);
-						locals[0] = new Scope<>(locals[0]);
+			if (!TRAILING_NL && bufferLength > 0 && buffer.lastIndexOf(NL) == bufferLength - nlLength) {
+				buffer.delete(bufferLength - nlLength, bufferLength);
+			}
 
-						for (Statement s : statement.getBody()) {
-							s.accept(this);
-						}
+			Path parent = path.getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
 
-						locals[0] = locals[0].getParent();
+			Files.write(path, Arrays.asList(buffer));
+		}
 
-						statement.getCondition().accept(expressionCompiler);
-						Store condition = stack.pop();
-						Type conditionType = condition.getType();
-						sp[0] -= conditionType.size();
-						if (!conditionType.equals(PrimitiveType.BOOLEAN)) {
-							throw new CompileException(statement.getCondition().getSource().getBeginIndex(), "Not a boolean expression");
-						}
+		BUFFERS.clear();
+		FUNCTIONS.clear();
+		HELPERS.clear();
+	}
 
-						asSFE(path[0], "if score @s cr_" + condition.getAddress() + " matches 1 run function " + helperMinecraftId);
-						path[0] = p;
+	// Instructions referencing scores or data of the stack frame are run as the stack frame entity
+	private static String render(Instruction instruction) {
+		String command = instruction.accept(new InstructionVisitor<String, RuntimeException>() {
+			@Override
+			public String visitSetInstruction(SetInstruction instruction) {
+				return "scoreboard players set " + render(instruction.getTarget()) + ' ' + instruction.getValue();
+			}
 
-						return null;
-					}
+			@Override
+			public String visitAddInstruction(AddInstruction instruction) {
+				int value = instruction.getValue();
+				return value >= 0
+					? "scoreboard players add " + render(instruction.getTarget()) + ' ' + value
+					: "scoreboard players remove " + render(instruction.getTarget()) + ' ' + -value;
+			}
 
-					@Override
-					public Void visitExpressionStatement(ExpressionStatement statement) {
-						statement.getExpression().accept(expressionCompiler);
-						stack.poll();
-						sp[0] = 0;
-						return null;
-					}
-				};
+			@Override
+			public String visitOperationInstruction(OperationInstruction instruction) {
+				return "scoreboard players operation " + render(instruction.getTarget()) + ' ' + instruction.getOperator().getSymbol() + ' ' + render(instruction.getSource());
+			}
 
-				// Compile the statements!
-				for (Statement statement : function.getBody()) {
-					statement.accept(statementCompiler);
+			@Override
+			public String visitExecuteInstruction(ExecuteInstruction instruction) {
+				StringBuilder result = new StringBuilder("execute");
+				Score store = instruction.getStore();
+				if (store != null) {
+					result.append(" store success score ").append(render(store));
 				}
-
-				// Kill the stack frame entity
-				if (returnType != null) {
-					int address = locals[0].get(functionName).getAddress();
-					for (int i = 0, returnTypeSize = returnType.size(); i < returnTypeSize; i++) {
-						asSFE(path[0], "run scoreboard players operation #cr cr_" + i + " = @s cr_" + (address + i));
-					}
+				for (Condition condition : instruction.getConditions()) {
+					result.append(' ').append(render(condition));
 				}
-				asSFE(path[0], "run kill @s");
-				emit(path[0], "scoreboard players remove #cr cr_fp 1");
+				Instruction body = instruction.getBody();
+				if (body != null) {
+					result.append(" run ").append(body.accept(this));
+				}
+				return result.toString();
 			}
-		}
 
-		// Generate the loader function for each unit, that is, a function which creates the objectives necessary to
-		// pass arguments, keep local variables and return from a function
-		for (Unit unit : units) {
-			Namespace namespace = unit.getNamespace();
-			Path path = getFunctionPath(base, new FQN(getCraftlangNamespace(namespace), "load"));
+			@Override
+			public String visitCallInstruction(CallInstruction instruction) {
+				String storage = instruction.getStorage();
+				return "function " + getMinecraftId(instruction.getFunctionFQN()) + (storage != null ? " with storage " + storage : "");
+			}
 
-			emit(
-				path,
-				"gamerule maxCommandChainLength 2147483647",
-				"scoreboard objectives add cr_id dummy",
-				"scoreboard objectives add cr_fp dummy"
-			);
+			@Override
+			public String visitCommandInstruction(CommandInstruction instruction) {
+				return instruction.getCommand();
+			}
 
-			for (Store global : globals.values()) {
-				emit(path, "scoreboard objectives add cr_" + global.getAddress() + " dummy");
+			@Override
+			public String visitPushFrameInstruction(PushFrameInstruction instruction) {
+				return String.join(NL, target.getPushFrame());
 			}
 
-			for (int i = 0, maxAddress = maxAddresses.getOrDefault(namespace, 0); i < maxAddress; i++) {
-				emit(path, "scoreboard objectives add cr_" + i + " dummy");
+			@Override
+			public String visitPopFrameInstruction(PopFrameInstruction instruction) {
+				return String.join(NL, target.getPopFrame());
 			}
 
-			emit(path, "scoreboard players set #cr cr_fp -1");
-		}
+			// The new entity is the only one with the tag that has no id yet
+			@Override
+			public String visitParkFrameInstruction(ParkFrameInstruction instruction) {
+				String asParked = "execute as " + target.getFrameSelector(instruction.getTag()) + " unless score @s cr_id matches -2147483648.. run ";
+				StringBuilder result = new StringBuilder(target.getSummon(instruction.getTag(), true));
+				for (int i = 0, size = instruction.getSize(); i < size; i++) {
+					result.append(NL).append(asParked).append("scoreboard players operation @s cr_").append(i).append(" = #cr cr_").append(i);
+				}
+				return result.append(NL).append(asParked).append("scoreboard players operation @s cr_id = #cr cr_").append(instruction.getSize())
+					.append(NL).append("schedule function ").append(getMinecraftId(instruction.getResumeFQN())).append(" 1t")
+					.toString();
+			}
 
-		// Generate the JSON tag files for each function
-		for (Map.Entry<FQN, Set<FQN>> entry : tags.entrySet()) {
-			Iterator<FQN> functionFQNIterator = entry.getValue().iterator();
-			if (!functionFQNIterator.hasNext()) {
-				continue;
+			@Override
+			public String visitSetDataInstruction(SetDataInstruction instruction) {
+				return "data modify " + render(instruction.getTarget()) + " set value " + instruction.getValue();
 			}
 
-			StringBuilder json = new StringBuilder("{" + NL + TAB + "\"values\": [");
-			json.append(NL + TAB + TAB + '"').append(getMinecraftId(functionFQNIterator.next())).append('"');
-			while (functionFQNIterator.hasNext()) {
-				json.append(',' + NL + TAB + TAB + '"').append(getMinecraftId(functionFQNIterator.next())).append('"');
+			@Override
+			public String visitCopyDataInstruction(CopyDataInstruction instruction) {
+				return "data modify " + render(instruction.getTarget()) + " set from " + render(instruction.getSource());
 			}
-			json.append(NL + TAB + ']' + NL + '}');
 
-			emit(getTagPath(base, entry.getKey()), json.toString());
-		}
+			@Override
+			public String visitLoadDataInstruction(LoadDataInstruction instruction) {
+				return "execute store result score " + render(instruction.getTarget()) + " run data get " + render(instruction.getSource());
+			}
 
-		flush();
-	}
+			@Override
+			public String visitSaveDataInstruction(SaveDataInstruction instruction) {
+				return "execute store result " + render(instruction.getTarget()) + " int 1 run scoreboard players get " + render(instruction.getSource());
+			}
+		});
 
-	private static void emit(Path path, String... lines) {
-		BUFFERS.putIfAbsent(path, new StringBuilder());
-		StringBuilder buffer = BUFFERS.get(path);
-		for (String line : lines) {
-			buffer.append(line).append(NL);
+		if (Instructions.getScores(instruction).stream().noneMatch(s -> s instanceof FrameScore) && Instructions.getLocations(instruction).stream().noneMatch(DataLocation::isFrame)) {
+			return command;
 		}
+		String asFrame = target.getAsFrame();
+		return command.startsWith("execute ") ? asFrame + command.substring("execute ".length()) : asFrame + "run " + command;
 	}
 
-	private static void asSFE(Path path, String... commands) {
-		for (String command : commands) {
-			emit(path, "execute as @e[tag=cr_frame] if score @s cr_id = #cr cr_fp " + command);
-		}
-	}
+	private static String render(Condition condition) {
+		return condition.accept(new ConditionVisitor<String, RuntimeException>() {
+			@Override
+			public String visitComparisonCondition(ComparisonCondition condition) {
+				return (condition.isNegated() ? "unless" : "if") + " score " + render(condition.getLeft()) + ' ' + condition.getOperator().getSymbol() + ' ' + render(condition.getRight());
+			}
 
-	private static void flush() throws IOException {
-		int nlLength = NL.length();
+			@Override
+			public String visitMatchesCondition(MatchesCondition condition) {
+				return (condition.isNegated() ? "unless" : "if") + " score " + render(condition.getScore()) + " matches " + condition.getRange();
+			}
+		});
+	}
 
-		for (Entry<Path, StringBuilder> entry : BUFFERS.entrySet()) {
-			Path path = entry.getKey();
-			StringBuilder buffer = entry.getValue();
-			int bufferLength = buffer.length();
+	private static String render(Score score) {
+		return score.getHolder() + ' ' + score.getObjective();
+	}
 
-			if (!TRAILING_NL && buffer.lastIndexOf(NL) == bufferLength - nlLength) {
-				buffer.delete(bufferLength - nlLength, bufferLength);
-			}
+	// Records kept on a stack frame are in the data of its marker, which is free for custom tags
+	private static String render(DataLocation location) {
+		return location.isFrame() ? "entity @s data." + location.getPath() : "storage " + DATA_STORAGE + ' ' + location.getPath();
+	}
 
-			Path parent = path.getParent();
-			if (parent != null) {
-				Files.createDirectories(parent);
-			}
+	// The target of the data pack being compiled
+	static Target getTarget() {
+		return target;
+	}
 
-			Files.write(path, Arrays.asList(buffer));
-		}
+	// The objective caching the results of a memoized function, held by fake players named after the key of the arguments
+	static String getMemoObjective(FQN functionFQN) {
+		return "cr_m" + Integer.toHexString(getMinecraftId(functionFQN).hashCode());
+	}
 
-		BUFFERS.clear();
+	// The function clearing the cache of a memoized function once its lifetime is over
+	static FQN getForgetFQN(FQN functionFQN) {
+		return new FQN(getCraftlangNamespace(functionFQN.getNamespace()), functionFQN.getName() + ".forget");
 	}
 
-	private static Namespace getCraftlangNamespace(Namespace namespace) {
+	static Namespace getCraftlangNamespace(Namespace namespace) {
 		List<String> craftlangNamespaceComponents = new ArrayList<>(namespace.getComponents());
 		craftlangNamespaceComponents.add(".craftlang");
 		return new Namespace(craftlangNamespaceComponents);
@@ -812,7 +557,7 @@ public class Compiler {
 		return path.resolve(tag.getName() + ".json");
 	}
 
-	private static String getMinecraftId(FQN FQN) {
+	static String getMinecraftId(FQN FQN) {
 		Iterator<String> namespaceComponentsIterator = FQN.getNamespace().getComponents().iterator();
 		StringBuilder result = new StringBuilder(namespaceComponentsIterator.next()).append(':');
 		while (namespaceComponentsIterator.hasNext()) {
@@ -821,10 +566,46 @@ public class Compiler {
 		return result.append(FQN.getName()).toString();
 	}
 
+	public static class Options {
+		private PrintStream irDump = null;
+		private boolean treeShaking = false;
+		private Target target = new Target(Target.MIN_PACK_FORMAT);
+		private final Set<FQN> exports = new LinkedHashSet<>();
+
+		public PrintStream getIRDump() {
+			return irDump;
+		}
+
+		public void setIRDump(PrintStream irDump) {
+			this.irDump = irDump;
+		}
+
+		public boolean isTreeShaking() {
+			return treeShaking;
+		}
+
+		public void setTreeShaking(boolean treeShaking) {
+			this.treeShaking = treeShaking;
+		}
+
+		public Target getTarget() {
+			return target;
+		}
+
+		public void setTarget(Target target) {
+			this.target = Objects.requireNonNull(target);
+		}
+
+		// The functions to keep when tree shaking, besides the tagged ones and the ones referenced by raw commands
+		public Set<FQN> getExports() {
+			return exports;
+		}
+	}
+
 	public static class CompileException extends RuntimeException {
 		private final int position;
 
-		private CompileException(int position, String message) {
+		CompileException(int position, String message) {
 			super(message);
 			this.position = position;
 		}
@@ -0,0 +1,2826 @@
+package dev.mamo.craftlangc;
+
+import dev.mamo.craftlangc.Compiler.*;
+import dev.mamo.craftlangc.ast.*;
+import dev.mamo.craftlangc.ast.expression.*;
+import dev.mamo.craftlangc.ast.statement.*;
+import dev.mamo.craftlangc.core.*;
+import dev.mamo.craftlangc.ir.*;
+import dev.mamo.craftlangc.type.*;
+
+import java.util.*;
+
+// Lowers a single function to instructions. The bodies of control flow statements are put in helper functions, which
+// share the stack frame of the function
+public class FunctionCompiler {
+	private static final int MAX_UNROLLED_SIZE = 32;
+	private static final int MAX_UNROLL_FACTOR = 4;
+	private static final int MAX_TRIP_COUNT = 65536;
+	private static final int MAX_MEMO_SIZE = 64;
+	private static final int MIN_MACRO_LENGTH = 16;
+	private static final String MACRO_STORAGE = "craftlang:macro";
+	// Stands for the types of the parameters of a sliced loop, which are given to its compiler directly
+	private static final FQN SLICE_TYPE_FQN = new FQN(".slice");
+
+	private final Map<FQN, Type> types;
+	private final Set<Type> storedTypes;
+	private final Map<FQN, Store> globals;
+	private final Map<FQN, FunctionDefinition> functions;
+	private final Interpreter interpreter;
+	private final Namespace namespace;
+	private final FunctionDefinition function;
+	private final FQN functionFQN;
+	private final Map<FQN, List<Instruction>> group = new LinkedHashMap<>();
+	private final Set<Statement> tails = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<Expression, Value> hoisted = new IdentityHashMap<>();
+	private final List<FunctionCompiler> slices = new ArrayList<>();
+	private final Map<FQN, List<Instruction>> resumers = new LinkedHashMap<>();
+	private final List<FQN> blocks = new ArrayList<>();
+	private final Set<FQN> entries = new HashSet<>();
+	private WhileStatement slicedLoop;
+	private final Map<String, Type> sliceTypes = new HashMap<>();
+	private FQN current;
+	private Score again;
+	private Score state;
+	private Score delay;
+	private FQN parkFQN;
+	private int memoSize;
+	private Scope<String, Store> locals = new Scope<>();
+	private int localCount = 0;
+	private int dataCount = 0;
+	private int temporaryCount = 0;
+	private int registerCount = 0;
+	private int helperCount = 0;
+
+	public FunctionCompiler(Map<FQN, Type> types, Set<Type> storedTypes, Map<FQN, Store> globals, Map<FQN, FunctionDefinition> functions, Interpreter interpreter, Namespace namespace, FQN functionFQN, FunctionDefinition function) {
+		this.types = types;
+		this.storedTypes = storedTypes;
+		this.globals = globals;
+		this.functions = functions;
+		this.interpreter = interpreter;
+		this.namespace = namespace;
+		this.function = function;
+		this.functionFQN = functionFQN;
+	}
+
+	public FQN getFunctionFQN() {
+		return functionFQN;
+	}
+
+	public int getLocalCount() {
+		return localCount;
+	}
+
+	public int getRegisterCount() {
+		return registerCount;
+	}
+
+	// The compilers of the functions running the sliced loops of this one, available once it's compiled
+	public List<FunctionCompiler> getSlices() {
+		return slices;
+	}
+
+	// The functions passing the saved state of a sliced loop or an async function back to it once its wait is over. They
+	// run outside of any frame
+	public Map<FQN, List<Instruction>> getResumers() {
+		return resumers;
+	}
+
+	// The helpers which are called from outside of the group, as the resumers do
+	public Set<FQN> getEntries() {
+		return entries;
+	}
+
+	// Returns the instructions of the function followed by the ones of its helpers
+	public Map<FQN, List<Instruction>> compile() {
+		String functionName = function.getName();
+		group.put(functionFQN, new ArrayList<>());
+		current = functionFQN;
+
+		// A memoized function looks its arguments up in its cache first, and only runs its body in a new frame on a miss
+		if (function.isMemo()) {
+			current = compileLookup();
+		}
+
+		// Summon the stack frame entity
+		emit(new PushFrameInstruction());
+
+		// Declare the variables for the function arguments and initialize the scores of the stack frame
+		for (TypeAndName parameter : function.getParameters()) {
+			FQN typeFQN = parameter.getTypeFQN();
+			Type type = typeFQN.equals(SLICE_TYPE_FQN) ? sliceTypes.get(parameter.getName()) : types.get(typeFQN);
+			if (type == null) {
+				throw new CompileException(parameter.getSource().getBeginIndex(), "Unknown type: " + typeFQN);
+			}
+
+			String name = parameter.getName();
+			if (locals.isDefined(name)) {
+				throw new CompileException(parameter.getSource().getBeginIndex(), "Variable already declared: " + name);
+			}
+
+			// Stored records are passed in the data storage rather than in the registers
+			if (storedTypes.contains(type)) {
+				locals.define(name, new Store(type, dataCount));
+				emit(new CopyDataInstruction(getLocalData(dataCount++), getArgumentData(function.getParameters().indexOf(parameter))));
+				continue;
+			}
+
+			locals.define(name, new Store(type, localCount));
+			for (int i = 0, size = type.size(); i < size; i++) {
+				emit(new OperationInstruction(getLocalScore(localCount), ScoreOperator.ASSIGN, getRegisterScore(localCount)));
+				localCount++;
+			}
+		}
+
+		// The key of the cache entry is passed in the register after the arguments
+		Score key = null;
+		registerCount = localCount;
+		if (function.isMemo()) {
+			key = getLocalScore(localCount++);
+			emit(new OperationInstruction(key, ScoreOperator.ASSIGN, getKeyRegister()));
+			registerCount = Math.max(localCount, 2);
+		}
+
+		// Declare the variable containing the returned value
+		Type returnType = getReturnType(function);
+		if (returnType != null && storedTypes.contains(returnType)) {
+			locals.define(functionName, new Store(returnType, dataCount));
+			emit(new SetDataInstruction(getLocalData(dataCount++), getZero(returnType)));
+		} else if (returnType != null) {
+			locals.define(functionName, new Store(returnType, localCount));
+			localCount += returnType.size();
+			registerCount = Math.max(registerCount, returnType.size());
+		}
+
+		// Compile the statements! Calls of the function to itself which are the last thing it does reuse its frame: they
+		// update the parameters in place and ask for another pass of the body, which is run in a loop
+		StatementCompiler statementCompiler = new StatementCompiler();
+		findTails(function.getBody());
+		if (function.isAsync()) {
+			if (returnType != null) {
+				throw new CompileException(function.getSource().getBeginIndex(), "An async function can't return a value");
+			}
+			statementCompiler.compileAsync(function.getBody());
+		} else if (tails.stream().noneMatch(this::isTailCall)) {
+			statementCompiler.compileStatements(function.getBody());
+		} else {
+			FQN loopFQN = createHelper();
+			again = getLocalScore(localCount++);
+			emit(new CallInstruction(loopFQN));
+			group.get(loopFQN).add(new SetInstruction(again, 0));
+			statementCompiler.compileBlock(loopFQN, function.getBody());
+			group.get(loopFQN).add(new ExecuteInstruction(new MatchesCondition(false, again, 1), new CallInstruction(loopFQN)));
+		}
+
+		// Kill the stack frame entity
+		if (returnType != null && storedTypes.contains(returnType)) {
+			emit(new CopyDataInstruction(getReturnData(), getData(locals.get(functionName), true)));
+		} else if (returnType != null) {
+			copy(getRegisterScores(0, returnType.size()), getScores(locals.get(functionName), true));
+		}
+		if (key != null) {
+			compileStore(key);
+		}
+		emit(new PopFrameInstruction());
+
+		return group;
+	}
+
+	// Emits the lookup of the arguments in the cache of the memoized function and returns the helper running its body on a
+	// miss. Each argument has to be within a small range for the call to be cached: the key is the number the arguments
+	// are the digits of, or -1 if one of them is out of range. Entries are fake players of an objective of their own,
+	// and the ones which aren't set yet have no score at all
+	private FQN compileLookup() {
+		int position = function.getSource().getBeginIndex();
+		if (function.isAsync()) {
+			throw new CompileException(position, "Can't memoize an async function");
+		}
+		if (!interpreter.isPure(functionFQN)) {
+			throw new CompileException(position, "Can't memoize an impure function: " + functionFQN);
+		}
+		Type returnType = getReturnType(function);
+		if (returnType == null || returnType.size() != 1) {
+			throw new CompileException(position, "A memoized function must return an int or a bool");
+		}
+
+		// Bools take two digits, and the ints share what's left of the cache evenly
+		List<TypeAndName> parameters = function.getParameters();
+		int boolCount = 0;
+		for (TypeAndName parameter : parameters) {
+			Type type = types.get(parameter.getTypeFQN());
+			if (type == PrimitiveType.BOOLEAN) {
+				boolCount++;
+			} else if (type == null || type.size() != 1) {
+				throw new CompileException(parameter.getSource().getBeginIndex(), "A memoized function can only take int and bool parameters");
+			}
+		}
+		int intCount = parameters.size() - boolCount;
+		int range = 1;
+		if (intCount > 0) {
+			while (Math.pow(range + 1, intCount) * Math.pow(2, boolCount) <= MAX_MEMO_SIZE) {
+				range++;
+			}
+		}
+		if (Math.pow(2, boolCount) > MAX_MEMO_SIZE || intCount > 0 && range < 2) {
+			throw new CompileException(position, "Too many parameters to memoize: " + parameters.size());
+		}
+
+		int parameterCount = parameters.size();
+		Score key = getKeyRegister();
+		List<Condition> conditions = new ArrayList<>();
+		List<Instruction> keyInstructions = new ArrayList<>();
+		memoSize = 1;
+		for (int i = parameterCount - 1; i >= 0; i--) {
+			int digits = types.get(parameters.get(i).getTypeFQN()) == PrimitiveType.BOOLEAN ? 2 : range;
+			conditions.add(new MatchesCondition(false, getRegisterScore(i), 0, digits - 1));
+			if (i < parameterCount - 1) {
+				keyInstructions.add(new OperationInstruction(key, ScoreOperator.MULTIPLY, new ConstantScore(digits)));
+				keyInstructions.add(new OperationInstruction(key, ScoreOperator.ADD, getRegisterScore(i)));
+			} else {
+				keyInstructions.add(new OperationInstruction(key, ScoreOperator.ASSIGN, getRegisterScore(i)));
+			}
+			memoSize *= digits;
+		}
+		if (parameterCount == 0) {
+			emit(new SetInstruction(key, 0));
+		} else {
+			emit(new SetInstruction(key, -1));
+			emit(new ExecuteInstruction(conditions, null, getAction(keyInstructions)));
+		}
+
+		// A hit passes the cached value back and sets the key to -2, so that the body is skipped. The search tries the
+		// lower half before the upper one, so a hit can't be mistaken for another key
+		String objective = Compiler.getMemoObjective(functionFQN);
+		List<Instruction> hitActions = new ArrayList<>();
+		for (int i = 0; i < memoSize; i++) {
+			Score entry = new PlayerScore("#c" + i, objective);
+			Condition cached = new MatchesCondition(false, entry, Integer.MIN_VALUE, null);
+			hitActions.add(getAction(Arrays.asList(
+				new ExecuteInstruction(cached, new OperationInstruction(getRegisterScore(0), ScoreOperator.ASSIGN, entry)),
+				new ExecuteInstruction(cached, new SetInstruction(key, -2))
+			)));
+		}
+		compileElementDecision(key, memoSize, hitActions, null);
+
+		FQN bodyFQN = createHelper();
+		emit(new ExecuteInstruction(new MatchesCondition(true, key, -2), new CallInstruction(bodyFQN)));
+		return bodyFQN;
+	}
+
+	// The register after the arguments, which is never the one the cached value is passed back in
+	private Score getKeyRegister() {
+		return getRegisterScore(Math.max(function.getParameters().size(), 1));
+	}
+
+	// Emits the store of the returned value in the entry of the cache the key picks, if any
+	private void compileStore(Score key) {
+		String objective = Compiler.getMemoObjective(functionFQN);
+		List<Instruction> storeActions = new ArrayList<>();
+		for (int i = 0; i < memoSize; i++) {
+			storeActions.add(new OperationInstruction(new PlayerScore("#c" + i, objective), ScoreOperator.ASSIGN, getRegisterScore(0)));
+		}
+		compileElementDecision(key, memoSize, storeActions, null);
+	}
+
+	private Type getReturnType(FunctionDefinition function) {
+		FQN returnTypeFQN = function.getReturnTypeFQN();
+		if (returnTypeFQN == null || returnTypeFQN.equals(new FQN("void"))) {
+			return null;
+		}
+
+		Type returnType = types.get(returnTypeFQN);
+		if (returnType == null) {
+			throw new CompileException(function.getSource().getBeginIndex(), "Unknown type: " + returnTypeFQN);
+		}
+		return returnType;
+	}
+
+	// Collects the statements which are the last thing the function does
+	private void findTails(List<Statement> block) {
+		if (block.isEmpty()) {
+			return;
+		}
+
+		Statement last = block.get(block.size() - 1);
+		tails.add(last);
+		if (last instanceof IfStatement) {
+			findTails(((IfStatement) last).getTrueBranch());
+			findTails(((IfStatement) last).getFalseBranch());
+		} else if (last instanceof MatchStatement) {
+			((MatchStatement) last).getCases().forEach(c -> findTails(c.getBody()));
+			findTails(((MatchStatement) last).getOtherwise());
+		}
+	}
+
+	// Whether the statement is a call of the function to itself which is the last thing it does, either on its own or as
+	// the value of its return variable
+	private boolean isTailCall(Statement statement) {
+		if (function.isAsync() || !tails.contains(statement)) {
+			return false;
+		}
+		if (statement instanceof VariableAssignmentStatement) {
+			VariableAssignmentStatement assignment = (VariableAssignmentStatement) statement;
+			return assignment.getOperator() == AssignmentOperator.EQUAL && assignment.getVariableFQN().equals(new FQN(function.getName())) && isSelfCall(assignment.getValue());
+		}
+		return statement instanceof ExpressionStatement && getReturnType(function) == null && isSelfCall(((ExpressionStatement) statement).getExpression());
+	}
+
+	private boolean isSelfCall(Expression expression) {
+		return expression instanceof CallExpression && resolveFunction(((CallExpression) expression).getFunctionFQN()).equals(functionFQN);
+	}
+
+	// Whether running the statement might suspend the function
+	private static boolean mayYield(Statement statement) {
+		if (statement instanceof IfStatement) {
+			return mayYield(((IfStatement) statement).getTrueBranch()) || mayYield(((IfStatement) statement).getFalseBranch());
+		}
+		if (statement instanceof WhileStatement) {
+			return mayYield(((WhileStatement) statement).getBody());
+		}
+		if (statement instanceof DoWhileStatement) {
+			return mayYield(((DoWhileStatement) statement).getBody());
+		}
+		if (statement instanceof MatchStatement) {
+			return ((MatchStatement) statement).getCases().stream().anyMatch(c -> mayYield(c.getBody())) || mayYield(((MatchStatement) statement).getOtherwise());
+		}
+		return statement instanceof YieldStatement;
+	}
+
+	private static boolean mayYield(List<Statement> block) {
+		return block.stream().anyMatch(FunctionCompiler::mayYield);
+	}
+
+	// Returns the ranges of the cases sorted by their lowest value, as the lowest and highest values followed by the index
+	// of the case. No value can be matched by more than one range
+	private static List<int[]> getRanges(MatchStatement statement) {
+		List<int[]> ranges = new ArrayList<>();
+		List<MatchCase> cases = statement.getCases();
+		for (int i = 0, caseCount = cases.size(); i < caseCount; i++) {
+			for (MatchRange range : cases.get(i).getRanges()) {
+				if (range.getMin() > range.getMax()) {
+					throw new CompileException(range.getSource().getBeginIndex(), "Invalid range: " + range.getMin() + ".." + range.getMax());
+				}
+				ranges.add(new int[] {range.getMin(), range.getMax(), i});
+			}
+		}
+
+		ranges.sort(Comparator.comparingInt(r -> r[0]));
+		for (int i = 1, rangeCount = ranges.size(); i < rangeCount; i++) {
+			if (ranges.get(i)[0] <= ranges.get(i - 1)[1]) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Value matched by more than one case: " + ranges.get(i)[0]);
+			}
+		}
+		return ranges;
+	}
+
+	private FQN createHelper() {
+		FQN helperFQN = new FQN(Compiler.getCraftlangNamespace(namespace), functionFQN.getName() + '.' + helperCount++);
+		group.put(helperFQN, new ArrayList<>());
+		return helperFQN;
+	}
+
+	// Creates a helper the dispatcher of an async function runs when the state is set to its index
+	private int createBlock() {
+		blocks.add(createHelper());
+		return blocks.size() - 1;
+	}
+
+	// Emits the functions resuming the frames parked with the tag once their wait is over: each one is adopted by passing
+	// its saved scores back to the entry function, which runs in a new frame
+	private FQN createResumer(String tag, int size, FQN entryFQN) {
+		Namespace craftlangNamespace = Compiler.getCraftlangNamespace(namespace);
+		FQN resumeFQN = new FQN(craftlangNamespace, functionFQN.getName() + ".resume");
+		FQN adoptFQN = new FQN(craftlangNamespace, functionFQN.getName() + ".adopt");
+		String selector = Compiler.getTarget().getFrameSelector(tag);
+
+		List<Instruction> resume = new ArrayList<>();
+		resume.add(new CommandInstruction("scoreboard players remove " + selector + " cr_id 1"));
+		resume.add(new CommandInstruction("execute as " + selector + " if score @s cr_id matches ..0 run function " + Compiler.getMinecraftId(adoptFQN)));
+		resume.add(new CommandInstruction("execute if entity " + selector + " run schedule function " + Compiler.getMinecraftId(resumeFQN) + " 1t"));
+		resumers.put(resumeFQN, resume);
+
+		List<Instruction> adopt = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			adopt.add(new OperationInstruction(getRegisterScore(i), ScoreOperator.ASSIGN, new PlayerScore("@s", "cr_" + i)));
+		}
+		adopt.add(new CommandInstruction("kill @s"));
+		adopt.add(new CallInstruction(entryFQN));
+		resumers.put(adoptFQN, adopt);
+
+		return resumeFQN;
+	}
+
+	private String getParkingTag() {
+		return "cr_parked." + Compiler.getMinecraftId(functionFQN).replace(':', '+').replace('/', '+');
+	}
+
+	private void emit(Instruction... instructions) {
+		group.get(current).addAll(Arrays.asList(instructions));
+	}
+
+	private void copy(List<Score> targets, List<Score> sources) {
+		group.get(current).addAll(getCopy(targets, sources));
+	}
+
+	private static List<Instruction> getCopy(List<Score> targets, List<Score> sources) {
+		List<Instruction> instructions = new ArrayList<>();
+		for (int i = 0, size = targets.size(); i < size; i++) {
+			Score target = targets.get(i);
+			Score source = sources.get(i);
+			if (!target.equals(source)) {
+				instructions.add(new OperationInstruction(target, ScoreOperator.ASSIGN, source));
+			}
+		}
+		return instructions;
+	}
+
+	private static void addSegment(List<Integer> starts, List<Instruction> actions, int start, Instruction action) {
+		if (actions.isEmpty() || !Objects.equals(actions.get(actions.size() - 1), action)) {
+			starts.add(start);
+			actions.add(action);
+		}
+	}
+
+	// Runs the action of the segment the score is in, knowing it's one of those from first to last
+	private void compileDecision(Score score, List<Integer> starts, List<Instruction> actions, int first, int last) {
+		if (first == last) {
+			if (actions.get(first) != null) {
+				emit(actions.get(first));
+			}
+			return;
+		}
+
+		int middle = (first + last + 1) / 2;
+		compileBranch(new MatchesCondition(false, score, null, starts.get(middle) - 1), score, starts, actions, first, middle - 1);
+		compileBranch(new MatchesCondition(false, score, starts.get(middle), null), score, starts, actions, middle, last);
+	}
+
+	private void compileBranch(Condition condition, Score score, List<Integer> starts, List<Instruction> actions, int first, int last) {
+		if (actions.subList(first, last + 1).stream().allMatch(Objects::isNull)) {
+			return;
+		}
+		if (first == last) {
+			emit(new ExecuteInstruction(condition, actions.get(first)));
+			return;
+		}
+
+		FQN helperFQN = createHelper();
+		emit(new ExecuteInstruction(condition, new CallInstruction(helperFQN)));
+		FQN caller = current;
+		current = helperFQN;
+		compileDecision(score, starts, actions, first, last);
+		current = caller;
+	}
+
+	// Runs the instructions as a single one, putting them in a helper unless there's just one to run
+	private Instruction getAction(List<Instruction> instructions) {
+		if (instructions.isEmpty()) {
+			return null;
+		}
+		if (instructions.size() == 1 && !(instructions.get(0) instanceof ExecuteInstruction)) {
+			return instructions.get(0);
+		}
+		FQN helperFQN = createHelper();
+		group.get(helperFQN).addAll(instructions);
+		return new CallInstruction(helperFQN);
+	}
+
+	// Runs the action of the element the index picks, or the outside action if there's no such element. The element is
+	// found with the same search as the case of a match statement
+	private void compileElementDecision(Score index, int length, List<Instruction> elementActions, Instruction outsideAction) {
+		List<Integer> starts = new ArrayList<>();
+		List<Instruction> actions = new ArrayList<>();
+		addSegment(starts, actions, Integer.MIN_VALUE, outsideAction);
+		for (int i = 0; i < length; i++) {
+			addSegment(starts, actions, i, elementActions.get(i));
+		}
+		addSegment(starts, actions, length, outsideAction);
+		compileDecision(index, starts, actions, 0, starts.size() - 1);
+	}
+
+	// The slot of the first element of a global array whose elements can be addressed by macros, or null if it can't be
+	// addressed that way. The search takes fewer commands for short arrays, so only long ones are addressed by macros
+	private static Integer getMacroSlot(Value array) {
+		List<Score> scores = array.getScores();
+		String holder = scores.get(0).getHolder();
+		if (!Compiler.getTarget().hasMacros() || ((ArrayType) array.getType()).getLength() < MIN_MACRO_LENGTH || !holder.startsWith(Target.GLOBAL_HOLDER_PREFIX)) {
+			return null;
+		}
+
+		int slot;
+		try {
+			slot = Integer.parseInt(holder.substring(Target.GLOBAL_HOLDER_PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		for (int i = 0, size = scores.size(); i < size; i++) {
+			if (!scores.get(i).equals(getGlobalScore(slot + i))) {
+				return null;
+			}
+		}
+		return slot;
+	}
+
+	// Runs the instructions with the slots of the element the index picks stored as s0, s1 and so on, unless the index is
+	// out of bounds. The address is computed in the first register, and the element is read and written through the
+	// following ones by the functions getMacroCall gives
+	private void compileMacroAccess(Score index, int slot, ArrayType type, List<Instruction> instructions) {
+		Score address = getRegisterScore(0);
+		int size = type.getElementType().size();
+		registerCount = Math.max(registerCount, size + 1);
+		emit(new OperationInstruction(address, ScoreOperator.ASSIGN, index));
+		FQN helperFQN = createHelper();
+		emit(new ExecuteInstruction(new MatchesCondition(false, address, 0, type.getLength() - 1), new CallInstruction(helperFQN)));
+
+		List<Instruction> helper = group.get(helperFQN);
+		if (size > 1) {
+			helper.add(new OperationInstruction(address, ScoreOperator.MULTIPLY, new ConstantScore(size)));
+		}
+		if (slot != 0) {
+			helper.add(new OperationInstruction(address, ScoreOperator.ADD, new ConstantScore(slot)));
+		}
+		String register = address.getHolder() + ' ' + address.getObjective();
+		for (int i = 0; i < size; i++) {
+			helper.add(new CommandInstruction("execute store result storage " + MACRO_STORAGE + " s" + i + " int 1 run scoreboard players " + (i == 0 ? "get " + register : "add " + register + " 1")));
+		}
+		helper.addAll(instructions);
+	}
+
+	// Calls a function copying the element whose slots are given to it into the registers after the first one, or the
+	// registers into the element
+	private Instruction getMacroCall(int size, boolean load) {
+		FQN macroFQN = createHelper();
+		for (int i = 0; i < size; i++) {
+			Score register = getRegisterScore(i + 1);
+			String element = Target.GLOBAL_HOLDER_PREFIX + "$(s" + i + ") " + Compiler.GLOBAL_OBJECTIVE;
+			String registerName = register.getHolder() + ' ' + register.getObjective();
+			group.get(macroFQN).add(new CommandInstruction("$scoreboard players operation " + (load ? registerName + " = " + element : element + " = " + registerName)));
+		}
+		return new CallInstruction(macroFQN, MACRO_STORAGE);
+	}
+
+	private Value compileExpression(Expression expression, List<Score> target) {
+		Value value = hoisted.get(expression);
+		return value != null ? value : expression.accept(new ExpressionCompiler(target));
+	}
+
+	private Value compileValue(Expression expression, List<Score> target) {
+		Value value = compileExpression(expression, target);
+		if (value == null) {
+			throw new CompileException(expression.getSource().getBeginIndex(), "Expression has no value");
+		}
+		return value;
+	}
+
+	// Compiles a boolean expression into a chain of conditions, all of which have to hold. Comparisons, negations and
+	// conjunctions are checked directly; anything else is computed into a score first
+	private List<Condition> compileCondition(Expression expression) {
+		return expression.accept(new ConditionCompiler());
+	}
+
+	// Checks a chain of conditions once, so that its result can be used even after its operands have changed
+	private List<Condition> materialize(List<Condition> conditions) {
+		if (conditions.size() == 1 && Instructions.getScores(conditions.get(0)).stream().allMatch(Score::isTemporary)) {
+			return conditions;
+		}
+
+		Value value = createTemporary(PrimitiveType.BOOLEAN);
+		if (conditions.size() > 1) {
+			// A condition failing before the last one stops the chain before the store happens
+			emit(new SetInstruction(value.getScore(), 0));
+		}
+		emit(new ExecuteInstruction(conditions, value.getScore(), null));
+		return Collections.singletonList(new MatchesCondition(false, value.getScore(), 1));
+	}
+
+	// Whether running the helper might change any of the scores. Other functions run in their own frame, so they can
+	// only change globals, while raw commands can change anything
+	private boolean mayChange(FQN helperFQN, Set<Score> scores, Set<FQN> visited) {
+		if (!visited.add(helperFQN)) {
+			return false;
+		}
+
+		for (Instruction instruction : group.get(helperFQN)) {
+			if (!Collections.disjoint(Instructions.getWrites(instruction), scores)) {
+				return true;
+			}
+
+			Instruction body = instruction instanceof ExecuteInstruction ? ((ExecuteInstruction) instruction).getBody() : instruction;
+			if (body instanceof CommandInstruction) {
+				return true;
+			}
+			if (body instanceof CallInstruction) {
+				FQN calleeFQN = ((CallInstruction) body).getFunctionFQN();
+				if (group.containsKey(calleeFQN) && !calleeFQN.equals(functionFQN)) {
+					if (mayChange(calleeFQN, scores, visited)) {
+						return true;
+					}
+				} else if (!scores.stream().allMatch(s -> s instanceof FrameScore)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	// Makes sure the value won't be changed by anything but the expression that's using it
+	private Value materialize(Value value) {
+		if (value.isTemporary()) {
+			return value;
+		}
+		Value result = createTemporary(value.getType());
+		copy(result.getScores(), value.getScores());
+		return result;
+	}
+
+	// Reads the members of a stored value into temporaries
+	private Value load(Value value) {
+		Value result = createTemporary(value.getType());
+		List<DataLocation> leaves = getLeaves(value.getType(), value.getData());
+		for (int i = 0, size = leaves.size(); i < size; i++) {
+			emit(new LoadDataInstruction(result.getScores().get(i), leaves.get(i)));
+		}
+		return result;
+	}
+
+	private List<Instruction> getSave(DataLocation data, Value value) {
+		List<Instruction> instructions = new ArrayList<>();
+		List<DataLocation> leaves = getLeaves(value.getType(), data);
+		for (int i = 0, size = leaves.size(); i < size; i++) {
+			instructions.add(new SaveDataInstruction(leaves.get(i), value.getScores().get(i)));
+		}
+		return instructions;
+	}
+
+	// Compiles a value going into a stored location. Variables and returned values are given as they are, so that a
+	// stored one can be copied as a whole; it has to be copied before anything else is compiled
+	private Value compileRecord(Expression expression) {
+		if (expression instanceof VariableExpression) {
+			Value value = resolveVariable(((VariableExpression) expression).getFQN());
+			if (value != null) {
+				return value;
+			}
+		} else if (expression instanceof CallExpression && getIntrinsic((CallExpression) expression) == null) {
+			Value value = new ExpressionCompiler(null).compileCall((CallExpression) expression);
+			if (value == null) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Expression has no value");
+			}
+			return value;
+		}
+		return compileValue(expression, null);
+	}
+
+	private void store(DataLocation data, Value value) {
+		if (!value.isStored()) {
+			group.get(current).addAll(getSave(data, value));
+		} else if (!value.getData().equals(data)) {
+			emit(new CopyDataInstruction(data, value.getData()));
+		}
+	}
+
+	// Copies a temporary value to new locals, so that it can still be read from the helpers
+	private Value preserve(Value value) {
+		if (!value.isTemporary() || value.getType().size() == 0) {
+			return value;
+		}
+		List<Score> scores = getLocalScores(localCount, value.getType().size());
+		localCount += scores.size();
+		copy(scores, value.getScores());
+		return new Value(value.getType(), scores);
+	}
+
+	// The scores of an element of the array, as long as the index is known while compiling
+	private Value getElement(Node node, Value array, Expression index) {
+		if (!(array.getType() instanceof ArrayType)) {
+			throw new CompileException(node.getSource().getBeginIndex(), "Unsupported operation");
+		}
+
+		Object constant = interpreter.evaluate(index, namespace);
+		if (!(constant instanceof Integer)) {
+			return null;
+		}
+
+		ArrayType type = (ArrayType) array.getType();
+		int i = (Integer) constant;
+		if (i < 0 || i >= type.getLength()) {
+			throw new CompileException(index.getSource().getBeginIndex(), "Index out of bounds: " + i);
+		}
+		int size = type.getElementType().size();
+		return new Value(type.getElementType(), array.getScores().subList(i * size, (i + 1) * size));
+	}
+
+	// Computes an index which is only known at runtime. It's checked again at each level of the search, so it's kept in
+	// a local none of the given scores is
+	private Score compileIndex(Expression index, Collection<Score> scores) {
+		Value value = compileValue(index, null);
+		if (!value.getType().equals(PrimitiveType.INTEGER)) {
+			throw new CompileException(index.getSource().getBeginIndex(), "Unsupported operation");
+		}
+
+		Score score = value.getScore();
+		if (score.isTemporary() || scores.contains(score)) {
+			score = getLocalScore(localCount++);
+			emit(new OperationInstruction(score, ScoreOperator.ASSIGN, value.getScore()));
+		}
+		return score;
+	}
+
+	private Value createTemporary(Type type) {
+		List<Score> scores = new ArrayList<>();
+		for (int i = 0, size = type.size(); i < size; i++) {
+			scores.add(getTemporaryScore(temporaryCount++));
+		}
+		return new Value(type, scores);
+	}
+
+	// Variables are looked up in the local scope first, then among the globals of the unit's namespace. A member of a
+	// compound variable is referred to by appending its name to the one of the variable, as in position.x, and is made of
+	// a part of its scores
+	private Value resolveVariable(FQN variableFQN) {
+		Value variable = resolveStore(variableFQN);
+		if (variable != null || variableFQN.getNamespace() == null) {
+			return variable;
+		}
+
+		List<String> components = new ArrayList<>(variableFQN.getNamespace().getComponents());
+		components.add(variableFQN.getName());
+		for (int i = components.size() - 1; i > 0 && variable == null; i--) {
+			variable = resolveStore(new FQN(components.subList(0, i)));
+			for (int j = i, componentCount = components.size(); j < componentCount && variable != null; j++) {
+				variable = getMember(variable, components.get(j));
+			}
+		}
+		return variable;
+	}
+
+	private Value resolveStore(FQN variableFQN) {
+		if (variableFQN.getNamespace() == null) {
+			Store store = locals.get(variableFQN.getName());
+			if (store != null) {
+				return getValue(store, true);
+			}
+			variableFQN = new FQN(namespace, variableFQN.getName());
+		}
+
+		Store store = globals.get(variableFQN);
+		return store != null ? getValue(store, false) : null;
+	}
+
+	private Value getValue(Store store, boolean local) {
+		if (storedTypes.contains(store.getType())) {
+			return new Value(store.getType(), getData(store, local));
+		}
+		return new Value(store.getType(), getScores(store, local));
+	}
+
+	private static Value getMember(Value value, String name) {
+		if (!(value.getType() instanceof CompoundType)) {
+			return null;
+		}
+
+		CompoundType type = (CompoundType) value.getType();
+		int offset = type.getOffset(name);
+		if (offset < 0) {
+			return null;
+		}
+		Type memberType = type.getMembers().get(name);
+		if (value.isStored()) {
+			return new Value(memberType, value.getData().getMember(name));
+		}
+		return new Value(memberType, value.getScores().subList(offset, offset + memberType.size()));
+	}
+
+	// The name of the local variable the FQN might refer to, either on its own or through one of its members
+	private static String getLocalName(FQN variableFQN) {
+		Namespace namespace = variableFQN.getNamespace();
+		return namespace == null ? variableFQN.getName() : namespace.getComponents().get(0);
+	}
+
+	private FQN resolveFunction(FQN functionFQN) {
+		return functionFQN.getNamespace() == null ? new FQN(namespace, functionFQN.getName()) : functionFQN;
+	}
+
+	private Intrinsic getIntrinsic(CallExpression expression) {
+		return Intrinsic.resolve(expression.getFunctionFQN(), namespace, functions);
+	}
+
+	// Whether evaluating the expression might change the value of a variable
+	private boolean hasSideEffects(Expression expression) {
+		return expression.accept(new ExpressionVisitor<Boolean, RuntimeException>() {
+			@Override
+			public Boolean visitBinaryExpression(BinaryExpression expression) {
+				return expression.getLeft().accept(this) || expression.getRight().accept(this);
+			}
+
+			@Override
+			public Boolean visitUnaryExpression(UnaryExpression expression) {
+				return expression.getOperand().accept(this);
+			}
+
+			@Override
+			public Boolean visitIntegerExpression(IntegerExpression expression) {
+				return false;
+			}
+
+			@Override
+			public Boolean visitCommandExpression(CommandExpression expression) {
+				return true;
+			}
+
+			@Override
+			public Boolean visitFunctionCallExpression(CallExpression expression) {
+				return getIntrinsic(expression) == null || expression.getArguments().stream().anyMatch(a -> a.accept(this));
+			}
+
+			@Override
+			public Boolean visitVariableExpression(VariableExpression expression) {
+				return false;
+			}
+
+			@Override
+			public Boolean visitIndexExpression(IndexExpression expression) {
+				return expression.getArray().accept(this) || expression.getIndex().accept(this);
+			}
+		});
+	}
+
+	// The scores of the variables the expression refers to
+	private Set<Score> getReads(Expression expression) {
+		Set<Score> reads = new HashSet<>();
+		expression.accept(new ExpressionVisitor<Void, RuntimeException>() {
+			@Override
+			public Void visitBinaryExpression(BinaryExpression expression) {
+				expression.getLeft().accept(this);
+				expression.getRight().accept(this);
+				return null;
+			}
+
+			@Override
+			public Void visitUnaryExpression(UnaryExpression expression) {
+				expression.getOperand().accept(this);
+				return null;
+			}
+
+			@Override
+			public Void visitFunctionCallExpression(CallExpression expression) {
+				for (Expression argument : expression.getArguments()) {
+					argument.accept(this);
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitVariableExpression(VariableExpression expression) {
+				Value value = resolveVariable(expression.getFQN());
+				if (value != null) {
+					reads.addAll(value.getScores());
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitIndexExpression(IndexExpression expression) {
+				expression.getArray().accept(this);
+				expression.getIndex().accept(this);
+				return null;
+			}
+		});
+		return reads;
+	}
+
+	private static ComparisonOperator getComparisonOperator(BinaryOperator operator) {
+		switch (operator) {
+			case LESS_OR_EQUAL:
+				return ComparisonOperator.LESS_OR_EQUAL;
+			case LESS:
+				return ComparisonOperator.LESS;
+			case GREATER_OR_EQUAL:
+				return ComparisonOperator.GREATER_OR_EQUAL;
+			case GREATER:
+				return ComparisonOperator.GREATER;
+			default:
+				return ComparisonOperator.EQUAL;
+		}
+	}
+
+	// The operator giving the same result once the operands are swapped, if the comparison can be swapped at all
+	private static BinaryOperator getSwappedOperator(BinaryOperator operator) {
+		switch (operator) {
+			case LESS_OR_EQUAL:
+				return BinaryOperator.GREATER_OR_EQUAL;
+			case LESS:
+				return BinaryOperator.GREATER;
+			case GREATER_OR_EQUAL:
+				return BinaryOperator.LESS_OR_EQUAL;
+			case GREATER:
+				return BinaryOperator.LESS;
+			case EQUAL:
+			case NOT_EQUAL:
+				return operator;
+			default:
+				return null;
+		}
+	}
+
+	private static boolean compare(int left, BinaryOperator operator, int right) {
+		switch (operator) {
+			case LESS_OR_EQUAL:
+				return left <= right;
+			case LESS:
+				return left < right;
+			case GREATER_OR_EQUAL:
+				return left >= right;
+			case GREATER:
+				return left > right;
+			case EQUAL:
+				return left == right;
+			default:
+				return left != right;
+		}
+	}
+
+	private static Score getLocalScore(int address) {
+		return new FrameScore(address, false);
+	}
+
+	private static Score getTemporaryScore(int address) {
+		return new FrameScore(address, true);
+	}
+
+	private static Score getRegisterScore(int address) {
+		return new PlayerScore("#cr", "cr_" + address);
+	}
+
+	private static List<Score> getLocalScores(int address, int size) {
+		List<Score> scores = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			scores.add(getLocalScore(address + i));
+		}
+		return scores;
+	}
+
+	private static List<Score> getRegisterScores(int address, int size) {
+		List<Score> scores = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			scores.add(getRegisterScore(address + i));
+		}
+		return scores;
+	}
+
+	private static Score getGlobalScore(int slot) {
+		return new PlayerScore(Compiler.getTarget().getGlobalHolder(slot), Compiler.GLOBAL_OBJECTIVE);
+	}
+
+	private static List<Score> getScores(Store store, boolean local) {
+		List<Score> scores = new ArrayList<>();
+		for (int i = 0, size = store.getType().size(); i < size; i++) {
+			int address = store.getAddress() + i;
+			scores.add(local ? getLocalScore(address) : getGlobalScore(address));
+		}
+		return scores;
+	}
+
+	// Stored locals are numbered apart from the scores, and a stored global is kept under the slot of its first score
+	private static DataLocation getData(Store store, boolean local) {
+		return local ? getLocalData(store.getAddress()) : getGlobalData(store.getAddress());
+	}
+
+	static DataLocation getGlobalData(int slot) {
+		return new DataLocation(false, "g" + slot);
+	}
+
+	private static DataLocation getLocalData(int address) {
+		return new DataLocation(true, "l" + address);
+	}
+
+	private static DataLocation getArgumentData(int index) {
+		return new DataLocation(false, "a" + index);
+	}
+
+	private static DataLocation getReturnData() {
+		return new DataLocation(false, "r");
+	}
+
+	// A record with all of its members set to 0. Stored records are always complete, so that copying or reading them
+	// never fails
+	static String getZero(Type type) {
+		if (!(type instanceof CompoundType)) {
+			return "0";
+		}
+		StringJoiner members = new StringJoiner(",", "{", "}");
+		for (Map.Entry<String, Type> member : ((CompoundType) type).getMembers().entrySet()) {
+			members.add(member.getKey() + ':' + getZero(member.getValue()));
+		}
+		return members.toString();
+	}
+
+	// The locations of the numbers a record is made of, in the order of its scores
+	private static List<DataLocation> getLeaves(Type type, DataLocation data) {
+		if (!(type instanceof CompoundType)) {
+			return Collections.singletonList(data);
+		}
+		List<DataLocation> leaves = new ArrayList<>();
+		for (Map.Entry<String, Type> member : ((CompoundType) type).getMembers().entrySet()) {
+			leaves.addAll(getLeaves(member.getValue(), data.getMember(member.getKey())));
+		}
+		return leaves;
+	}
+
+	// The value of an expression. Either the scores of a variable, which must not be modified, or temporaries, which
+	// belong to whoever uses the value
+	// A variable of a stored type, or one of its members, has a data location instead of scores. Expressions never give
+	// such values: they load the members they need into temporaries
+	private static class Value {
+		private final Type type;
+		private final List<Score> scores;
+		private final DataLocation data;
+
+		private Value(Type type, List<Score> scores) {
+			this.type = type;
+			this.scores = scores;
+			this.data = null;
+		}
+
+		private Value(Type type, DataLocation data) {
+			this.type = type;
+			this.scores = Collections.emptyList();
+			this.data = data;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		public List<Score> getScores() {
+			return scores;
+		}
+
+		public Score getScore() {
+			return scores.get(0);
+		}
+
+		public boolean isTemporary() {
+			return scores.stream().allMatch(Score::isTemporary);
+		}
+
+		public DataLocation getData() {
+			return data;
+		}
+
+		public boolean isStored() {
+			return data != null;
+		}
+	}
+
+	// Compiles an expression, computing its value in the target scores when possible. The target may only be written
+	// to once the expression doesn't need the previous value of the target anymore
+	private class ExpressionCompiler implements ExpressionVisitor<Value, RuntimeException> {
+		private final List<Score> target;
+
+		private ExpressionCompiler(List<Score> target) {
+			this.target = target;
+		}
+
+		@Override
+		public Value visitBinaryExpression(BinaryExpression expression) {
+			BinaryOperator operator = expression.getOperator();
+			if (operator == BinaryOperator.CONDITIONAL_AND || operator == BinaryOperator.CONDITIONAL_OR) {
+				return compileShortCircuit(expression);
+			}
+
+			Expression rightExpression = expression.getRight();
+			boolean sideEffects = hasSideEffects(rightExpression);
+
+			// The left operand can be computed right into the target if the right operand doesn't depend on it
+			List<Score> leftTarget = null;
+			if (target != null && !sideEffects && Collections.disjoint(getReads(rightExpression), target)) {
+				leftTarget = target;
+			}
+
+			Value left = compileValue(expression.getLeft(), isArithmetic(operator) ? leftTarget : null);
+			if (sideEffects) {
+				left = materialize(left);
+			}
+			Value right = compileValue(rightExpression, null);
+			Type type = right.getType();
+
+			if (!left.getType().equals(type)) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+			}
+
+			switch (operator) {
+				case PLUS:
+					return compileOperation(expression, left, ScoreOperator.ADD, right, PrimitiveType.INTEGER, leftTarget);
+
+				case MINUS:
+					return compileOperation(expression, left, ScoreOperator.SUBTRACT, right, PrimitiveType.INTEGER, leftTarget);
+
+				case TIMES:
+					return compileOperation(expression, left, ScoreOperator.MULTIPLY, right, PrimitiveType.INTEGER, leftTarget);
+
+				case DIVIDE:
+					return compileOperation(expression, left, ScoreOperator.DIVIDE, right, PrimitiveType.INTEGER, leftTarget);
+
+				case REMAINDER:
+					return compileOperation(expression, left, ScoreOperator.REMAINDER, right, PrimitiveType.INTEGER, leftTarget);
+
+				case AND:
+					return compileOperation(expression, left, ScoreOperator.MULTIPLY, right, PrimitiveType.BOOLEAN, leftTarget);
+
+				case XOR:
+					if (!type.equals(PrimitiveType.BOOLEAN)) {
+						throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+					}
+					return compileComparison(left, true, ComparisonOperator.EQUAL, right);
+
+				case OR:
+					if (!type.equals(PrimitiveType.BOOLEAN)) {
+						throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+					}
+					return compileDisjunction(left, right);
+
+				case EQUAL:
+					if (!type.equals(PrimitiveType.BOOLEAN) && !type.equals(PrimitiveType.INTEGER)) {
+						throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+					}
+					return compileComparison(left, false, ComparisonOperator.EQUAL, right);
+
+				case NOT_EQUAL:
+					if (!type.equals(PrimitiveType.BOOLEAN) && !type.equals(PrimitiveType.INTEGER)) {
+						throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+					}
+					return compileComparison(left, true, ComparisonOperator.EQUAL, right);
+
+				case LESS_OR_EQUAL:
+				case LESS:
+				case GREATER_OR_EQUAL:
+				case GREATER:
+					if (!type.equals(PrimitiveType.INTEGER)) {
+						throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+					}
+					return compileComparison(left, false, getComparisonOperator(operator), right);
+
+				default:
+					assert false : operator;
+					return null;
+			}
+		}
+
+		@Override
+		public Value visitUnaryExpression(UnaryExpression expression) {
+			switch (expression.getOperator()) {
+				case NOT: {
+					Value operand = compileValue(expression.getOperand(), null);
+					if (!operand.getType().equals(PrimitiveType.BOOLEAN)) {
+						throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+					}
+
+					Value result = getResult(operand, PrimitiveType.BOOLEAN);
+					emit(new ExecuteInstruction(new MatchesCondition(false, operand.getScore(), 0), result.getScore()));
+					return result;
+				}
+
+				case PLUS: {
+					Value operand = compileValue(expression.getOperand(), target);
+					if (!operand.getType().equals(PrimitiveType.INTEGER)) {
+						throw new CompileException(expression.getSource().getEndIndex(), "Unsupported operation");
+					}
+					return operand;
+				}
+
+				case MINUS: {
+					Value operand = compileValue(expression.getOperand(), target);
+					if (!operand.getType().equals(PrimitiveType.INTEGER)) {
+						throw new CompileException(expression.getSource().getEndIndex(), "Unsupported operation");
+					}
+
+					Value result = getResult(operand, PrimitiveType.INTEGER);
+					copy(result.getScores(), operand.getScores());
+					Score minusOne = getTemporaryScore(temporaryCount++);
+					emit(
+						new SetInstruction(minusOne, -1),
+						new OperationInstruction(result.getScore(), ScoreOperator.MULTIPLY, minusOne)
+					);
+					return result;
+				}
+
+				default:
+					assert false : expression.getOperator();
+					return null;
+			}
+		}
+
+		@Override
+		public Value visitIntegerExpression(IntegerExpression expression) {
+			Value result = getResult(null, PrimitiveType.INTEGER);
+			emit(new SetInstruction(result.getScore(), expression.getValue()));
+			return result;
+		}
+
+		@Override
+		public Value visitCommandExpression(CommandExpression expression) {
+			emit(new CommandInstruction(expression.getCommand()));
+			return null;
+		}
+
+		@Override
+		public Value visitFunctionCallExpression(CallExpression expression) {
+			Intrinsic intrinsic = getIntrinsic(expression);
+			if (intrinsic != null) {
+				return compileIntrinsic(expression, intrinsic);
+			}
+
+			Value result = compileCall(expression);
+			return result != null && result.isStored() ? load(result) : result;
+		}
+
+		// A stored record is returned in the data storage, where it's left for the caller to copy or load
+		private Value compileCall(CallExpression expression) {
+			FQN calleeFQN = resolveFunction(expression.getFunctionFQN());
+			FunctionDefinition callee = functions.get(calleeFQN);
+			if (callee == null) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Unknown function: " + calleeFQN);
+			}
+
+			// Calls to pure functions are evaluated right away if all of their arguments are constant
+			Type returnType = getReturnType(callee);
+			if (returnType != null && interpreter.isPure(calleeFQN)) {
+				Object constant = interpreter.evaluate(expression, namespace);
+				if (constant != null) {
+					Value result = getResult(null, returnType);
+					emit(new SetInstruction(result.getScore(), constant instanceof Boolean ? ((Boolean) constant ? 1 : 0) : (Integer) constant));
+					return result;
+				}
+			}
+
+			List<TypeAndName> parameters = callee.getParameters();
+			List<Expression> arguments = expression.getArguments();
+			if (arguments.size() != parameters.size()) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
+			}
+
+			// An argument can be computed right into its registers if no later argument involves a call. Otherwise it
+			// has to be kept aside until all of the arguments have been evaluated. The same goes for stored records and
+			// the data storage
+			List<Value> values = new ArrayList<>();
+			int address = 0;
+			for (int i = 0, argumentCount = arguments.size(); i < argumentCount; i++) {
+				Type parameterType = types.get(parameters.get(i).getTypeFQN());
+				boolean laterSideEffects = arguments.subList(i + 1, argumentCount).stream().anyMatch(FunctionCompiler.this::hasSideEffects);
+
+				if (parameterType != null && storedTypes.contains(parameterType)) {
+					Value argument = compileRecord(arguments.get(i));
+					if (!argument.getType().equals(parameterType)) {
+						throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
+					}
+
+					DataLocation data = laterSideEffects ? getLocalData(dataCount++) : getArgumentData(i);
+					store(data, argument);
+					values.add(new Value(parameterType, data));
+					continue;
+				}
+
+				int size = parameterType != null ? parameterType.size() : 0;
+				Value argument = compileValue(arguments.get(i), laterSideEffects ? null : getRegisterScores(address, size));
+				if (!argument.getType().equals(parameterType)) {
+					throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
+				}
+
+				values.add(laterSideEffects ? materialize(argument) : argument);
+				address += size;
+			}
+
+			address = 0;
+			for (int i = 0, valueCount = values.size(); i < valueCount; i++) {
+				Value value = values.get(i);
+				if (value.isStored()) {
+					store(getArgumentData(i), value);
+					continue;
+				}
+
+				int size = value.getType().size();
+				copy(getRegisterScores(address, size), value.getScores());
+				address += size;
+			}
+			registerCount = Math.max(registerCount, address);
+
+			emit(new CallInstruction(calleeFQN));
+
+			if (returnType == null) {
+				return null;
+			}
+			if (storedTypes.contains(returnType)) {
+				return new Value(returnType, getReturnData());
+			}
+
+			Value result = getResult(null, returnType);
+			copy(result.getScores(), getRegisterScores(0, returnType.size()));
+			registerCount = Math.max(registerCount, returnType.size());
+			return result;
+		}
+
+		// Intrinsics never need a frame: their arguments are computed like the operands of a binary expression, then the
+		// first one is turned into the result in place
+		private Value compileIntrinsic(CallExpression expression, Intrinsic intrinsic) {
+			List<Expression> arguments = expression.getArguments();
+			if (arguments.size() != intrinsic.getParameterCount()) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
+			}
+
+			Object constant = interpreter.evaluate(expression, namespace);
+			if (constant instanceof Integer) {
+				Value result = getResult(null, PrimitiveType.INTEGER);
+				emit(new SetInstruction(result.getScore(), (Integer) constant));
+				return result;
+			}
+
+			// The first argument can be computed right into the target if the others don't depend on it. The base of a power
+			// is still needed once the result has been written to, so it never is
+			List<Expression> rest = arguments.subList(1, arguments.size());
+			List<Score> firstTarget = null;
+			if (target != null && intrinsic != Intrinsic.POW && rest.stream().noneMatch(FunctionCompiler.this::hasSideEffects) && rest.stream().allMatch(a -> Collections.disjoint(getReads(a), target))) {
+				firstTarget = target;
+			}
+
+			List<Value> values = new ArrayList<>();
+			for (int i = 0, argumentCount = arguments.size(); i < argumentCount; i++) {
+				Value argument = compileValue(arguments.get(i), i == 0 ? firstTarget : null);
+				if (!argument.getType().equals(PrimitiveType.INTEGER)) {
+					throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
+				}
+				boolean laterSideEffects = arguments.subList(i + 1, argumentCount).stream().anyMatch(FunctionCompiler.this::hasSideEffects);
+				values.add(laterSideEffects ? materialize(argument) : argument);
+			}
+
+			switch (intrinsic) {
+				case POW:
+					return compilePower(values.get(0), values.get(1), arguments.get(1));
+
+				case SQRT:
+					return compileSquareRoot(values.get(0));
+
+				default:
+					break;
+			}
+
+			Value result;
+			if (firstTarget != null) {
+				result = new Value(PrimitiveType.INTEGER, firstTarget);
+				copy(firstTarget, values.get(0).getScores());
+			} else {
+				result = materialize(values.get(0));
+			}
+			Score score = result.getScore();
+
+			switch (intrinsic) {
+				case ABS:
+					emit(new ExecuteInstruction(new MatchesCondition(false, score, null, -1), new OperationInstruction(score, ScoreOperator.MULTIPLY, new ConstantScore(-1))));
+					break;
+
+				case MIN:
+					emit(new OperationInstruction(score, ScoreOperator.MIN, values.get(1).getScore()));
+					break;
+
+				case MAX:
+					emit(new OperationInstruction(score, ScoreOperator.MAX, values.get(1).getScore()));
+					break;
+
+				case CLAMP:
+					emit(
+						new OperationInstruction(score, ScoreOperator.MAX, values.get(1).getScore()),
+						new OperationInstruction(score, ScoreOperator.MIN, values.get(2).getScore())
+					);
+					break;
+
+				case SIGN:
+					emit(
+						new OperationInstruction(score, ScoreOperator.MAX, new ConstantScore(-1)),
+						new OperationInstruction(score, ScoreOperator.MIN, new ConstantScore(1))
+					);
+					break;
+
+				default:
+					assert false : intrinsic;
+					break;
+			}
+			return result;
+		}
+
+		// A constant exponent is unrolled into squares and multiplications by the base, from its highest bit down. Any
+		// other exponent is halved by a loop, which multiplies the result by the base for each of its bits set and squares
+		// the base after each bit
+		private Value compilePower(Value base, Value exponent, Expression exponentExpression) {
+			Object constant = interpreter.evaluate(exponentExpression, namespace);
+			if (constant instanceof Integer) {
+				int bits = (Integer) constant;
+				Value result = getResult(null, PrimitiveType.INTEGER);
+				if (result.getScore().equals(base.getScore())) {
+					result = createTemporary(PrimitiveType.INTEGER);
+				}
+				Score score = result.getScore();
+
+				if (bits <= 0) {
+					emit(new SetInstruction(score, bits == 0 ? 1 : 0));
+					return result;
+				}
+				emit(new OperationInstruction(score, ScoreOperator.ASSIGN, base.getScore()));
+				for (int bit = Integer.highestOneBit(bits) >> 1; bit > 0; bit >>= 1) {
+					emit(new OperationInstruction(score, ScoreOperator.MULTIPLY, score));
+					if ((bits & bit) != 0) {
+						emit(new OperationInstruction(score, ScoreOperator.MULTIPLY, base.getScore()));
+					}
+				}
+				return result;
+			}
+
+			// The loop changes the base and the exponent, so it works on copies of them kept in locals
+			List<Score> scores = getLocalScores(localCount, 3);
+			localCount += 3;
+			Score power = scores.get(0);
+			Score remaining = scores.get(1);
+			Score score = scores.get(2);
+			copy(Arrays.asList(power, remaining), Arrays.asList(base.getScore(), exponent.getScore()));
+			emit(
+				new SetInstruction(score, 1),
+				new ExecuteInstruction(new MatchesCondition(false, remaining, null, -1), new SetInstruction(score, 0))
+			);
+
+			FQN loopFQN = createHelper();
+			Condition more = new MatchesCondition(false, remaining, 1, null);
+			emit(new ExecuteInstruction(more, new CallInstruction(loopFQN)));
+
+			Score bit = getTemporaryScore(temporaryCount++);
+			group.get(loopFQN).addAll(Arrays.asList(
+				new OperationInstruction(bit, ScoreOperator.ASSIGN, remaining),
+				new OperationInstruction(bit, ScoreOperator.REMAINDER, new ConstantScore(2)),
+				new ExecuteInstruction(new MatchesCondition(false, bit, 1), new OperationInstruction(score, ScoreOperator.MULTIPLY, power)),
+				new OperationInstruction(power, ScoreOperator.MULTIPLY, power),
+				new OperationInstruction(remaining, ScoreOperator.DIVIDE, new ConstantScore(2)),
+				new ExecuteInstruction(more, new CallInstruction(loopFQN))
+			));
+			return new Value(PrimitiveType.INTEGER, Collections.singletonList(score));
+		}
+
+		// The square root is rounded down, and is 0 for numbers which aren't positive. The first guess is the power of 4
+		// above the root, picked by a binary search over the powers of 16 the number lies between. From there, six steps
+		// of the Newton iteration reach the root for any number a score can hold. The guess is never allowed to grow, so
+		// that it can't bounce between the root and the integer above it
+		private Value compileSquareRoot(Value operand) {
+			Score number = preserve(operand).getScore();
+			Score score = getLocalScore(localCount++);
+
+			List<Integer> starts = new ArrayList<>();
+			List<Instruction> actions = new ArrayList<>();
+			addSegment(starts, actions, Integer.MIN_VALUE, new SetInstruction(score, 0));
+			for (int start = 1, root = 4; start > 0; start <<= 4, root = Math.min(root << 2, 46341)) {
+				addSegment(starts, actions, start, new SetInstruction(score, root));
+			}
+			compileDecision(number, starts, actions, 0, starts.size() - 1);
+
+			List<Instruction> steps = new ArrayList<>();
+			Score quotient = getTemporaryScore(temporaryCount++);
+			for (int i = 0; i < 6; i++) {
+				steps.add(new OperationInstruction(quotient, ScoreOperator.ASSIGN, number));
+				steps.add(new OperationInstruction(quotient, ScoreOperator.DIVIDE, score));
+				steps.add(new OperationInstruction(quotient, ScoreOperator.ADD, score));
+				steps.add(new OperationInstruction(quotient, ScoreOperator.DIVIDE, new ConstantScore(2)));
+				steps.add(new OperationInstruction(score, ScoreOperator.MIN, quotient));
+			}
+			emit(new ExecuteInstruction(new MatchesCondition(false, number, 1, null), getAction(steps)));
+			return new Value(PrimitiveType.INTEGER, Collections.singletonList(score));
+		}
+
+		@Override
+		public Value visitVariableExpression(VariableExpression expression) {
+			FQN variableFQN = expression.getFQN();
+			Value value = resolveVariable(variableFQN);
+			if (value != null) {
+				return value.isStored() ? load(value) : value;
+			}
+
+			switch (variableFQN.getName()) {
+				case "true": {
+					Value result = getResult(null, PrimitiveType.BOOLEAN);
+					emit(new SetInstruction(result.getScore(), 1));
+					return result;
+				}
+
+				case "false": {
+					Value result = getResult(null, PrimitiveType.BOOLEAN);
+					emit(new SetInstruction(result.getScore(), 0));
+					return result;
+				}
+
+				default:
+					throw new CompileException(expression.getSource().getBeginIndex(), "Unknown variable " + variableFQN);
+			}
+		}
+
+		// An element picked at runtime is copied by the leaf of the search matching the index. Indices out of bounds give
+		// an element whose scores are all zero
+		@Override
+		public Value visitIndexExpression(IndexExpression expression) {
+			Value array = compileValue(expression.getArray(), null);
+			Expression index = expression.getIndex();
+			if (hasSideEffects(index)) {
+				array = materialize(array);
+			}
+
+			Value element = getElement(expression, array, index);
+			if (element != null) {
+				return element;
+			}
+
+			// Elements of long global arrays are copied straight from their slots, the index being pasted in by a macro
+			ArrayType type = (ArrayType) array.getType();
+			int size = type.getElementType().size();
+			Integer slot = getMacroSlot(array);
+			if (slot != null) {
+				Score indexScore = compileIndex(index, Collections.emptySet());
+				List<Score> registers = getRegisterScores(1, size);
+				for (Score score : registers) {
+					emit(new SetInstruction(score, 0));
+				}
+				compileMacroAccess(indexScore, slot, type, Collections.singletonList(getMacroCall(size, true)));
+				Value result = getResult(null, type.getElementType());
+				copy(result.getScores(), registers);
+				return result;
+			}
+
+			array = preserve(array);
+			List<Score> result = target;
+			if (result == null || result.size() != size || result.stream().anyMatch(Score::isTemporary)) {
+				result = getLocalScores(localCount, size);
+				localCount += size;
+			}
+			Score indexScore = compileIndex(index, result);
+
+			List<Instruction> elementActions = new ArrayList<>();
+			for (int i = 0, length = type.getLength(); i < length; i++) {
+				elementActions.add(getAction(getCopy(result, array.getScores().subList(i * size, (i + 1) * size))));
+			}
+			List<Instruction> zero = new ArrayList<>();
+			for (Score score : result) {
+				zero.add(new SetInstruction(score, 0));
+			}
+			compileElementDecision(indexScore, type.getLength(), elementActions, getAction(zero));
+
+			return new Value(type.getElementType(), result);
+		}
+
+		private Value compileOperation(BinaryExpression expression, Value left, ScoreOperator operator, Value right, Type type, List<Score> leftTarget) {
+			if (!right.getType().equals(type)) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+			}
+
+			Value result;
+			if (leftTarget != null) {
+				result = new Value(type, leftTarget);
+				copy(leftTarget, left.getScores());
+			} else {
+				result = materialize(left);
+			}
+
+			emit(new OperationInstruction(result.getScore(), operator, right.getScore()));
+			return result;
+		}
+
+		// The condition is checked before the success is stored, so the result may share a score with the operands
+		private Value compileComparison(Value left, boolean negated, ComparisonOperator operator, Value right) {
+			Value result = getResult(left, PrimitiveType.BOOLEAN);
+			emit(new ExecuteInstruction(new ComparisonCondition(negated, left.getScore(), operator, right.getScore()), result.getScore()));
+			return result;
+		}
+
+		// The result starts off as one of the operands and is set if the other one holds
+		private Value compileDisjunction(Value left, Value right) {
+			Value result = getResult(left, PrimitiveType.BOOLEAN);
+			if (result.getScore().equals(right.getScore())) {
+				Value operand = left;
+				left = right;
+				right = operand;
+			}
+
+			copy(result.getScores(), left.getScores());
+			emit(new ExecuteInstruction(new MatchesCondition(false, right.getScore(), 1), new SetInstruction(result.getScore(), 1)));
+			return result;
+		}
+
+		// The left operand is checked first, and the right one is only evaluated, in a helper, when the left one doesn't
+		// already decide the result
+		private Value compileShortCircuit(BinaryExpression expression) {
+			Expression rightExpression = expression.getRight();
+			boolean conjunction = expression.getOperator() == BinaryOperator.CONDITIONAL_AND;
+
+			// The result is written by the helper as well, so it's kept in a local rather than in a temporary, which
+			// wouldn't outlive the helper
+			Value result;
+			if (target != null && target.size() == 1 && !hasSideEffects(rightExpression) && Collections.disjoint(getReads(expression), target)) {
+				result = new Value(PrimitiveType.BOOLEAN, target);
+			} else {
+				result = new Value(PrimitiveType.BOOLEAN, Collections.singletonList(getLocalScore(localCount++)));
+			}
+
+			List<Condition> left = compileCondition(expression.getLeft());
+			if (left.size() > 1) {
+				// A condition failing before the last one stops the chain before the store happens
+				emit(new SetInstruction(result.getScore(), 0));
+			}
+			emit(new ExecuteInstruction(left, result.getScore(), null));
+
+			FQN helperFQN = createHelper();
+			FQN caller = current;
+			current = helperFQN;
+			Value right = compileValue(rightExpression, result.getScores());
+			if (!right.getType().equals(PrimitiveType.BOOLEAN)) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+			}
+			copy(result.getScores(), right.getScores());
+			current = caller;
+
+			emit(new ExecuteInstruction(new MatchesCondition(false, result.getScore(), conjunction ? 1 : 0), new CallInstruction(helperFQN)));
+			return result;
+		}
+
+		// Where to put the result: the target if there's one, otherwise the given operand if it can be reused
+		private Value getResult(Value operand, Type type) {
+			if (target != null && target.size() == type.size()) {
+				return new Value(type, target);
+			}
+			if (operand != null && operand.isTemporary() && operand.getType().size() == type.size()) {
+				return new Value(type, operand.getScores());
+			}
+			return createTemporary(type);
+		}
+
+		private boolean isArithmetic(BinaryOperator operator) {
+			switch (operator) {
+				case PLUS:
+				case MINUS:
+				case TIMES:
+				case DIVIDE:
+				case REMAINDER:
+				case AND:
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	private class ConditionCompiler implements ExpressionVisitor<List<Condition>, RuntimeException> {
+		@Override
+		public List<Condition> visitBinaryExpression(BinaryExpression expression) {
+			BinaryOperator operator = expression.getOperator();
+			Expression rightExpression = expression.getRight();
+
+			switch (operator) {
+				case AND:
+				case CONDITIONAL_AND: {
+					// A chain of conditions stops at the first failing one, but the right operand is computed beforehand,
+					// so a short-circuiting one can only be chained if computing it unconditionally is harmless
+					if (operator == BinaryOperator.CONDITIONAL_AND && hasSideEffects(rightExpression)) {
+						return compileOther(expression);
+					}
+
+					// The right operand might change the scores the left one is checked on
+					List<Condition> left = expression.getLeft().accept(this);
+					if (hasSideEffects(rightExpression)) {
+						left = materialize(left);
+					}
+
+					List<Condition> conditions = new ArrayList<>(left);
+					conditions.addAll(rightExpression.accept(this));
+					return conditions;
+				}
+
+				case EQUAL:
+				case NOT_EQUAL:
+				case LESS_OR_EQUAL:
+				case LESS:
+				case GREATER_OR_EQUAL:
+				case GREATER: {
+					Value left = compileValue(expression.getLeft(), null);
+					if (hasSideEffects(rightExpression)) {
+						left = materialize(left);
+					}
+					Value right = compileValue(rightExpression, null);
+					Type type = right.getType();
+
+					boolean equality = operator == BinaryOperator.EQUAL || operator == BinaryOperator.NOT_EQUAL;
+					if (!left.getType().equals(type) || !type.equals(PrimitiveType.INTEGER) && !(equality && type.equals(PrimitiveType.BOOLEAN))) {
+						throw new CompileException(expression.getSource().getBeginIndex(), "Unsupported operation");
+					}
+
+					return Collections.singletonList(new ComparisonCondition(
+						operator == BinaryOperator.NOT_EQUAL,
+						left.getScore(),
+						getComparisonOperator(operator),
+						right.getScore()
+					));
+				}
+
+				default:
+					return compileOther(expression);
+			}
+		}
+
+		@Override
+		public List<Condition> visitUnaryExpression(UnaryExpression expression) {
+			if (expression.getOperator() != UnaryOperator.NOT) {
+				return compileOther(expression);
+			}
+
+			List<Condition> operand = expression.getOperand().accept(this);
+			if (operand.size() > 1) {
+				operand = materialize(operand);
+			}
+			return Collections.singletonList(operand.get(0).negate());
+		}
+
+		@Override
+		public List<Condition> visitIntegerExpression(IntegerExpression expression) {
+			return compileOther(expression);
+		}
+
+		@Override
+		public List<Condition> visitCommandExpression(CommandExpression expression) {
+			return compileOther(expression);
+		}
+
+		@Override
+		public List<Condition> visitFunctionCallExpression(CallExpression expression) {
+			return compileOther(expression);
+		}
+
+		@Override
+		public List<Condition> visitVariableExpression(VariableExpression expression) {
+			return compileOther(expression);
+		}
+
+		@Override
+		public List<Condition> visitIndexExpression(IndexExpression expression) {
+			return compileOther(expression);
+		}
+
+		private List<Condition> compileOther(Expression expression) {
+			Value value = compileValue(expression, null);
+			if (!value.getType().equals(PrimitiveType.BOOLEAN)) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Not a boolean expression");
+			}
+			return Collections.singletonList(new MatchesCondition(false, value.getScore(), 1));
+		}
+	}
+
+	// Collects what a loop does: the expressions it evaluates, the variables it uses, declares and assigns to, whether it
+	// calls functions or runs raw commands and how many statements it's made of
+	private class LoopScanner implements StatementVisitor<Void, RuntimeException>, ExpressionVisitor<Void, RuntimeException> {
+		private final List<Expression> expressions = new ArrayList<>();
+		private final Set<String> declarations = new HashSet<>();
+		private final Set<String> names = new LinkedHashSet<>();
+		private final Set<Score> writes;
+		private boolean calls = false;
+		private boolean commands = false;
+		private int size = 0;
+
+		private LoopScanner(Expression condition, List<Statement> body) {
+			condition.accept(this);
+			body.forEach(s -> s.accept(this));
+			writes = getWrites(body);
+		}
+
+		// The scores of the variables declared outside of the loop which the statements assign to
+		private Set<Score> getWrites(List<Statement> block) {
+			Set<Score> writes = new HashSet<>();
+			for (Statement statement : block) {
+				statement.accept(new StatementVisitor<Void, RuntimeException>() {
+					@Override
+					public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+						Value variable = resolveVariable(statement.getVariableFQN());
+						if (variable != null) {
+							writes.addAll(variable.getScores());
+						}
+						return null;
+					}
+
+					@Override
+					public Void visitIfStatement(IfStatement statement) {
+						statement.getTrueBranch().forEach(s -> s.accept(this));
+						statement.getFalseBranch().forEach(s -> s.accept(this));
+						return null;
+					}
+
+					@Override
+					public Void visitWhileStatement(WhileStatement statement) {
+						statement.getBody().forEach(s -> s.accept(this));
+						return null;
+					}
+
+					@Override
+					public Void visitDoWhileStatement(DoWhileStatement statement) {
+						statement.getBody().forEach(s -> s.accept(this));
+						return null;
+					}
+
+					@Override
+					public Void visitMatchStatement(MatchStatement statement) {
+						statement.getCases().forEach(c -> c.getBody().forEach(s -> s.accept(this)));
+						statement.getOtherwise().forEach(s -> s.accept(this));
+						return null;
+					}
+				});
+			}
+			return writes;
+		}
+
+		// Whether the expression gives the same value on every pass. Locals can only be changed by the loop itself or by
+		// raw commands, while globals can also be changed by the functions it calls
+		private boolean isInvariant(Expression expression) {
+			return expression.accept(new ExpressionVisitor<Boolean, RuntimeException>() {
+				@Override
+				public Boolean visitBinaryExpression(BinaryExpression expression) {
+					return expression.getLeft().accept(this) && expression.getRight().accept(this);
+				}
+
+				@Override
+				public Boolean visitUnaryExpression(UnaryExpression expression) {
+					return expression.getOperand().accept(this);
+				}
+
+				@Override
+				public Boolean visitIntegerExpression(IntegerExpression expression) {
+					return true;
+				}
+
+				@Override
+				public Boolean visitCommandExpression(CommandExpression expression) {
+					return false;
+				}
+
+				@Override
+				public Boolean visitFunctionCallExpression(CallExpression expression) {
+					return getIntrinsic(expression) != null && expression.getArguments().stream().allMatch(a -> a.accept(this));
+				}
+
+				@Override
+				public Boolean visitVariableExpression(VariableExpression expression) {
+					FQN variableFQN = expression.getFQN();
+					Value variable = resolveVariable(variableFQN);
+					if (variable == null || variable.isStored() || declarations.contains(getLocalName(variableFQN))) {
+						return false;
+					}
+					boolean local = !(variable.getScore() instanceof PlayerScore);
+					return Collections.disjoint(variable.getScores(), writes) && !commands && (local || !calls);
+				}
+
+				@Override
+				public Boolean visitIndexExpression(IndexExpression expression) {
+					return expression.getArray().accept(this) && expression.getIndex().accept(this);
+				}
+			});
+		}
+
+		@Override
+		public Void visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) {
+			size++;
+			declarations.add(statement.getVariableName());
+			expressions.add(statement.getAssignedValue());
+			return statement.getAssignedValue().accept(this);
+		}
+
+		@Override
+		public Void visitVariableDeclarationStatement(VariableDeclarationStatement statement) {
+			size++;
+			declarations.add(statement.getVariableName());
+			return null;
+		}
+
+		@Override
+		public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+			size++;
+			names.add(getLocalName(statement.getVariableFQN()));
+			if (statement.getIndex() != null) {
+				expressions.add(statement.getIndex());
+				statement.getIndex().accept(this);
+			}
+			expressions.add(statement.getValue());
+			return statement.getValue().accept(this);
+		}
+
+		@Override
+		public Void visitIfStatement(IfStatement statement) {
+			size++;
+			expressions.add(statement.getCondition());
+			statement.getCondition().accept(this);
+			statement.getTrueBranch().forEach(s -> s.accept(this));
+			statement.getFalseBranch().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStatement(WhileStatement statement) {
+			size++;
+			expressions.add(statement.getCondition());
+			statement.getCondition().accept(this);
+			statement.getBody().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitDoWhileStatement(DoWhileStatement statement) {
+			size++;
+			expressions.add(statement.getCondition());
+			statement.getBody().forEach(s -> s.accept(this));
+			return statement.getCondition().accept(this);
+		}
+
+		@Override
+		public Void visitMatchStatement(MatchStatement statement) {
+			size++;
+			expressions.add(statement.getValue());
+			statement.getValue().accept(this);
+			statement.getCases().forEach(c -> c.getBody().forEach(s -> s.accept(this)));
+			statement.getOtherwise().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStatement(ExpressionStatement statement) {
+			size++;
+			expressions.add(statement.getExpression());
+			return statement.getExpression().accept(this);
+		}
+
+		@Override
+		public Void visitBinaryExpression(BinaryExpression expression) {
+			expression.getLeft().accept(this);
+			return expression.getRight().accept(this);
+		}
+
+		@Override
+		public Void visitUnaryExpression(UnaryExpression expression) {
+			return expression.getOperand().accept(this);
+		}
+
+		@Override
+		public Void visitCommandExpression(CommandExpression expression) {
+			commands = true;
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpression(VariableExpression expression) {
+			names.add(getLocalName(expression.getFQN()));
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionCallExpression(CallExpression expression) {
+			calls |= getIntrinsic(expression) == null;
+			for (Expression argument : expression.getArguments()) {
+				argument.accept(this);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitIndexExpression(IndexExpression expression) {
+			expression.getArray().accept(this);
+			return expression.getIndex().accept(this);
+		}
+	}
+
+	private class StatementCompiler implements StatementVisitor<Void, RuntimeException> {
+		private Statement previous;
+
+		@Override
+		public Void visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) {
+			String variableName = statement.getVariableName();
+			if (locals.isDefined(variableName)) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Variable already declared: " + variableName);
+			}
+
+			FQN expectedTypeFQN = statement.getVariableTypeFQN();
+			if (expectedTypeFQN != null && !types.containsKey(expectedTypeFQN)) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Unknown type: " + expectedTypeFQN);
+			}
+
+			// When the type is known upfront, the value is computed right into the new variable. Otherwise, it may be a
+			// stored record, which is copied as a whole
+			Type expectedType = types.get(expectedTypeFQN);
+			Store variable = null;
+			Value value;
+			if (expectedType != null && !storedTypes.contains(expectedType)) {
+				variable = new Store(expectedType, localCount);
+				localCount += expectedType.size();
+				value = compileValue(statement.getAssignedValue(), getScores(variable, true));
+			} else {
+				value = compileRecord(statement.getAssignedValue());
+			}
+			Type type = value.getType();
+
+			if (expectedType != null && !type.equals(expectedType)) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Assigned value doesn't match the expected type");
+			}
+
+			if (storedTypes.contains(type)) {
+				variable = new Store(type, dataCount++);
+				store(getData(variable, true), value);
+			} else {
+				if (value.isStored()) {
+					value = load(value);
+				}
+				if (variable == null) {
+					variable = new Store(type, localCount);
+					localCount += type.size();
+				}
+				copy(getScores(variable, true), value.getScores());
+			}
+			locals.define(variableName, variable);
+
+			return null;
+		}
+
+		@Override
+		public Void visitVariableDeclarationStatement(VariableDeclarationStatement statement) {
+			String name = statement.getVariableName();
+			if (locals.isDefined(name)) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Variable already declared: " + name);
+			}
+
+			FQN typeFQN = statement.getVariableTypeFQN();
+			if (!types.containsKey(typeFQN)) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Unknown type: " + typeFQN);
+			}
+
+			Type type = types.get(typeFQN);
+			if (storedTypes.contains(type)) {
+				locals.define(name, new Store(type, dataCount));
+				emit(new SetDataInstruction(getLocalData(dataCount++), getZero(type)));
+			} else {
+				locals.define(name, new Store(type, localCount));
+				localCount += type.size();
+			}
+
+			return null;
+		}
+
+		@Override
+		public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+			if (isTailCall(statement)) {
+				compileTailCall((CallExpression) statement.getValue());
+				return null;
+			}
+
+			FQN variableFQN = statement.getVariableFQN();
+			Value variable = resolveVariable(variableFQN);
+
+			if (variable == null) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Undeclared variable " + variableFQN);
+			}
+
+			Expression index = statement.getIndex();
+			if (index != null) {
+				Value element = getElement(statement, variable, index);
+				if (element == null) {
+					compileElementAssignment(statement, variable, index);
+					return null;
+				}
+				variable = element;
+			}
+
+			if (variable.isStored()) {
+				compileStoredAssignment(statement, variable);
+				return null;
+			}
+
+			AssignmentOperator operator = statement.getOperator();
+			Value value = compileValue(statement.getValue(), operator == AssignmentOperator.EQUAL ? variable.getScores() : null);
+
+			if (!value.getType().equals(variable.getType())) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Assigned value doesn't match the expected type");
+			}
+
+			group.get(current).addAll(getAssignment(statement, variable.getScores(), value));
+			return null;
+		}
+
+		// A stored variable or member is copied into as a whole. With any other operator, it's loaded into temporaries,
+		// which are saved back once the operator has been applied
+		private void compileStoredAssignment(VariableAssignmentStatement statement, Value variable) {
+			boolean copy = statement.getOperator() == AssignmentOperator.EQUAL;
+			Value value = copy ? compileRecord(statement.getValue()) : compileValue(statement.getValue(), null);
+			if (!value.getType().equals(variable.getType())) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Assigned value doesn't match the expected type");
+			}
+
+			if (copy) {
+				store(variable.getData(), value);
+				return;
+			}
+			Value result = load(variable);
+			group.get(current).addAll(getAssignment(statement, result.getScores(), value));
+			group.get(current).addAll(getSave(variable.getData(), result));
+		}
+
+		// An element picked at runtime is assigned by the leaf of the search matching the index. Assignments to indices out
+		// of bounds have no effect
+		private void compileElementAssignment(VariableAssignmentStatement statement, Value array, Expression index) {
+			ArrayType type = (ArrayType) array.getType();
+			int size = type.getElementType().size();
+			Score indexScore = compileIndex(index, array.getScores());
+
+			Value value = preserve(compileValue(statement.getValue(), null));
+			if (!value.getType().equals(type.getElementType())) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Assigned value doesn't match the expected type");
+			}
+
+			// An element of a long global array is read if the operator needs its value, then written back, through macros
+			Integer slot = getMacroSlot(array);
+			if (slot != null) {
+				List<Instruction> instructions = new ArrayList<>();
+				if (statement.getOperator() != AssignmentOperator.EQUAL) {
+					instructions.add(getMacroCall(size, true));
+				}
+				instructions.addAll(getAssignment(statement, getRegisterScores(1, size), value));
+				instructions.add(getMacroCall(size, false));
+				compileMacroAccess(indexScore, slot, type, instructions);
+				return;
+			}
+
+			List<Instruction> elementActions = new ArrayList<>();
+			for (int i = 0, length = type.getLength(); i < length; i++) {
+				elementActions.add(getAction(getAssignment(statement, array.getScores().subList(i * size, (i + 1) * size), value)));
+			}
+			compileElementDecision(indexScore, type.getLength(), elementActions, null);
+		}
+
+		// The instructions applying the operator of the assignment to the scores of a variable
+		private List<Instruction> getAssignment(VariableAssignmentStatement statement, List<Score> scores, Value value) {
+			Type type = value.getType();
+			Score variableScore = type.size() > 0 ? scores.get(0) : null;
+			switch (statement.getOperator()) {
+				case EQUAL:
+					return getCopy(scores, value.getScores());
+
+				case PLUS_EQUAL:
+					return getOperation(statement, variableScore, ScoreOperator.ADD, value, PrimitiveType.INTEGER);
+
+				case MINUS_EQUAL:
+					return getOperation(statement, variableScore, ScoreOperator.SUBTRACT, value, PrimitiveType.INTEGER);
+
+				case TIMES_EQUAL:
+					return getOperation(statement, variableScore, ScoreOperator.MULTIPLY, value, PrimitiveType.INTEGER);
+
+				case DIVIDE_EQUAL:
+					return getOperation(statement, variableScore, ScoreOperator.DIVIDE, value, PrimitiveType.INTEGER);
+
+				case REMAINDER_EQUAL:
+					return getOperation(statement, variableScore, ScoreOperator.REMAINDER, value, PrimitiveType.INTEGER);
+
+				case AND_EQUAL:
+					return getOperation(statement, variableScore, ScoreOperator.MULTIPLY, value, PrimitiveType.BOOLEAN);
+
+				case XOR_EQUAL:
+					if (!type.equals(PrimitiveType.BOOLEAN)) {
+						throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
+					}
+					return Collections.singletonList(new ExecuteInstruction(new ComparisonCondition(true, variableScore, ComparisonOperator.EQUAL, value.getScore()), variableScore));
+
+				case OR_EQUAL:
+					if (!type.equals(PrimitiveType.BOOLEAN)) {
+						throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
+					}
+					return Collections.singletonList(new ExecuteInstruction(new MatchesCondition(false, value.getScore(), 1), new SetInstruction(variableScore, 1)));
+
+				default:
+					assert false : statement.getOperator();
+					return Collections.emptyList();
+			}
+		}
+
+		@Override
+		public Void visitIfStatement(IfStatement statement) {
+			List<Statement> falseBranch = statement.getFalseBranch();
+			List<Condition> conditions = compileCondition(statement.getCondition());
+
+			// A chain of conditions can't be negated, so it's checked once and its result kept aside
+			if (!falseBranch.isEmpty() && conditions.size() > 1) {
+				conditions = materialize(conditions);
+			}
+
+			FQN trueHelperFQN = createHelper();
+			compileBlock(trueHelperFQN, statement.getTrueBranch());
+
+			// The true branch might change the scores the condition is checked on
+			if (!falseBranch.isEmpty() && mayChange(trueHelperFQN, Instructions.getScores(conditions.get(0)), new HashSet<>())) {
+				conditions = materialize(conditions);
+			}
+			emit(new ExecuteInstruction(conditions, null, new CallInstruction(trueHelperFQN)));
+
+			if (!falseBranch.isEmpty()) {
+				FQN falseHelperFQN = createHelper();
+				emit(new ExecuteInstruction(conditions.get(0).negate(), new CallInstruction(falseHelperFQN)));
+				compileBlock(falseHelperFQN, falseBranch);
+			}
+
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStatement(WhileStatement statement) {
+			if (statement == slicedLoop) {
+				compileSlicedLoop(statement);
+				return null;
+			}
+			if (statement.getSlice() != null) {
+				compileSliceCall(statement);
+				return null;
+			}
+
+			// The values hoisted out of the loop only hold where it's compiled: an enclosing loop being unrolled compiles it
+			// again, and then they have to be computed anew
+			Map<Expression, Value> outer = new IdentityHashMap<>(hoisted);
+			compileLoop(statement);
+			hoisted.clear();
+			hoisted.putAll(outer);
+			return null;
+		}
+
+		private void compileLoop(WhileStatement statement) {
+			Expression condition = statement.getCondition();
+			List<Statement> body = statement.getBody();
+			LoopScanner scanner = new LoopScanner(condition, body);
+			hoist(condition, scanner);
+			for (Expression expression : scanner.expressions) {
+				hoist(expression, scanner);
+			}
+
+			// Loops with a known trip count are unrolled: entirely if they're small enough, otherwise a few iterations at a
+			// time, after running the ones which don't make up a whole group
+			int tripCount = getTripCount(previous, condition, body, scanner);
+			if (tripCount >= 0 && tripCount * scanner.size <= MAX_UNROLLED_SIZE) {
+				for (int i = 0; i < tripCount; i++) {
+					compileInline(body);
+				}
+				return;
+			}
+
+			int factor = 1;
+			if (tripCount >= 0) {
+				while (factor < MAX_UNROLL_FACTOR && factor * 2 <= tripCount && factor * 2 * scanner.size <= MAX_UNROLLED_SIZE) {
+					factor *= 2;
+				}
+				for (int i = 0; i < tripCount % factor; i++) {
+					compileInline(body);
+				}
+			}
+
+			// The loop is rotated: its condition is checked before entering it, unless it's known to hold, and then at the
+			// end of each pass
+			FQN helperFQN = createHelper();
+			if (tripCount >= 0) {
+				emit(new CallInstruction(helperFQN));
+			} else {
+				emit(new ExecuteInstruction(compileCondition(condition), null, new CallInstruction(helperFQN)));
+			}
+
+			FQN caller = current;
+			current = helperFQN;
+			for (int i = 0; i < factor; i++) {
+				compileInline(body);
+			}
+			emit(new ExecuteInstruction(compileCondition(condition), null, new CallInstruction(helperFQN)));
+			current = caller;
+		}
+
+		@Override
+		public Void visitDoWhileStatement(DoWhileStatement statement) {
+			FQN helperFQN = createHelper();
+			emit(new CallInstruction(helperFQN));
+			compileBlock(helperFQN, statement.getBody());
+
+			FQN caller = current;
+			current = helperFQN;
+			List<Condition> conditions = compileCondition(statement.getCondition());
+			emit(new ExecuteInstruction(conditions, null, new CallInstruction(helperFQN)));
+			current = caller;
+
+			return null;
+		}
+
+		// The cases split the values into consecutive segments, together with the gaps between them which are left to the
+		// else branch. A binary search on the segments picks the one to run, halving them with a single check each time
+		@Override
+		public Void visitMatchStatement(MatchStatement statement) {
+			List<int[]> ranges = getRanges(statement);
+			Value value = compileValue(statement.getValue(), null);
+			if (!value.getType().equals(PrimitiveType.INTEGER)) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
+			}
+
+			List<FQN> caseHelpers = new ArrayList<>();
+			for (MatchCase matchCase : statement.getCases()) {
+				FQN helperFQN = createHelper();
+				compileBlock(helperFQN, matchCase.getBody());
+				caseHelpers.add(helperFQN);
+			}
+			FQN otherwiseHelperFQN = null;
+			if (!statement.getOtherwise().isEmpty()) {
+				otherwiseHelperFQN = createHelper();
+				compileBlock(otherwiseHelperFQN, statement.getOtherwise());
+				caseHelpers.add(otherwiseHelperFQN);
+			}
+
+			// The value is checked again after running a case, so it's kept aside if the case might change it
+			Score score = value.getScore();
+			Set<Score> scores = Collections.singleton(score);
+			if (score.isTemporary() || caseHelpers.stream().anyMatch(h -> mayChange(h, scores, new HashSet<>()))) {
+				score = getLocalScore(localCount++);
+				emit(new OperationInstruction(score, ScoreOperator.ASSIGN, value.getScore()));
+			}
+
+			Instruction otherwise = otherwiseHelperFQN != null ? new CallInstruction(otherwiseHelperFQN) : null;
+			List<Integer> starts = new ArrayList<>();
+			List<Instruction> actions = new ArrayList<>();
+			long next = Integer.MIN_VALUE;
+			for (int[] range : ranges) {
+				if (range[0] > next) {
+					addSegment(starts, actions, (int) next, otherwise);
+				}
+				addSegment(starts, actions, range[0], new CallInstruction(caseHelpers.get(range[2])));
+				next = (long) range[1] + 1;
+			}
+			if (next <= Integer.MAX_VALUE) {
+				addSegment(starts, actions, (int) next, otherwise);
+			}
+
+			compileDecision(score, starts, actions, 0, starts.size() - 1);
+			return null;
+		}
+
+		@Override
+		public Void visitYieldStatement(YieldStatement statement) {
+			throw new CompileException(statement.getSource().getBeginIndex(), "Only an async function can be suspended");
+		}
+
+		@Override
+		public Void visitExpressionStatement(ExpressionStatement statement) {
+			if (isTailCall(statement)) {
+				compileTailCall((CallExpression) statement.getExpression());
+				return null;
+			}
+
+			// The result of a call is left in the return registers even if it isn't used, where raw commands may read it.
+			// This matters for calls evaluated at compile time, whose result would otherwise go in a dead temporary
+			Expression expression = statement.getExpression();
+			List<Score> target = null;
+			if (expression instanceof CallExpression && getIntrinsic((CallExpression) expression) == null) {
+				FunctionDefinition callee = functions.get(resolveFunction(((CallExpression) expression).getFunctionFQN()));
+				Type returnType = callee != null ? getReturnType(callee) : null;
+				if (returnType != null && !storedTypes.contains(returnType)) {
+					target = getRegisterScores(0, returnType.size());
+					registerCount = Math.max(registerCount, returnType.size());
+				}
+			}
+			compileExpression(expression, target);
+			return null;
+		}
+
+		// All of the arguments are evaluated before any parameter is updated, since they may refer to the parameters
+		private void compileTailCall(CallExpression expression) {
+			List<TypeAndName> parameters = function.getParameters();
+			List<Expression> arguments = expression.getArguments();
+			if (arguments.size() != parameters.size()) {
+				throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
+			}
+
+			List<Value> values = new ArrayList<>();
+			for (int i = 0, argumentCount = arguments.size(); i < argumentCount; i++) {
+				Type parameterType = types.get(parameters.get(i).getTypeFQN());
+				boolean stored = storedTypes.contains(parameterType);
+				Value argument = stored ? compileRecord(arguments.get(i)) : materialize(compileValue(arguments.get(i), null));
+				if (!argument.getType().equals(parameterType)) {
+					throw new CompileException(expression.getSource().getBeginIndex(), "Passed arguments don't match the function signature");
+				}
+				if (stored) {
+					DataLocation data = getLocalData(dataCount++);
+					store(data, argument);
+					argument = new Value(parameterType, data);
+				}
+				values.add(argument);
+			}
+
+			for (int i = 0, argumentCount = arguments.size(); i < argumentCount; i++) {
+				Value parameter = resolveVariable(new FQN(parameters.get(i).getName()));
+				if (parameter.isStored()) {
+					store(parameter.getData(), values.get(i));
+				} else {
+					copy(parameter.getScores(), values.get(i).getScores());
+				}
+			}
+			emit(new SetInstruction(again, 1));
+		}
+
+		private List<Instruction> getOperation(Statement statement, Score variableScore, ScoreOperator operator, Value value, Type type) {
+			if (!value.getType().equals(type)) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
+			}
+			return Collections.singletonList(new OperationInstruction(variableScore, operator, value.getScore()));
+		}
+
+		private void compileBlock(FQN helperFQN, List<Statement> block) {
+			FQN caller = current;
+			current = helperFQN;
+			compileInline(block);
+			current = caller;
+		}
+
+		private void compileInline(List<Statement> block) {
+			locals = new Scope<>(locals);
+			compileStatements(block);
+			locals = locals.getParent();
+		}
+
+		// A sliced loop runs in a function of its own, which takes the variables the loop uses as arguments. Anything after
+		// the loop would run before it's over, so there must be nothing
+		private void compileSliceCall(WhileStatement statement) {
+			if (getReturnType(function) != null || !tails.contains(statement)) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "A sliced loop must be the last statement of a function returning no value");
+			}
+			if (statement.getSlice() <= 0) {
+				throw new CompileException(statement.getSource().getBeginIndex(), "Invalid slice: " + statement.getSlice());
+			}
+
+			List<TypeAndName> parameters = new ArrayList<>();
+			Map<String, Type> parameterTypes = new HashMap<>();
+			int address = 0;
+			for (String name : new LoopScanner(statement.getCondition(), statement.getBody()).names) {
+				Store store = locals.get(name);
+				if (store == null) {
+					continue;
+				}
+
+				parameters.add(new TypeAndName(statement.getSource(), SLICE_TYPE_FQN, name));
+				parameterTypes.put(name, store.getType());
+				List<Score> scores = getScores(store, true);
+				copy(getRegisterScores(address, scores.size()), scores);
+				address += scores.size();
+			}
+			registerCount = Math.max(registerCount, address);
+
+			FQN sliceFQN = new FQN(Compiler.getCraftlangNamespace(namespace), functionFQN.getName() + ".s" + slices.size());
+			FunctionDefinition slice = new FunctionDefinition(statement.getSource(), Collections.emptyList(), null, sliceFQN.getName(), parameters, Collections.singletonList(statement));
+			FunctionCompiler sliceCompiler = new FunctionCompiler(types, storedTypes, globals, functions, interpreter, namespace, sliceFQN, slice);
+			sliceCompiler.slicedLoop = statement;
+			sliceCompiler.sliceTypes.putAll(parameterTypes);
+			slices.add(sliceCompiler);
+			emit(new CallInstruction(sliceFQN));
+		}
+
+		// Each call of the function runs the loop for at most the given number of iterations. If the loop isn't over by
+		// then, the parameters are saved in an entity, and on the next tick they're passed back to the function
+		private void compileSlicedLoop(WhileStatement statement) {
+			Expression condition = statement.getCondition();
+			List<Statement> body = statement.getBody();
+			LoopScanner scanner = new LoopScanner(condition, body);
+			hoist(condition, scanner);
+			for (Expression expression : scanner.expressions) {
+				hoist(expression, scanner);
+			}
+
+			Score budget = getLocalScore(localCount++);
+			emit(new SetInstruction(budget, statement.getSlice()));
+			FQN helperFQN = createHelper();
+			emit(new ExecuteInstruction(compileCondition(condition), null, new CallInstruction(helperFQN)));
+
+			// The iteration running out of budget parks the frame before the other one would go on
+			FQN parkFQN = createHelper();
+			FQN caller = current;
+			current = helperFQN;
+			compileInline(body);
+			emit(new AddInstruction(budget, -1));
+			List<Condition> conditions = compileCondition(condition);
+			List<Condition> exhausted = new ArrayList<>();
+			exhausted.add(new MatchesCondition(false, budget, null, 0));
+			exhausted.addAll(conditions);
+			List<Condition> remaining = new ArrayList<>();
+			remaining.add(new MatchesCondition(false, budget, 1, null));
+			remaining.addAll(conditions);
+			emit(
+				new ExecuteInstruction(exhausted, null, new CallInstruction(parkFQN)),
+				new ExecuteInstruction(remaining, null, new CallInstruction(helperFQN))
+			);
+
+			current = parkFQN;
+			int address = 0;
+			for (TypeAndName parameter : function.getParameters()) {
+				List<Score> scores = resolveVariable(new FQN(parameter.getName())).getScores();
+				copy(getRegisterScores(address, scores.size()), scores);
+				address += scores.size();
+			}
+			registerCount = Math.max(registerCount, address + 1);
+			emit(
+				new SetInstruction(getRegisterScore(address), 1),
+				new ParkFrameInstruction(getParkingTag(), address, createResumer(getParkingTag(), address, functionFQN))
+			);
+			current = caller;
+		}
+
+		// The body is split into blocks at the statements which may suspend the function, and a dispatcher runs them in
+		// the order given by the state variable, until it's negative. Suspending saves the whole frame, state included, in
+		// an entity; once the wait is over, the frame is restored from it and the dispatcher goes on from the saved state
+		private void compileAsync(List<Statement> body) {
+			state = getLocalScore(localCount++);
+			delay = getLocalScore(localCount++);
+			FQN dispatcherFQN = createHelper();
+			parkFQN = createHelper();
+			emit(new SetInstruction(state, 0), new CallInstruction(dispatcherFQN));
+
+			FQN caller = current;
+			current = blocks.get(createBlock());
+			compileSuspendable(body);
+			emit(new SetInstruction(state, -1));
+
+			// Blocks coming later in the dispatcher are run in the same pass, while jumping back takes another one
+			current = dispatcherFQN;
+			for (int i = 0, blockCount = blocks.size(); i < blockCount; i++) {
+				emit(new ExecuteInstruction(new MatchesCondition(false, state, i), new CallInstruction(blocks.get(i))));
+			}
+			emit(new ExecuteInstruction(new MatchesCondition(false, state, 0, null), new CallInstruction(dispatcherFQN)));
+
+			// Locals declared anywhere in the function keep their address, so the frame is saved and restored as a whole
+			FQN restoreFQN = createHelper();
+			entries.add(restoreFQN);
+			current = parkFQN;
+			copy(getRegisterScores(0, localCount), getLocalScores(0, localCount));
+			emit(
+				new OperationInstruction(getRegisterScore(localCount), ScoreOperator.ASSIGN, delay),
+				new ParkFrameInstruction(getParkingTag(), localCount, createResumer(getParkingTag(), localCount, restoreFQN))
+			);
+			current = restoreFQN;
+			emit(new PushFrameInstruction());
+			copy(getLocalScores(0, localCount), getRegisterScores(0, localCount));
+			emit(new CallInstruction(dispatcherFQN), new PopFrameInstruction());
+			registerCount = Math.max(registerCount, localCount + 1);
+			current = caller;
+		}
+
+		// Statements which can't suspend the function are compiled as usual, within the current block
+		private void compileSuspendable(List<Statement> block) {
+			locals = new Scope<>(locals);
+			Statement previous = null;
+			for (Statement statement : block) {
+				this.previous = previous;
+				if (mayYield(statement)) {
+					compileSuspension(statement);
+				} else {
+					statement.accept(this);
+				}
+				previous = statement;
+			}
+			locals = locals.getParent();
+		}
+
+		// Control flow which may suspend the function jumps between blocks by setting the state. Blocks which are left by
+		// going on with the next statement jump to it once it's known where it starts
+		private void compileSuspension(Statement statement) {
+			if (statement instanceof YieldStatement) {
+				Expression ticks = ((YieldStatement) statement).getTicks();
+				if (ticks == null) {
+					emit(new SetInstruction(delay, 1));
+				} else {
+					Value value = compileValue(ticks, Collections.singletonList(delay));
+					if (!value.getType().equals(PrimitiveType.INTEGER)) {
+						throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
+					}
+					copy(Collections.singletonList(delay), value.getScores());
+				}
+				int next = createBlock();
+				emit(new SetInstruction(state, next), new CallInstruction(parkFQN), new SetInstruction(state, -1));
+				current = blocks.get(next);
+			} else if (statement instanceof IfStatement) {
+				IfStatement ifStatement = (IfStatement) statement;
+				List<Condition> conditions = compileCondition(ifStatement.getCondition());
+				if (conditions.size() > 1) {
+					conditions = materialize(conditions);
+				}
+
+				FQN branchFQN = current;
+				int trueBlock = createBlock();
+				current = blocks.get(trueBlock);
+				compileSuspendable(ifStatement.getTrueBranch());
+				FQN trueEnd = current;
+				FQN falseEnd = null;
+				int falseBlock = -1;
+				if (!ifStatement.getFalseBranch().isEmpty()) {
+					falseBlock = createBlock();
+					current = blocks.get(falseBlock);
+					compileSuspendable(ifStatement.getFalseBranch());
+					falseEnd = current;
+				}
+
+				int join = createBlock();
+				group.get(branchFQN).add(new ExecuteInstruction(conditions, null, new SetInstruction(state, trueBlock)));
+				group.get(branchFQN).add(new ExecuteInstruction(conditions.get(0).negate(), new SetInstruction(state, falseEnd != null ? falseBlock : join)));
+				group.get(trueEnd).add(new SetInstruction(state, join));
+				if (falseEnd != null) {
+					group.get(falseEnd).add(new SetInstruction(state, join));
+				}
+				current = blocks.get(join);
+			} else if (statement instanceof WhileStatement) {
+				WhileStatement whileStatement = (WhileStatement) statement;
+				if (whileStatement.getSlice() != null) {
+					throw new CompileException(statement.getSource().getBeginIndex(), "A sliced loop can't suspend the function");
+				}
+
+				int head = createBlock();
+				emit(new SetInstruction(state, head));
+				current = blocks.get(head);
+				List<Condition> conditions = compileCondition(whileStatement.getCondition());
+				if (conditions.size() > 1) {
+					conditions = materialize(conditions);
+				}
+
+				int loop = createBlock();
+				current = blocks.get(loop);
+				compileSuspendable(whileStatement.getBody());
+				emit(new SetInstruction(state, head));
+
+				int exit = createBlock();
+				group.get(blocks.get(head)).add(new ExecuteInstruction(conditions, null, new SetInstruction(state, loop)));
+				group.get(blocks.get(head)).add(new ExecuteInstruction(conditions.get(0).negate(), new SetInstruction(state, exit)));
+				current = blocks.get(exit);
+			} else if (statement instanceof MatchStatement) {
+				// Only the state is set in between, so the value needs no copy
+				MatchStatement matchStatement = (MatchStatement) statement;
+				List<int[]> ranges = getRanges(matchStatement);
+				Value value = compileValue(matchStatement.getValue(), null);
+				if (!value.getType().equals(PrimitiveType.INTEGER)) {
+					throw new CompileException(statement.getSource().getBeginIndex(), "Unsupported operation");
+				}
+
+				FQN branchFQN = current;
+				List<Integer> caseBlocks = new ArrayList<>();
+				List<FQN> ends = new ArrayList<>();
+				for (MatchCase matchCase : matchStatement.getCases()) {
+					int caseBlock = createBlock();
+					caseBlocks.add(caseBlock);
+					current = blocks.get(caseBlock);
+					compileSuspendable(matchCase.getBody());
+					ends.add(current);
+				}
+				int otherwiseBlock = -1;
+				if (!matchStatement.getOtherwise().isEmpty()) {
+					otherwiseBlock = createBlock();
+					current = blocks.get(otherwiseBlock);
+					compileSuspendable(matchStatement.getOtherwise());
+					ends.add(current);
+				}
+
+				int join = createBlock();
+				group.get(branchFQN).add(new SetInstruction(state, otherwiseBlock >= 0 ? otherwiseBlock : join));
+				for (int[] range : ranges) {
+					group.get(branchFQN).add(new ExecuteInstruction(new MatchesCondition(false, value.getScore(), range[0], range[1]), new SetInstruction(state, caseBlocks.get(range[2]))));
+				}
+				for (FQN end : ends) {
+					group.get(end).add(new SetInstruction(state, join));
+				}
+				current = blocks.get(join);
+			} else if (statement instanceof DoWhileStatement) {
+				DoWhileStatement doWhileStatement = (DoWhileStatement) statement;
+				int loop = createBlock();
+				emit(new SetInstruction(state, loop));
+				current = blocks.get(loop);
+				compileSuspendable(doWhileStatement.getBody());
+				List<Condition> conditions = compileCondition(doWhileStatement.getCondition());
+				if (conditions.size() > 1) {
+					conditions = materialize(conditions);
+				}
+
+				FQN loopEnd = current;
+				int exit = createBlock();
+				group.get(loopEnd).add(new ExecuteInstruction(conditions, null, new SetInstruction(state, loop)));
+				group.get(loopEnd).add(new ExecuteInstruction(conditions.get(0).negate(), new SetInstruction(state, exit)));
+				current = blocks.get(exit);
+			}
+		}
+
+		// Keeps track of the statement preceding the one being compiled, which may tell the starting value of a loop
+		private void compileStatements(List<Statement> block) {
+			Statement previous = null;
+			for (Statement statement : block) {
+				this.previous = previous;
+				statement.accept(this);
+				previous = statement;
+			}
+		}
+
+		// Computes the largest parts of the expression which give the same value on every pass of the loop once, before
+		// entering it
+		private void hoist(Expression expression, LoopScanner scanner) {
+			if (hoisted.containsKey(expression)) {
+				return;
+			}
+
+			boolean arithmetic = false;
+			if (expression instanceof BinaryExpression) {
+				BinaryOperator operator = ((BinaryExpression) expression).getOperator();
+				arithmetic = operator == BinaryOperator.PLUS || operator == BinaryOperator.MINUS || operator == BinaryOperator.TIMES || operator == BinaryOperator.DIVIDE || operator == BinaryOperator.REMAINDER;
+			} else if (expression instanceof UnaryExpression) {
+				arithmetic = ((UnaryExpression) expression).getOperator() == UnaryOperator.MINUS;
+			}
+
+			if (arithmetic && scanner.isInvariant(expression) && interpreter.evaluate(expression, namespace) == null) {
+				Value value = compileValue(expression, null);
+				Store store = new Store(value.getType(), localCount);
+				localCount += value.getType().size();
+				List<Score> scores = getScores(store, true);
+				copy(scores, value.getScores());
+				hoisted.put(expression, new Value(value.getType(), scores));
+				return;
+			}
+
+			if (expression instanceof BinaryExpression) {
+				hoist(((BinaryExpression) expression).getLeft(), scanner);
+				hoist(((BinaryExpression) expression).getRight(), scanner);
+			} else if (expression instanceof UnaryExpression) {
+				hoist(((UnaryExpression) expression).getOperand(), scanner);
+			} else if (expression instanceof CallExpression) {
+				for (Expression argument : ((CallExpression) expression).getArguments()) {
+					hoist(argument, scanner);
+				}
+			}
+		}
+
+		// The number of passes of a loop counting a local variable from a constant towards a constant by a constant step,
+		// or -1 if it isn't known. The variable must only be changed by the last statement of the loop
+		private int getTripCount(Statement previous, Expression condition, List<Statement> body, LoopScanner scanner) {
+			if (!(condition instanceof BinaryExpression) || body.isEmpty() || scanner.commands) {
+				return -1;
+			}
+
+			BinaryExpression comparison = (BinaryExpression) condition;
+			BinaryOperator operator = comparison.getOperator();
+			Expression left = comparison.getLeft();
+			Expression right = comparison.getRight();
+			if (!(left instanceof VariableExpression)) {
+				Expression swap = left;
+				left = right;
+				right = swap;
+				operator = getSwappedOperator(operator);
+			}
+			if (!(left instanceof VariableExpression) || operator == null) {
+				return -1;
+			}
+
+			Value counter = resolveVariable(((VariableExpression) left).getFQN());
+			Object bound = interpreter.evaluate(right, namespace);
+			if (counter == null || !counter.getType().equals(PrimitiveType.INTEGER) || counter.isStored() || counter.getScore() instanceof PlayerScore || !(bound instanceof Integer)) {
+				return -1;
+			}
+
+			// The starting value is assigned by the statement right before the loop
+			Object start = null;
+			if (previous instanceof VariableDeclarationAndAssignmentStatement) {
+				VariableDeclarationAndAssignmentStatement declaration = (VariableDeclarationAndAssignmentStatement) previous;
+				if (resolveVariable(new FQN(declaration.getVariableName())).getScores().equals(counter.getScores())) {
+					start = interpreter.evaluate(declaration.getAssignedValue(), namespace);
+				}
+			} else if (previous instanceof VariableAssignmentStatement) {
+				VariableAssignmentStatement assignment = (VariableAssignmentStatement) previous;
+				Value variable = resolveVariable(assignment.getVariableFQN());
+				if (assignment.getOperator() == AssignmentOperator.EQUAL && variable != null && variable.getScores().equals(counter.getScores())) {
+					start = interpreter.evaluate(assignment.getValue(), namespace);
+				}
+			}
+
+			Statement last = body.get(body.size() - 1);
+			if (!(start instanceof Integer) || !(last instanceof VariableAssignmentStatement)) {
+				return -1;
+			}
+			VariableAssignmentStatement increment = (VariableAssignmentStatement) last;
+			Value variable = resolveVariable(increment.getVariableFQN());
+			Object step = interpreter.evaluate(increment.getValue(), namespace);
+			AssignmentOperator incrementOperator = increment.getOperator();
+			if (variable == null || !variable.getScores().equals(counter.getScores()) || !(step instanceof Integer) || incrementOperator != AssignmentOperator.PLUS_EQUAL && incrementOperator != AssignmentOperator.MINUS_EQUAL) {
+				return -1;
+			}
+			if (scanner.getWrites(body.subList(0, body.size() - 1)).contains(counter.getScore())) {
+				return -1;
+			}
+
+			int value = (Integer) start;
+			int delta = incrementOperator == AssignmentOperator.PLUS_EQUAL ? (Integer) step : -(Integer) step;
+			int tripCount = 0;
+			while (compare(value, operator, (Integer) bound)) {
+				if (++tripCount > MAX_TRIP_COUNT) {
+					return -1;
+				}
+				value += delta;
+			}
+			return tripCount;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,588 @@
+package dev.mamo.craftlangc;
+
+import dev.mamo.craftlangc.ast.*;
+import dev.mamo.craftlangc.ast.expression.*;
+import dev.mamo.craftlangc.ast.statement.*;
+import dev.mamo.craftlangc.core.*;
+import dev.mamo.craftlangc.ir.*;
+import dev.mamo.craftlangc.type.*;
+
+import java.util.*;
+
+// Evaluates expressions at compile time. Only calls to pure functions can be evaluated, that is, functions which don't
+// run raw commands, don't refer to global variables and only call pure functions in turn. Integers are represented as
+// Integer and booleans as Boolean; whatever can't be evaluated, or takes more than a fixed number of steps or nested
+// calls, is left for the data pack to compute
+public class Interpreter {
+	private static final int MAX_STEPS = 100000;
+	private static final int MAX_DEPTH = 256;
+
+	private final Map<FQN, Type> types;
+	private final Map<FQN, FunctionDefinition> functions;
+	private final Set<FQN> pureFunctions = new HashSet<>();
+	private final Map<FQN, Namespace> namespaces = new HashMap<>();
+	private int steps;
+	private int depth;
+
+	public Interpreter(Map<FQN, Type> types, Map<FQN, FunctionDefinition> functions) {
+		this.types = types;
+		this.functions = functions;
+
+		// Start from the functions which are pure by themselves, then drop the ones calling impure functions until
+		// nothing changes
+		Map<FQN, Set<FQN>> callees = new HashMap<>();
+		for (Map.Entry<FQN, FunctionDefinition> entry : functions.entrySet()) {
+			Set<FQN> functionCallees = new HashSet<>();
+			if (isLocallyPure(entry.getKey().getNamespace(), entry.getValue(), functionCallees)) {
+				pureFunctions.add(entry.getKey());
+				callees.put(entry.getKey(), functionCallees);
+			}
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = pureFunctions.removeIf(f -> !pureFunctions.containsAll(callees.get(f)));
+		}
+	}
+
+	public boolean isPure(FQN functionFQN) {
+		return pureFunctions.contains(functionFQN);
+	}
+
+	// Makes a function derived from a pure one, such as a specialized clone, available for evaluation. Its names are
+	// resolved in the given namespace rather than in its own
+	public void addPureFunction(FQN functionFQN, Namespace namespace) {
+		pureFunctions.add(functionFQN);
+		namespaces.put(functionFQN, namespace);
+	}
+
+	// Returns the value of an expression which doesn't refer to any variable, or null if it can't be evaluated
+	public Object evaluate(Expression expression, Namespace namespace) {
+		steps = 0;
+		depth = 0;
+		try {
+			return expression.accept(new ExpressionEvaluator(namespace, new Scope<>()));
+		} catch (EvaluationException e) {
+			return null;
+		} catch (StackOverflowError e) {
+			// The depth limit may still be too much for a small stack
+			return null;
+		}
+	}
+
+	private Object call(FQN functionFQN, List<Object> arguments) throws EvaluationException {
+		FunctionDefinition function = functions.get(functionFQN);
+		if (function == null || !isPure(functionFQN)) {
+			throw new EvaluationException();
+		}
+
+		Scope<String, Object> locals = new Scope<>();
+		List<TypeAndName> parameters = function.getParameters();
+		if (parameters.size() != arguments.size()) {
+			throw new EvaluationException();
+		}
+		for (int i = 0, parameterCount = parameters.size(); i < parameterCount; i++) {
+			Object argument = arguments.get(i);
+			if (!hasType(argument, types.get(parameters.get(i).getTypeFQN()))) {
+				throw new EvaluationException();
+			}
+			locals.define(parameters.get(i).getName(), argument);
+		}
+
+		// The returned value is kept in a variable named after the function, just like at runtime
+		Type returnType = null;
+		FQN returnTypeFQN = function.getReturnTypeFQN();
+		if (returnTypeFQN != null && !returnTypeFQN.equals(new FQN("void"))) {
+			returnType = types.get(returnTypeFQN);
+			if (returnType == null) {
+				throw new EvaluationException();
+			}
+			locals.define(function.getName(), null);
+		}
+
+		// Each nested call takes up the Java stack, so deep recursion is given up on well before it could overflow
+		if (++depth > MAX_DEPTH) {
+			throw new EvaluationException();
+		}
+		StatementEvaluator evaluator = new StatementEvaluator(namespaces.getOrDefault(functionFQN, functionFQN.getNamespace()), locals);
+		try {
+			for (Statement statement : function.getBody()) {
+				statement.accept(evaluator);
+			}
+		} finally {
+			depth--;
+		}
+
+		if (returnType == null) {
+			return null;
+		}
+		Object result = locals.get(function.getName());
+		if (!hasType(result, returnType)) {
+			throw new EvaluationException();
+		}
+		return result;
+	}
+
+	private void step() throws EvaluationException {
+		if (++steps > MAX_STEPS) {
+			throw new EvaluationException();
+		}
+	}
+
+	// Whether the function doesn't run raw commands and doesn't refer to global variables. The functions it calls are
+	// collected in callees, except for intrinsics, which are always pure
+	private boolean isLocallyPure(Namespace namespace, FunctionDefinition function, Set<FQN> callees) {
+		Set<String> names = new HashSet<>(Arrays.asList("true", "false", function.getName()));
+		for (TypeAndName parameter : function.getParameters()) {
+			names.add(parameter.getName());
+		}
+
+		boolean[] pure = {true};
+		ExpressionVisitor<Void, RuntimeException> expressionVisitor = new ExpressionVisitor<Void, RuntimeException>() {
+			@Override
+			public Void visitBinaryExpression(BinaryExpression expression) {
+				expression.getLeft().accept(this);
+				expression.getRight().accept(this);
+				return null;
+			}
+
+			@Override
+			public Void visitUnaryExpression(UnaryExpression expression) {
+				expression.getOperand().accept(this);
+				return null;
+			}
+
+			@Override
+			public Void visitCommandExpression(CommandExpression expression) {
+				pure[0] = false;
+				return null;
+			}
+
+			@Override
+			public Void visitFunctionCallExpression(CallExpression expression) {
+				FQN calleeFQN = expression.getFunctionFQN();
+				if (Intrinsic.resolve(calleeFQN, namespace, functions) == null) {
+					callees.add(calleeFQN.getNamespace() == null ? new FQN(namespace, calleeFQN.getName()) : calleeFQN);
+				}
+				for (Expression argument : expression.getArguments()) {
+					argument.accept(this);
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitVariableExpression(VariableExpression expression) {
+				if (expression.getFQN().getNamespace() != null || !names.contains(expression.getFQN().getName())) {
+					pure[0] = false;
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitIndexExpression(IndexExpression expression) {
+				expression.getArray().accept(this);
+				expression.getIndex().accept(this);
+				return null;
+			}
+		};
+
+		StatementVisitor<Void, RuntimeException> statementVisitor = new StatementVisitor<Void, RuntimeException>() {
+			@Override
+			public Void visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) {
+				statement.getAssignedValue().accept(expressionVisitor);
+				names.add(statement.getVariableName());
+				return null;
+			}
+
+			@Override
+			public Void visitVariableDeclarationStatement(VariableDeclarationStatement statement) {
+				names.add(statement.getVariableName());
+				return null;
+			}
+
+			@Override
+			public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+				FQN variableFQN = statement.getVariableFQN();
+				if (variableFQN.getNamespace() != null || !names.contains(variableFQN.getName())) {
+					pure[0] = false;
+				}
+				if (statement.getIndex() != null) {
+					statement.getIndex().accept(expressionVisitor);
+				}
+				statement.getValue().accept(expressionVisitor);
+				return null;
+			}
+
+			@Override
+			public Void visitIfStatement(IfStatement statement) {
+				statement.getCondition().accept(expressionVisitor);
+				statement.getTrueBranch().forEach(s -> s.accept(this));
+				statement.getFalseBranch().forEach(s -> s.accept(this));
+				return null;
+			}
+
+			@Override
+			public Void visitWhileStatement(WhileStatement statement) {
+				statement.getCondition().accept(expressionVisitor);
+				statement.getBody().forEach(s -> s.accept(this));
+				return null;
+			}
+
+			@Override
+			public Void visitDoWhileStatement(DoWhileStatement statement) {
+				statement.getBody().forEach(s -> s.accept(this));
+				statement.getCondition().accept(expressionVisitor);
+				return null;
+			}
+
+			@Override
+			public Void visitMatchStatement(MatchStatement statement) {
+				statement.getValue().accept(expressionVisitor);
+				statement.getCases().forEach(c -> c.getBody().forEach(s -> s.accept(this)));
+				statement.getOtherwise().forEach(s -> s.accept(this));
+				return null;
+			}
+
+			@Override
+			public Void visitExpressionStatement(ExpressionStatement statement) {
+				statement.getExpression().accept(expressionVisitor);
+				return null;
+			}
+		};
+
+		for (Statement statement : function.getBody()) {
+			statement.accept(statementVisitor);
+		}
+		return pure[0];
+	}
+
+	private static boolean hasType(Object value, Type type) {
+		return PrimitiveType.INTEGER.equals(type) && value instanceof Integer || PrimitiveType.BOOLEAN.equals(type) && value instanceof Boolean;
+	}
+
+	private static int getInteger(Object value) throws EvaluationException {
+		if (!(value instanceof Integer)) {
+			throw new EvaluationException();
+		}
+		return (Integer) value;
+	}
+
+	private static boolean getBoolean(Object value) throws EvaluationException {
+		if (!(value instanceof Boolean)) {
+			throw new EvaluationException();
+		}
+		return (Boolean) value;
+	}
+
+	// Applies an operator the same way the corresponding scoreboard operation would
+	private static Object apply(ScoreOperator operator, Object left, Object right) throws EvaluationException {
+		Integer result = Optimizer.evaluate(operator, getInteger(left), getInteger(right));
+		if (result == null) {
+			throw new EvaluationException();
+		}
+		return result;
+	}
+
+	private class ExpressionEvaluator implements ExpressionVisitor<Object, EvaluationException> {
+		private final Namespace namespace;
+		private final Scope<String, Object> locals;
+
+		private ExpressionEvaluator(Namespace namespace, Scope<String, Object> locals) {
+			this.namespace = namespace;
+			this.locals = locals;
+		}
+
+		@Override
+		public Object visitBinaryExpression(BinaryExpression expression) throws EvaluationException {
+			step();
+			BinaryOperator operator = expression.getOperator();
+			Object left = expression.getLeft().accept(this);
+
+			// The right operand isn't evaluated at all if the left one decides the result
+			if (operator == BinaryOperator.CONDITIONAL_AND || operator == BinaryOperator.CONDITIONAL_OR) {
+				if (getBoolean(left) == (operator == BinaryOperator.CONDITIONAL_OR)) {
+					return left;
+				}
+				return getBoolean(expression.getRight().accept(this));
+			}
+
+			Object right = expression.getRight().accept(this);
+			switch (operator) {
+				case PLUS:
+					return apply(ScoreOperator.ADD, left, right);
+				case MINUS:
+					return apply(ScoreOperator.SUBTRACT, left, right);
+				case TIMES:
+					return apply(ScoreOperator.MULTIPLY, left, right);
+				case DIVIDE:
+					return apply(ScoreOperator.DIVIDE, left, right);
+				case REMAINDER:
+					return apply(ScoreOperator.REMAINDER, left, right);
+				case AND:
+					return getBoolean(left) & getBoolean(right);
+				case XOR:
+					return getBoolean(left) ^ getBoolean(right);
+				case OR:
+					return getBoolean(left) | getBoolean(right);
+				case EQUAL:
+					return areEqual(left, right);
+				case NOT_EQUAL:
+					return !areEqual(left, right);
+				case LESS_OR_EQUAL:
+					return getInteger(left) <= getInteger(right);
+				case LESS:
+					return getInteger(left) < getInteger(right);
+				case GREATER_OR_EQUAL:
+					return getInteger(left) >= getInteger(right);
+				case GREATER:
+					return getInteger(left) > getInteger(right);
+				default:
+					throw new EvaluationException();
+			}
+		}
+
+		@Override
+		public Object visitUnaryExpression(UnaryExpression expression) throws EvaluationException {
+			step();
+			Object operand = expression.getOperand().accept(this);
+			switch (expression.getOperator()) {
+				case NOT:
+					return !getBoolean(operand);
+				case PLUS:
+					return getInteger(operand);
+				case MINUS:
+					return -getInteger(operand);
+				default:
+					throw new EvaluationException();
+			}
+		}
+
+		@Override
+		public Object visitIntegerExpression(IntegerExpression expression) throws EvaluationException {
+			step();
+			return expression.getValue();
+		}
+
+		@Override
+		public Object visitCommandExpression(CommandExpression expression) throws EvaluationException {
+			throw new EvaluationException();
+		}
+
+		@Override
+		public Object visitFunctionCallExpression(CallExpression expression) throws EvaluationException {
+			step();
+			FQN calleeFQN = expression.getFunctionFQN();
+			Intrinsic intrinsic = Intrinsic.resolve(calleeFQN, namespace, functions);
+			if (calleeFQN.getNamespace() == null) {
+				calleeFQN = new FQN(namespace, calleeFQN.getName());
+			}
+
+			List<Object> arguments = new ArrayList<>();
+			for (Expression argument : expression.getArguments()) {
+				arguments.add(argument.accept(this));
+			}
+
+			if (intrinsic != null) {
+				if (arguments.size() != intrinsic.getParameterCount() || !arguments.stream().allMatch(a -> a instanceof Integer)) {
+					throw new EvaluationException();
+				}
+				List<Integer> values = new ArrayList<>();
+				arguments.forEach(a -> values.add((Integer) a));
+				return intrinsic.evaluate(values);
+			}
+
+			// Calls to void functions have no value, so they can only be used as statements
+			return call(calleeFQN, arguments);
+		}
+
+		@Override
+		public Object visitVariableExpression(VariableExpression expression) throws EvaluationException {
+			step();
+			FQN variableFQN = expression.getFQN();
+			if (variableFQN.getNamespace() == null) {
+				if (locals.isDefined(variableFQN.getName())) {
+					Object value = locals.get(variableFQN.getName());
+					if (value == null) {
+						throw new EvaluationException();
+					}
+					return value;
+				}
+				switch (variableFQN.getName()) {
+					case "true":
+						return true;
+					case "false":
+						return false;
+				}
+			}
+			throw new EvaluationException();
+		}
+
+		// Arrays are never evaluated, since there's no value to represent them with
+		@Override
+		public Object visitIndexExpression(IndexExpression expression) throws EvaluationException {
+			throw new EvaluationException();
+		}
+
+		private boolean areEqual(Object left, Object right) throws EvaluationException {
+			if (left == null || right == null || left.getClass() != right.getClass()) {
+				throw new EvaluationException();
+			}
+			return left.equals(right);
+		}
+	}
+
+	private class StatementEvaluator implements StatementVisitor<Void, EvaluationException> {
+		private final Namespace namespace;
+		private Scope<String, Object> locals;
+
+		private StatementEvaluator(Namespace namespace, Scope<String, Object> locals) {
+			this.namespace = namespace;
+			this.locals = locals;
+		}
+
+		@Override
+		public Void visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) throws EvaluationException {
+			step();
+			Object value = evaluate(statement.getAssignedValue());
+			FQN typeFQN = statement.getVariableTypeFQN();
+			if (typeFQN != null && !hasType(value, types.get(typeFQN))) {
+				throw new EvaluationException();
+			}
+			locals.define(statement.getVariableName(), value);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableDeclarationStatement(VariableDeclarationStatement statement) throws EvaluationException {
+			step();
+			Type type = types.get(statement.getVariableTypeFQN());
+			if (!PrimitiveType.INTEGER.equals(type) && !PrimitiveType.BOOLEAN.equals(type)) {
+				throw new EvaluationException();
+			}
+			locals.define(statement.getVariableName(), null);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) throws EvaluationException {
+			step();
+			FQN variableFQN = statement.getVariableFQN();
+			String name = variableFQN.getName();
+			if (variableFQN.getNamespace() != null || !locals.isDefined(name) || statement.getIndex() != null) {
+				throw new EvaluationException();
+			}
+
+			Object value = evaluate(statement.getValue());
+			Object current = locals.get(name);
+			switch (statement.getOperator()) {
+				case EQUAL:
+					if (current != null && current.getClass() != value.getClass()) {
+						throw new EvaluationException();
+					}
+					break;
+				case PLUS_EQUAL:
+					value = apply(ScoreOperator.ADD, current, value);
+					break;
+				case MINUS_EQUAL:
+					value = apply(ScoreOperator.SUBTRACT, current, value);
+					break;
+				case TIMES_EQUAL:
+					value = apply(ScoreOperator.MULTIPLY, current, value);
+					break;
+				case DIVIDE_EQUAL:
+					value = apply(ScoreOperator.DIVIDE, current, value);
+					break;
+				case REMAINDER_EQUAL:
+					value = apply(ScoreOperator.REMAINDER, current, value);
+					break;
+				case AND_EQUAL:
+					value = getBoolean(current) & getBoolean(value);
+					break;
+				case XOR_EQUAL:
+					value = getBoolean(current) ^ getBoolean(value);
+					break;
+				case OR_EQUAL:
+					value = getBoolean(current) | getBoolean(value);
+					break;
+				default:
+					throw new EvaluationException();
+			}
+
+			locals.assign(name, value);
+			return null;
+		}
+
+		@Override
+		public Void visitIfStatement(IfStatement statement) throws EvaluationException {
+			step();
+			evaluateBlock(getBoolean(evaluate(statement.getCondition())) ? statement.getTrueBranch() : statement.getFalseBranch());
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStatement(WhileStatement statement) throws EvaluationException {
+			step();
+			while (getBoolean(evaluate(statement.getCondition()))) {
+				evaluateBlock(statement.getBody());
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitDoWhileStatement(DoWhileStatement statement) throws EvaluationException {
+			step();
+			do {
+				evaluateBlock(statement.getBody());
+			} while (getBoolean(evaluate(statement.getCondition())));
+			return null;
+		}
+
+		@Override
+		public Void visitMatchStatement(MatchStatement statement) throws EvaluationException {
+			step();
+			int value = getInteger(evaluate(statement.getValue()));
+			for (MatchCase matchCase : statement.getCases()) {
+				for (MatchRange range : matchCase.getRanges()) {
+					if (range.getMin() <= value && value <= range.getMax()) {
+						evaluateBlock(matchCase.getBody());
+						return null;
+					}
+				}
+			}
+			evaluateBlock(statement.getOtherwise());
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStatement(ExpressionStatement statement) throws EvaluationException {
+			step();
+			statement.getExpression().accept(new ExpressionEvaluator(namespace, locals));
+			return null;
+		}
+
+		private Object evaluate(Expression expression) throws EvaluationException {
+			Object value = expression.accept(new ExpressionEvaluator(namespace, locals));
+			if (value == null) {
+				throw new EvaluationException();
+			}
+			return value;
+		}
+
+		private void evaluateBlock(List<Statement> block) throws EvaluationException {
+			locals = new Scope<>(locals);
+			try {
+				for (Statement statement : block) {
+					statement.accept(this);
+				}
+			} finally {
+				locals = locals.getParent();
+			}
+		}
+	}
+
+	private static class EvaluationException extends Exception {
+		private EvaluationException() {
+			super(null, null, false, false);
+		}
+	}
+}
\ No newline at end of file
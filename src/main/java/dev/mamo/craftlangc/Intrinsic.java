@@ -0,0 +1,89 @@
+package dev.mamo.craftlangc;
+
+import dev.mamo.craftlangc.ast.*;
+
+import java.util.*;
+
+// The integer functions built into the compiler, which are lowered to a few commands right where they're called rather
+// than to a call. They're found in the craftlang namespace, and a name without a namespace refers to one of them unless
+// a function with the same name is defined in the namespace of the caller
+public enum Intrinsic {
+	ABS(1),
+	MIN(2),
+	MAX(2),
+	CLAMP(3),
+	POW(2),
+	SQRT(1),
+	SIGN(1);
+
+	public static final Namespace NAMESPACE = new Namespace("craftlang");
+
+	private final int parameterCount;
+
+	Intrinsic(int parameterCount) {
+		this.parameterCount = parameterCount;
+	}
+
+	public int getParameterCount() {
+		return parameterCount;
+	}
+
+	public String getName() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+
+	// Returns the intrinsic a call refers to, if any
+	public static Intrinsic resolve(FQN functionFQN, Namespace namespace, Map<FQN, FunctionDefinition> functions) {
+		Namespace functionNamespace = functionFQN.getNamespace();
+		if (functionNamespace == null ? functions.containsKey(new FQN(namespace, functionFQN.getName())) : !functionNamespace.equals(NAMESPACE)) {
+			return null;
+		}
+		for (Intrinsic intrinsic : values()) {
+			if (intrinsic.getName().equals(functionFQN.getName())) {
+				return intrinsic;
+			}
+		}
+		return null;
+	}
+
+	// Computes the result the commands would give, wrapping around on overflow just like scores do. A negative exponent
+	// gives 0, and so does the square root of a negative number
+	public int evaluate(List<Integer> arguments) {
+		switch (this) {
+			case ABS:
+				return arguments.get(0) < 0 ? -arguments.get(0) : arguments.get(0);
+
+			case MIN:
+				return Math.min(arguments.get(0), arguments.get(1));
+
+			case MAX:
+				return Math.max(arguments.get(0), arguments.get(1));
+
+			case CLAMP:
+				return Math.min(Math.max(arguments.get(0), arguments.get(1)), arguments.get(2));
+
+			case POW: {
+				int base = arguments.get(0);
+				int exponent = arguments.get(1);
+				if (exponent < 0) {
+					return 0;
+				}
+				int result = 1;
+				while (exponent > 0) {
+					if (exponent % 2 == 1) {
+						result *= base;
+					}
+					base *= base;
+					exponent /= 2;
+				}
+				return result;
+			}
+
+			case SQRT:
+				return arguments.get(0) <= 0 ? 0 : (int) Math.sqrt(arguments.get(0));
+
+			default:
+				return Integer.signum(arguments.get(0));
+		}
+	}
+}
\ No newline at end of file
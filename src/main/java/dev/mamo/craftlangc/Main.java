@@ -24,6 +24,7 @@ public class Main {
 		Path destination = null;
 		boolean force = false;
 		boolean zip = false;
+		Options options = new Options();
 
 		for (int i = 0, argCount = args.size(); i < argCount; i++) {
 			String arg = args.get(i);
@@ -47,6 +48,36 @@ public class Main {
 					case "--zip":
 						zip = true;
 						break;
+					case "--dump-ir":
+						options.setIRDump(System.out);
+						break;
+					case "--tree-shake":
+						options.setTreeShaking(true);
+						break;
+					case "--target":
+						if (i + 1 < argCount) {
+							try {
+								options.setTarget(new Target(Integer.parseInt(args.get(i + 1))));
+							} catch (IllegalArgumentException ex) {
+								System.err.println("Invalid target: " + Utils.quote(args.get(i + 1)) + '.');
+								System.err.println("The target is a data pack format, from " + Target.MIN_PACK_FORMAT + " onwards.");
+								System.exit(1);
+							}
+							i++;
+						} else {
+							printHelp(System.err);
+							System.exit(1);
+						}
+						break;
+					case "--export":
+						if (i + 1 < argCount) {
+							options.getExports().add(new FQN(args.get(i + 1).split("\\.")));
+							i++;
+						} else {
+							printHelp(System.err);
+							System.exit(1);
+						}
+						break;
 					default:
 						System.err.println("Invalid option: " + Utils.quote(arg) + '.');
 						System.err.println("Try \"craftlangc --help\" for more information.");
@@ -78,6 +109,21 @@ public class Main {
 						case 'z':
 							zip = true;
 							break;
+						case 'd':
+							options.setIRDump(System.out);
+							break;
+						case 't':
+							options.setTreeShaking(true);
+							break;
+						case 'e':
+							if (i + 1 < argCount) {
+								options.getExports().add(new FQN(args.get(i + 1).split("\\.")));
+								skipNext = true;
+							} else {
+								printHelp(System.err);
+								System.exit(1);
+							}
+							break;
 						default:
 							System.err.println("Invalid option: " + Utils.quote(Character.toString(character)) + '.');
 							System.err.println("Try \"craftlangc --help\" for more information.");
@@ -163,10 +209,10 @@ public class Main {
 		try {
 			if (zip) {
 				try (FileSystem fs = FileSystems.newFileSystem(URI.create("jar:" + destination.toUri()), Utils.mapOf("create", "true"))) {
-					Compiler.compile(fs.getPath(""), units);
+					Compiler.compile(fs.getPath(""), units, options);
 				}
 			} else {
-				Compiler.compile(destination, units);
+				Compiler.compile(destination, units, options);
 			}
 		} catch (CompileException ex) {
 			System.err.println("Error while compiling:");
@@ -193,9 +239,13 @@ public class Main {
 		out.println("Compiler for the Craftlang programming language");
 		out.println();
 		out.println("Options:");
+		out.println("-d, --dump-ir             " + TAB + "If set, prints the optimized intermediate representation");
+		out.println("-e <FQN>, --export <FQN>  " + TAB + "Keeps the function when tree shaking. Can be repeated");
 		out.println("-f, --force               " + TAB + "If set, overwrites the output if necessary");
 		out.println("-h, --help                " + TAB + "Displays this help message and exits");
 		out.println("-o <path>, --output <path>" + TAB + "Selects the destination path");
+		out.println("-t, --tree-shake          " + TAB + "If set, drops the functions which are never called");
+		out.println("--target <format>         " + TAB + "Selects the data pack format to compile for (4 by default)");
 		out.println("-z, --zip                 " + TAB + "If set, outputs to zip");
 	}
 }
\ No newline at end of file
@@ -0,0 +1,629 @@
+package dev.mamo.craftlangc;
+
+import dev.mamo.craftlangc.ir.*;
+
+import java.util.*;
+import java.util.function.*;
+
+// Peephole optimizations over the instructions of a single function. Temporary scores are assumed to be private to the
+// function they appear in, while any other score may be observed by calls and raw commands
+public class Optimizer {
+	private static final int MAX_ITERATIONS = 32;
+	private static final List<Function<List<Instruction>, List<Instruction>>> PASSES = Arrays.asList(
+		Optimizer::removeSelfCopies,
+		Optimizer::foldConstants,
+		Optimizer::selectImmediates,
+		Optimizer::poolConstants,
+		Optimizer::propagateCopies,
+		Optimizer::coalesceCopies,
+		Optimizer::removeDeadStores
+	);
+
+	private Optimizer() {}
+
+	public static List<Instruction> optimize(List<Instruction> instructions) {
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+			List<Instruction> result = instructions;
+			for (Function<List<Instruction>, List<Instruction>> pass : PASSES) {
+				result = pass.apply(result);
+			}
+			if (result.equals(instructions)) {
+				break;
+			}
+			instructions = result;
+		}
+		return instructions;
+	}
+
+	// Replaces the calls to helpers consisting of a single instruction with the instruction itself, merging the
+	// conditions of nested execute commands into a single chain. Calls to empty helpers are removed, and so are the
+	// helpers which can't be reached from the root function or one of the entries (helpers called from outside of the
+	// group) anymore
+	public static void flattenBranches(Map<FQN, List<Instruction>> group, FQN rootFQN, Set<FQN> entries) {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+
+			for (Map.Entry<FQN, List<Instruction>> entry : group.entrySet()) {
+				List<Instruction> instructions = entry.getValue();
+				for (ListIterator<Instruction> iterator = instructions.listIterator(); iterator.hasNext(); ) {
+					Instruction instruction = iterator.next();
+					FQN helperFQN = getCalledHelper(instruction, group, rootFQN);
+					if (helperFQN == null || helperFQN.equals(entry.getKey())) {
+						continue;
+					}
+
+					List<Instruction> helper = group.get(helperFQN);
+					List<Condition> conditions = instruction instanceof ExecuteInstruction ? ((ExecuteInstruction) instruction).getConditions() : Collections.emptyList();
+					if (helper.isEmpty()) {
+						iterator.remove();
+						changed = true;
+					} else if (helper.size() == 1 && !isMacroCall(instruction) && Instructions.getScores(helper.get(0)).stream().noneMatch(Score::isTemporary)) {
+						iterator.set(guard(conditions, helper.get(0)));
+						changed = true;
+					}
+				}
+			}
+
+			Set<FQN> reachable = new HashSet<>();
+			Deque<FQN> pending = new ArrayDeque<>(Collections.singleton(rootFQN));
+			pending.addAll(entries);
+			while (!pending.isEmpty()) {
+				FQN functionFQN = pending.pop();
+				if (reachable.add(functionFQN)) {
+					for (Instruction instruction : group.get(functionFQN)) {
+						FQN helperFQN = getCalledHelper(instruction, group, rootFQN);
+						if (helperFQN != null) {
+							pending.push(helperFQN);
+						}
+					}
+				}
+			}
+			group.keySet().retainAll(reachable);
+		}
+	}
+
+	// Keeps a single copy of each set of helpers with the same instructions, and makes every call refer to it. Helpers
+	// calling each other (as loops do) are considered the same if they call helpers which are the same in turn: the
+	// helpers are split by their instructions until no two helpers in the same class call helpers of different classes
+	public static void deduplicateHelpers(Map<FQN, List<Instruction>> functions, Set<FQN> helpers) {
+		Map<FQN, Integer> classes = new HashMap<>();
+		for (FQN helperFQN : helpers) {
+			classes.put(helperFQN, 0);
+		}
+
+		int classCount = 1;
+		while (true) {
+			Map<FQN, Integer> refinedClasses = new HashMap<>();
+			Map<List<Object>, Integer> ids = new HashMap<>();
+
+			for (FQN helperFQN : helpers) {
+				Map<FQN, Integer> currentClasses = classes;
+				List<Object> key = new ArrayList<>();
+				key.add(currentClasses.get(helperFQN));
+				for (Instruction instruction : functions.get(helperFQN)) {
+					key.add(Instructions.mapCalls(instruction, f -> currentClasses.containsKey(f) ? new FQN("#" + currentClasses.get(f)) : f));
+				}
+				refinedClasses.put(helperFQN, ids.computeIfAbsent(key, k -> ids.size()));
+			}
+
+			classes = refinedClasses;
+			if (ids.size() == classCount) {
+				break;
+			}
+			classCount = ids.size();
+		}
+
+		Map<Integer, FQN> representatives = new HashMap<>();
+		Map<FQN, FQN> replacements = new HashMap<>();
+		for (FQN functionFQN : functions.keySet()) {
+			Integer id = classes.get(functionFQN);
+			if (id != null) {
+				replacements.put(functionFQN, representatives.computeIfAbsent(id, i -> functionFQN));
+			}
+		}
+
+		functions.keySet().removeIf(f -> replacements.containsKey(f) && !replacements.get(f).equals(f));
+		for (List<Instruction> instructions : functions.values()) {
+			instructions.replaceAll(i -> Instructions.mapCalls(i, f -> replacements.getOrDefault(f, f)));
+		}
+	}
+
+	// Removes x = x, x < x, x > x and x >< x
+	public static List<Instruction> removeSelfCopies(List<Instruction> instructions) {
+		List<Instruction> result = new ArrayList<>();
+
+		for (Instruction instruction : instructions) {
+			Instruction body = instruction;
+			if (instruction instanceof ExecuteInstruction && ((ExecuteInstruction) instruction).getStore() == null) {
+				body = ((ExecuteInstruction) instruction).getBody();
+			}
+
+			if (!isSelfCopy(body)) {
+				result.add(instruction);
+			}
+		}
+
+		return result;
+	}
+
+	// Replaces operations between known values with their results, and cancels out pairs of multiplications by -1 such
+	// as the ones generated by a double negation
+	public static List<Instruction> foldConstants(List<Instruction> instructions) {
+		List<Instruction> result = new ArrayList<>();
+		Map<Score, Integer> constants = new HashMap<>();
+		Map<Score, Integer> negations = new HashMap<>();
+
+		for (Instruction instruction : instructions) {
+			if (instruction instanceof AddInstruction) {
+				AddInstruction addition = (AddInstruction) instruction;
+				Integer targetValue = getConstant(constants, addition.getTarget());
+				if (targetValue != null) {
+					instruction = new SetInstruction(addition.getTarget(), targetValue + addition.getValue());
+				}
+			} else if (instruction instanceof OperationInstruction) {
+				OperationInstruction operation = (OperationInstruction) instruction;
+				Score target = operation.getTarget();
+				ScoreOperator operator = operation.getOperator();
+				Integer targetValue = getConstant(constants, target);
+				Integer sourceValue = getConstant(constants, operation.getSource());
+
+				if (sourceValue != null && operator == ScoreOperator.ASSIGN) {
+					instruction = new SetInstruction(target, sourceValue);
+				} else if (sourceValue != null && targetValue != null) {
+					Integer value = evaluate(operator, targetValue, sourceValue);
+					if (value != null) {
+						instruction = new SetInstruction(target, value);
+					}
+				} else if (sourceValue != null && sourceValue == -1 && operator == ScoreOperator.MULTIPLY) {
+					Integer negation = negations.remove(target);
+					if (negation != null) {
+						result.set(negation, null);
+						continue;
+					}
+					forget(negations, Instructions.getScores(instruction), Instructions.isBarrier(instruction));
+					negations.put(target, result.size());
+					result.add(instruction);
+					constants.remove(target);
+					continue;
+				}
+			}
+
+			forget(negations, Instructions.getScores(instruction), Instructions.isBarrier(instruction));
+			track(constants, instruction);
+			result.add(instruction);
+		}
+
+		result.removeIf(Objects::isNull);
+		return result;
+	}
+
+	// Uses the forms of the commands taking a constant instead of a score: additions and subtractions become
+	// scoreboard players add/remove, comparisons become score ranges, and trivial operations are simplified or removed
+	public static List<Instruction> selectImmediates(List<Instruction> instructions) {
+		List<Instruction> result = new ArrayList<>();
+		Map<Score, Integer> constants = new HashMap<>();
+
+		for (Instruction instruction : instructions) {
+			instruction = selectImmediates(instruction, constants);
+			if (instruction != null) {
+				track(constants, instruction);
+				result.add(instruction);
+			}
+		}
+
+		return result;
+	}
+
+	// Makes the operations with a known operand read it from the constant pool, so that the operand doesn't have to be
+	// set right before
+	public static List<Instruction> poolConstants(List<Instruction> instructions) {
+		List<Instruction> result = new ArrayList<>();
+		Map<Score, Integer> constants = new HashMap<>();
+
+		for (Instruction instruction : instructions) {
+			if (instruction instanceof OperationInstruction) {
+				OperationInstruction operation = (OperationInstruction) instruction;
+				ScoreOperator operator = operation.getOperator();
+				Integer value = constants.get(operation.getSource());
+				if (value != null && operator != ScoreOperator.ASSIGN && operator != ScoreOperator.SWAP) {
+					instruction = new OperationInstruction(operation.getTarget(), operator, new ConstantScore(value));
+				}
+			}
+
+			track(constants, instruction);
+			result.add(instruction);
+		}
+
+		return result;
+	}
+
+	// Replaces the reads of a temporary score which was just copied from another score with reads of the latter
+	public static List<Instruction> propagateCopies(List<Instruction> instructions) {
+		List<Instruction> result = new ArrayList<>();
+		Map<Score, Score> copies = new HashMap<>();
+
+		for (Instruction instruction : instructions) {
+			if (!copies.isEmpty()) {
+				instruction = Instructions.map(instruction, s -> copies.getOrDefault(s, s), Function.identity());
+			}
+
+			Set<Score> writes = Instructions.getWrites(instruction);
+			boolean barrier = Instructions.isBarrier(instruction);
+			copies.entrySet().removeIf(e -> writes.contains(e.getKey()) || writes.contains(e.getValue()) || barrier && !e.getValue().isTemporary());
+
+			if (instruction instanceof OperationInstruction) {
+				OperationInstruction operation = (OperationInstruction) instruction;
+				Score target = operation.getTarget();
+				Score source = operation.getSource();
+				if (operation.getOperator() == ScoreOperator.ASSIGN && target.isTemporary() && !target.equals(source)) {
+					copies.put(target, source);
+				}
+			}
+
+			result.add(instruction);
+		}
+
+		return result;
+	}
+
+	// Computes a value directly into its destination when it was being computed into a temporary score and then copied
+	public static List<Instruction> coalesceCopies(List<Instruction> instructions) {
+		List<Instruction> result = new ArrayList<>(instructions);
+
+		for (int j = 0; j < result.size(); j++) {
+			Instruction instruction = result.get(j);
+			if (!(instruction instanceof OperationInstruction)) {
+				continue;
+			}
+
+			OperationInstruction copy = (OperationInstruction) instruction;
+			Score destination = copy.getTarget();
+			Score temporary = copy.getSource();
+			if (copy.getOperator() != ScoreOperator.ASSIGN || !temporary.isTemporary() || temporary.equals(destination) || isReferenced(result, j + 1, result.size(), temporary)) {
+				continue;
+			}
+
+			// Look for the instruction which started computing the copied value
+			int k = j - 1;
+			for (; k >= 0; k--) {
+				Instruction previous = result.get(k);
+				if (Instructions.getKills(previous).contains(temporary)) {
+					break;
+				}
+				if (Instructions.getScores(previous).contains(destination) || !destination.isTemporary() && Instructions.isBarrier(previous)) {
+					k = -1;
+					break;
+				}
+			}
+			if (k < 0 || Instructions.getWrites(result.get(k)).contains(destination)) {
+				continue;
+			}
+
+			Function<Score, Score> rename = s -> s.equals(temporary) ? destination : s;
+			for (int i = k; i < j; i++) {
+				result.set(i, Instructions.map(result.get(i), rename));
+			}
+			result.remove(j);
+			j = k;
+		}
+
+		return result;
+	}
+
+	// Removes the instructions whose results are never observed
+	public static List<Instruction> removeDeadStores(List<Instruction> instructions) {
+		LinkedList<Instruction> result = new LinkedList<>();
+		Set<Score> liveTemporaries = new HashSet<>();
+		Set<Score> deadScores = new HashSet<>();
+
+		for (ListIterator<Instruction> iterator = instructions.listIterator(instructions.size()); iterator.hasPrevious(); ) {
+			Instruction instruction = iterator.previous();
+
+			if (Instructions.isBarrier(instruction)) {
+				deadScores.clear();
+			} else {
+				Set<Score> writes = Instructions.getWrites(instruction);
+				if (!writes.isEmpty() && writes.stream().noneMatch(s -> s.isTemporary() ? liveTemporaries.contains(s) : !deadScores.contains(s))) {
+					continue;
+				}
+
+				for (Score kill : Instructions.getKills(instruction)) {
+					if (kill.isTemporary()) {
+						liveTemporaries.remove(kill);
+					} else {
+						deadScores.add(kill);
+					}
+				}
+			}
+
+			for (Score read : Instructions.getReads(instruction)) {
+				if (read.isTemporary()) {
+					liveTemporaries.add(read);
+				} else {
+					deadScores.remove(read);
+				}
+			}
+
+			result.addFirst(instruction);
+		}
+
+		return new ArrayList<>(result);
+	}
+
+	// Returns null if the instruction turns out to have no effect
+	private static Instruction selectImmediates(Instruction instruction, Map<Score, Integer> constants) {
+		if (instruction instanceof OperationInstruction) {
+			OperationInstruction operation = (OperationInstruction) instruction;
+			Score target = operation.getTarget();
+			Integer value = getConstant(constants, operation.getSource());
+			if (value == null) {
+				return instruction;
+			}
+
+			switch (operation.getOperator()) {
+				case ADD:
+					if (value == 0) {
+						return null;
+					}
+					return value != Integer.MIN_VALUE ? new AddInstruction(target, value) : instruction;
+				case SUBTRACT:
+					if (value == 0) {
+						return null;
+					}
+					return value != Integer.MIN_VALUE ? new AddInstruction(target, -value) : instruction;
+				case MULTIPLY:
+					if (value == 0) {
+						return new SetInstruction(target, 0);
+					} else if (value == 1) {
+						return null;
+					} else if (value == 2) {
+						return new OperationInstruction(target, ScoreOperator.ADD, target);
+					}
+					return instruction;
+				case DIVIDE:
+					return value == 1 ? null : instruction;
+				case REMAINDER:
+					return value == 1 || value == -1 ? new SetInstruction(target, 0) : instruction;
+				default:
+					return instruction;
+			}
+		}
+
+		if (instruction instanceof ExecuteInstruction) {
+			ExecuteInstruction execute = (ExecuteInstruction) instruction;
+			List<Condition> conditions = new ArrayList<>();
+			for (Condition condition : execute.getConditions()) {
+				Object selected = selectImmediates(condition, constants);
+				if (selected instanceof Condition) {
+					conditions.add((Condition) selected);
+				} else if (selected.equals(false)) {
+					// A failing condition stops the chain, so a store only happens if it's the only condition
+					if (execute.getStore() == null) {
+						return null;
+					}
+					return execute.getConditions().size() == 1 ? new SetInstruction(execute.getStore(), 0) : instruction;
+				}
+			}
+
+			Score store = execute.getStore();
+			Instruction body = execute.getBody();
+			if (store == null) {
+				body = selectImmediates(body, constants);
+				if (body == null) {
+					return null;
+				}
+			}
+
+			if (conditions.isEmpty()) {
+				return store != null ? new SetInstruction(store, 1) : body;
+			}
+			return new ExecuteInstruction(conditions, store, body);
+		}
+
+		return instruction;
+	}
+
+	// Returns either the condition to use, or whether the condition always holds
+	private static Object selectImmediates(Condition condition, Map<Score, Integer> constants) {
+		if (condition instanceof MatchesCondition) {
+			MatchesCondition matches = (MatchesCondition) condition;
+			Integer value = getConstant(constants, matches.getScore());
+			if (value == null) {
+				return condition;
+			}
+
+			Integer min = matches.getMin();
+			Integer max = matches.getMax();
+			return ((min == null || value >= min) && (max == null || value <= max)) != matches.isNegated();
+		}
+
+		if (condition instanceof ComparisonCondition) {
+			ComparisonCondition comparison = (ComparisonCondition) condition;
+			Score left = comparison.getLeft();
+			Score right = comparison.getRight();
+			ComparisonOperator operator = comparison.getOperator();
+			Integer leftValue = getConstant(constants, left);
+			Integer rightValue = getConstant(constants, right);
+
+			if (leftValue != null && rightValue == null) {
+				return selectImmediates(new ComparisonCondition(comparison.isNegated(), right, operator.mirror(), left), constants);
+			}
+			if (rightValue == null) {
+				return condition;
+			}
+			if (leftValue != null) {
+				return evaluate(operator, leftValue, rightValue) != comparison.isNegated();
+			}
+
+			boolean negated = comparison.isNegated();
+			switch (operator) {
+				case EQUAL:
+					return new MatchesCondition(negated, left, rightValue);
+				case LESS:
+					return rightValue != Integer.MIN_VALUE ? new MatchesCondition(negated, left, null, rightValue - 1) : negated;
+				case LESS_OR_EQUAL:
+					return new MatchesCondition(negated, left, null, rightValue);
+				case GREATER:
+					return rightValue != Integer.MAX_VALUE ? new MatchesCondition(negated, left, rightValue + 1, null) : negated;
+				case GREATER_OR_EQUAL:
+					return new MatchesCondition(negated, left, rightValue, null);
+			}
+		}
+
+		return condition;
+	}
+
+	private static void track(Map<Score, Integer> constants, Instruction instruction) {
+		forget(constants, Instructions.getWrites(instruction), Instructions.isBarrier(instruction));
+		if (instruction instanceof SetInstruction) {
+			SetInstruction set = (SetInstruction) instruction;
+			constants.put(set.getTarget(), set.getValue());
+		}
+	}
+
+	private static Integer getConstant(Map<Score, Integer> constants, Score score) {
+		if (score instanceof ConstantScore) {
+			return ((ConstantScore) score).getValue();
+		}
+		return constants.get(score);
+	}
+
+	private static FQN getCalledHelper(Instruction instruction, Map<FQN, List<Instruction>> group, FQN rootFQN) {
+		if (instruction instanceof ExecuteInstruction) {
+			ExecuteInstruction execute = (ExecuteInstruction) instruction;
+			if (execute.getStore() != null) {
+				return null;
+			}
+			instruction = execute.getBody();
+		}
+		if (!(instruction instanceof CallInstruction)) {
+			return null;
+		}
+		FQN functionFQN = ((CallInstruction) instruction).getFunctionFQN();
+		return group.containsKey(functionFQN) && !functionFQN.equals(rootFQN) ? functionFQN : null;
+	}
+
+	// The lines of a function called with macro arguments only make sense in that function
+	private static boolean isMacroCall(Instruction instruction) {
+		if (instruction instanceof ExecuteInstruction) {
+			instruction = ((ExecuteInstruction) instruction).getBody();
+		}
+		return instruction instanceof CallInstruction && ((CallInstruction) instruction).getStorage() != null;
+	}
+
+	// Runs the instruction only if all of the conditions hold
+	private static Instruction guard(List<Condition> conditions, Instruction instruction) {
+		if (conditions.isEmpty()) {
+			return instruction;
+		}
+		if (instruction instanceof ExecuteInstruction) {
+			ExecuteInstruction execute = (ExecuteInstruction) instruction;
+			List<Condition> merged = new ArrayList<>(conditions);
+			merged.addAll(execute.getConditions());
+			return new ExecuteInstruction(intersectRanges(merged), execute.getStore(), execute.getBody());
+		}
+		return new ExecuteInstruction(conditions, null, instruction);
+	}
+
+	// Merges the checks of a score being in a range into a single one, as nested branches on the same value give
+	private static List<Condition> intersectRanges(List<Condition> conditions) {
+		List<Condition> result = new ArrayList<>();
+		Map<Score, Integer> indices = new HashMap<>();
+		for (Condition condition : conditions) {
+			if (condition instanceof MatchesCondition && !condition.isNegated()) {
+				MatchesCondition matches = (MatchesCondition) condition;
+				Integer index = indices.get(matches.getScore());
+				if (index != null) {
+					MatchesCondition previous = (MatchesCondition) result.get(index);
+					Integer min = previous.getMin();
+					if (min == null || matches.getMin() != null && matches.getMin() > min) {
+						min = matches.getMin();
+					}
+					Integer max = previous.getMax();
+					if (max == null || matches.getMax() != null && matches.getMax() < max) {
+						max = matches.getMax();
+					}
+					if (min == null || max == null || min <= max) {
+						result.set(index, new MatchesCondition(false, matches.getScore(), min, max));
+						continue;
+					}
+				} else {
+					indices.put(matches.getScore(), result.size());
+				}
+			}
+			result.add(condition);
+		}
+		return result;
+	}
+
+	private static boolean isSelfCopy(Instruction instruction) {
+		if (!(instruction instanceof OperationInstruction)) {
+			return false;
+		}
+		OperationInstruction operation = (OperationInstruction) instruction;
+		switch (operation.getOperator()) {
+			case ASSIGN:
+			case MIN:
+			case MAX:
+			case SWAP:
+				return operation.getTarget().equals(operation.getSource());
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isReferenced(List<Instruction> instructions, int from, int to, Score score) {
+		for (int i = from; i < to; i++) {
+			if (Instructions.getScores(instructions.get(i)).contains(score)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static <V> void forget(Map<Score, V> map, Set<Score> scores, boolean barrier) {
+		map.keySet().removeIf(s -> scores.contains(s) || barrier && !s.isTemporary());
+	}
+
+	public static boolean evaluate(ComparisonOperator operator, int left, int right) {
+		switch (operator) {
+			case EQUAL:
+				return left == right;
+			case LESS:
+				return left < right;
+			case LESS_OR_EQUAL:
+				return left <= right;
+			case GREATER:
+				return left > right;
+			case GREATER_OR_EQUAL:
+				return left >= right;
+			default:
+				throw new AssertionError(operator);
+		}
+	}
+
+	// Evaluates an operation the same way Minecraft does, or returns null if it would fail
+	public static Integer evaluate(ScoreOperator operator, int left, int right) {
+		switch (operator) {
+			case ASSIGN:
+				return right;
+			case ADD:
+				return left + right;
+			case SUBTRACT:
+				return left - right;
+			case MULTIPLY:
+				return left * right;
+			case DIVIDE:
+				return right != 0 ? Math.floorDiv(left, right) : null;
+			case REMAINDER:
+				return right != 0 ? Math.floorMod(left, right) : null;
+			case MIN:
+				return Math.min(left, right);
+			case MAX:
+				return Math.max(left, right);
+			default:
+				return null;
+		}
+	}
+}
\ No newline at end of file
@@ -146,6 +146,15 @@ public class Parser {
 			))
 		));
 
+		Function<ParseContext, ParseNode> index = sequence(
+			optionalSpaces,
+			character('['),
+			optionalSpaces,
+			labeled(L.INDEX, expression),
+			optionalSpaces,
+			character(']')
+		);
+
 		Function<ParseContext, ParseNode> unaryExpression = labeled(L.UNARY_EXPRESSION, sequence(
 			zeroOrMore(sequence(
 				not(integer),
@@ -166,7 +175,10 @@ public class Parser {
 				functionCall,
 				command,
 				integer,
-				multiName
+				sequence(
+					multiName,
+					optional(index)
+				)
 			)
 		));
 
@@ -244,18 +256,50 @@ public class Parser {
 			))
 		));
 
-		setParser(expression, comparisonExpression);
+		Function<ParseContext, ParseNode> conditionalAndExpression = labeled(L.CONDITIONAL_AND_EXPRESSION, sequence(
+			comparisonExpression,
+			zeroOrMore(sequence(
+				optionalSpaces,
+				labeled(L.OPERATOR, string("&&")),
+				optionalSpaces,
+				comparisonExpression
+			))
+		));
+
+		Function<ParseContext, ParseNode> conditionalOrExpression = labeled(L.CONDITIONAL_OR_EXPRESSION, sequence(
+			conditionalAndExpression,
+			zeroOrMore(sequence(
+				optionalSpaces,
+				labeled(L.OPERATOR, string("||")),
+				optionalSpaces,
+				conditionalAndExpression
+			))
+		));
+
+		setParser(expression, conditionalOrExpression);
 
 		ForwardFunction<ParseContext, ParseNode> statement = forward();
 
 		Function<ParseContext, ParseNode> block = labeled(L.BLOCK, indented.apply(statement));
 
+		Function<ParseContext, ParseNode> type = sequence(
+			multiName,
+			optional(sequence(
+				optionalSpaces,
+				character('['),
+				optionalSpaces,
+				labeled(L.LENGTH, integer),
+				optionalSpaces,
+				character(']')
+			))
+		);
+
 		Function<ParseContext, ParseNode> nameAndType = labeled(L.NAME_AND_TYPE, sequence(
 			name,
 			optionalSpaces,
 			character(':'),
 			optionalSpaces,
-			labeled(L.TYPE, multiName)
+			labeled(L.TYPE, type)
 		));
 
 		Function<ParseContext, ParseNode> variableDeclarationAndAssignmentStatement = labeled(L.VARIABLE_DECLARATION_AND_ASSIGNMENT, sequence(
@@ -266,7 +310,7 @@ public class Parser {
 				optionalSpaces,
 				character(':'),
 				optionalSpaces,
-				labeled(L.TYPE, name)
+				labeled(L.TYPE, type)
 			)),
 			optionalSpaces,
 			character('='),
@@ -282,6 +326,7 @@ public class Parser {
 
 		Function<ParseContext, ParseNode> variableAssignmentStatement = labeled(L.VARIABLE_ASSIGNMENT, sequence(
 			multiName,
+			optional(index),
 			optionalSpaces,
 			labeled(L.OPERATOR, alternative(
 				character('='),
@@ -323,6 +368,14 @@ public class Parser {
 		)));
 
 		Function<ParseContext, ParseNode> whileStatement = labeled(L.WHILE_STATEMENT, sequence(
+			optional(labeled(L.SLICED, sequence(
+				string("sliced"),
+				optional(sequence(
+					spaces,
+					integer
+				)),
+				spaces
+			))),
 			string("while"),
 			spaces,
 			expression,
@@ -341,6 +394,55 @@ public class Parser {
 			expression
 		));
 
+		Function<ParseContext, ParseNode> matchRange = labeled(L.MATCH_RANGE, sequence(
+			integer,
+			optional(sequence(
+				optionalSpaces,
+				string(".."),
+				optionalSpaces,
+				integer
+			))
+		));
+
+		Function<ParseContext, ParseNode> matchStatement = labeled(L.MATCH_STATEMENT, sequence(
+			string("match"),
+			spaces,
+			expression,
+			separator,
+			indented.apply(alternative(
+				labeled(L.MATCH_CASE, sequence(
+					string("case"),
+					spaces,
+					matchRange,
+					zeroOrMore(sequence(
+						optionalSpaces,
+						character(','),
+						optionalSpaces,
+						matchRange
+					)),
+					separator,
+					block
+				)),
+				sequence(
+					string("else"),
+					separator,
+					labeled(L.MATCH_ELSE, block)
+				)
+			))
+		));
+
+		Function<ParseContext, ParseNode> yieldStatement = labeled(L.YIELD_STATEMENT, alternative(
+			sequence(
+				string("yield"),
+				not(name)
+			),
+			sequence(
+				string("wait"),
+				spaces,
+				expression
+			)
+		));
+
 		setParser(statement, alternative(
 			variableDeclarationAndAssignmentStatement,
 			variableDeclarationStatement,
@@ -348,6 +450,8 @@ public class Parser {
 			ifStatement,
 			whileStatement,
 			doWhileStatement,
+			matchStatement,
+			yieldStatement,
 			expression
 		));
 
@@ -366,6 +470,42 @@ public class Parser {
 					labeled(L.TAG, multiName),
 					separator
 				)),
+			optional(sequence(
+				string("every"),
+				spaces,
+				labeled(L.PERIOD, integer),
+				spaces,
+				alternative(
+					string("ticks"),
+					string("tick")
+				),
+				optional(sequence(
+					spaces,
+					string("phase"),
+					spaces,
+					labeled(L.PHASE, integer)
+				)),
+				separator
+			)),
+			optional(sequence(
+				labeled(L.MEMO, string("memo")),
+				optional(sequence(
+					spaces,
+					string("for"),
+					spaces,
+					labeled(L.LIFETIME, integer),
+					spaces,
+					alternative(
+						string("ticks"),
+						string("tick")
+					)
+				)),
+				separator
+			)),
+			optional(sequence(
+				labeled(L.ASYNC, string("async")),
+				spaces
+			)),
 			string("fun"),
 			spaces,
 			name,
@@ -387,7 +527,7 @@ public class Parser {
 				optionalSpaces,
 				character(':'),
 				optionalSpaces,
-				labeled(L.RETURN_TYPE, multiName)
+				labeled(L.RETURN_TYPE, type)
 			)),
 			separator,
 			block
@@ -492,14 +632,34 @@ public class Parser {
 		String name = null;
 		List<TypeAndName> parameters = new ArrayList<>();
 		List<Statement> body = null;
+		boolean async = false;
+		Integer period = null;
+		Integer phase = null;
+		boolean memo = false;
+		Integer lifetime = null;
 
 		for (ParseNode child : functionDefinition.getChildren()) {
 			switch (child.getLabel()) {
 				case L.TAG:
 					tags.add(new FQN(parseMultiName(child)));
 					break;
+				case L.PERIOD:
+					period = new BigInteger(child.getContent()).intValue();
+					break;
+				case L.PHASE:
+					phase = new BigInteger(child.getContent()).intValue();
+					break;
+				case L.MEMO:
+					memo = true;
+					break;
+				case L.LIFETIME:
+					lifetime = new BigInteger(child.getContent()).intValue();
+					break;
+				case L.ASYNC:
+					async = true;
+					break;
 				case L.RETURN_TYPE:
-					returnTypeFQN = new FQN(parseMultiName(child));
+					returnTypeFQN = parseType(child);
 					break;
 				case L.NAME:
 					name = child.getContent();
@@ -517,7 +677,12 @@ public class Parser {
 		}
 
 		assert body != null;
-		return new FunctionDefinition(functionDefinition, tags, returnTypeFQN, name, parameters, body);
+		FunctionDefinition result = new FunctionDefinition(functionDefinition, tags, returnTypeFQN, name, parameters, body, async);
+		result.setPeriod(period);
+		result.setPhase(phase);
+		result.setMemo(memo);
+		result.setLifetime(lifetime);
+		return result;
 	}
 
 	private static TypeAndName parseNameAndType(ParseNode parameter) {
@@ -527,7 +692,7 @@ public class Parser {
 		for (ParseNode child : parameter.getChildren()) {
 			switch (child.getLabel()) {
 				case L.TYPE:
-					typeFQN = new FQN(parseMultiName(child));
+					typeFQN = parseType(child);
 					break;
 				case L.NAME:
 					name = child.getContent();
@@ -563,8 +728,14 @@ public class Parser {
 				case L.DO_WHILE_STATEMENT:
 					statements.add(parseDoWhileStatement(child));
 					break;
-				case L.COMPARISON_EXPRESSION:
-					statements.add(new ExpressionStatement(block, parseComparisonExpression(child)));
+				case L.MATCH_STATEMENT:
+					statements.add(parseMatchStatement(child));
+					break;
+				case L.YIELD_STATEMENT:
+					statements.add(parseYieldStatement(child));
+					break;
+				case L.CONDITIONAL_OR_EXPRESSION:
+					statements.add(new ExpressionStatement(block, parseConditionalOrExpression(child)));
 					break;
 				default:
 					assert false : child.getLabel();
@@ -583,13 +754,13 @@ public class Parser {
 		for (ParseNode child : statement.getChildren()) {
 			switch (child.getLabel()) {
 				case L.TYPE:
-					variableTypeFQN = new FQN(parseMultiName(child));
+					variableTypeFQN = parseType(child);
 					break;
 				case L.NAME:
 					variableName = child.getContent();
 					break;
-				case L.COMPARISON_EXPRESSION:
-					assignedValue = parseComparisonExpression(child);
+				case L.CONDITIONAL_OR_EXPRESSION:
+					assignedValue = parseConditionalOrExpression(child);
 					break;
 				default:
 					assert false : child.getLabel();
@@ -615,6 +786,7 @@ public class Parser {
 
 	private static VariableAssignmentStatement parseVariableAssignment(ParseNode statement) {
 		FQN variableFQN = null;
+		Expression index = null;
 		AssignmentOperator operator = null;
 		Expression value = null;
 
@@ -623,11 +795,14 @@ public class Parser {
 				case L.MULTI_NAME:
 					variableFQN = new FQN(parseMultiName(child));
 					break;
+				case L.INDEX:
+					index = parseConditionalOrExpression(child);
+					break;
 				case L.OPERATOR:
 					operator = parseAssignmentOperator(child);
 					break;
-				case L.COMPARISON_EXPRESSION:
-					value = parseComparisonExpression(child);
+				case L.CONDITIONAL_OR_EXPRESSION:
+					value = parseConditionalOrExpression(child);
 					break;
 				default:
 					assert false : child.getLabel();
@@ -635,7 +810,7 @@ public class Parser {
 			}
 		}
 
-		return new VariableAssignmentStatement(statement, variableFQN, operator, value);
+		return new VariableAssignmentStatement(statement, variableFQN, index, operator, value);
 	}
 
 	private static IfStatement parseIfStatement(ParseNode statement) {
@@ -645,8 +820,8 @@ public class Parser {
 
 		for (ParseNode child : statement.getChildren()) {
 			switch (child.getLabel()) {
-				case L.COMPARISON_EXPRESSION:
-					condition = parseComparisonExpression(child);
+				case L.CONDITIONAL_OR_EXPRESSION:
+					condition = parseConditionalOrExpression(child);
 					break;
 				case L.IF_TRUE:
 					ifTrue = parseBlock(child);
@@ -669,13 +844,20 @@ public class Parser {
 	}
 
 	private static WhileStatement parseWhileStatement(ParseNode statement) {
+		Integer slice = null;
 		Expression condition = null;
 		List<Statement> body = null;
 
 		for (ParseNode child : statement.getChildren()) {
 			switch (child.getLabel()) {
-				case L.COMPARISON_EXPRESSION:
-					condition = parseComparisonExpression(child);
+				case L.SLICED:
+					slice = WhileStatement.DEFAULT_SLICE;
+					for (ParseNode budget : child.getChildren()) {
+						slice = new BigInteger(budget.getContent()).intValue();
+					}
+					break;
+				case L.CONDITIONAL_OR_EXPRESSION:
+					condition = parseConditionalOrExpression(child);
 					break;
 				case L.BLOCK:
 					body = parseBlock(child);
@@ -687,7 +869,7 @@ public class Parser {
 		}
 
 		assert body != null;
-		return new WhileStatement(statement, condition, body);
+		return new WhileStatement(statement, slice, condition, body);
 	}
 
 	private static DoWhileStatement parseDoWhileStatement(ParseNode statement) {
@@ -699,8 +881,8 @@ public class Parser {
 				case L.BLOCK:
 					body = parseBlock(child);
 					break;
-				case L.COMPARISON_EXPRESSION:
-					condition = parseComparisonExpression(child);
+				case L.CONDITIONAL_OR_EXPRESSION:
+					condition = parseConditionalOrExpression(child);
 					break;
 				default:
 					assert false : child.getLabel();
@@ -712,6 +894,77 @@ public class Parser {
 		return new DoWhileStatement(statement, body, condition);
 	}
 
+	private static MatchStatement parseMatchStatement(ParseNode statement) {
+		Expression value = null;
+		List<MatchCase> cases = new ArrayList<>();
+		List<Statement> otherwise = null;
+
+		for (ParseNode child : statement.getChildren()) {
+			if (otherwise != null) {
+				throw new ParseException(child.getBeginIndex(), "Expected no case after else");
+			}
+
+			switch (child.getLabel()) {
+				case L.CONDITIONAL_OR_EXPRESSION:
+					value = parseConditionalOrExpression(child);
+					break;
+				case L.MATCH_CASE:
+					cases.add(parseMatchCase(child));
+					break;
+				case L.MATCH_ELSE:
+					otherwise = parseBlock(child);
+					break;
+				default:
+					assert false : child.getLabel();
+					break;
+			}
+		}
+
+		return new MatchStatement(statement, value, cases, otherwise != null ? otherwise : new ArrayList<>());
+	}
+
+	private static MatchCase parseMatchCase(ParseNode matchCase) {
+		List<MatchRange> ranges = new ArrayList<>();
+		List<Statement> body = null;
+
+		for (ParseNode child : matchCase.getChildren()) {
+			switch (child.getLabel()) {
+				case L.MATCH_RANGE:
+					List<ParseNode> bounds = child.getChildren();
+					int min = new BigInteger(bounds.get(0).getContent()).intValue();
+					int max = new BigInteger(bounds.get(bounds.size() - 1).getContent()).intValue();
+					ranges.add(new MatchRange(child, min, max));
+					break;
+				case L.BLOCK:
+					body = parseBlock(child);
+					break;
+				default:
+					assert false : child.getLabel();
+					break;
+			}
+		}
+
+		assert body != null;
+		return new MatchCase(matchCase, ranges, body);
+	}
+
+	private static YieldStatement parseYieldStatement(ParseNode statement) {
+		Expression ticks = null;
+
+		for (ParseNode child : statement.getChildren()) {
+			switch (child.getLabel()) {
+				case L.CONDITIONAL_OR_EXPRESSION:
+					ticks = parseConditionalOrExpression(child);
+					break;
+				default:
+					assert false : child.getLabel();
+					break;
+			}
+		}
+
+		return new YieldStatement(statement, ticks);
+	}
+
 	private static AssignmentOperator parseAssignmentOperator(ParseNode operator) {
 		switch (operator.getContent()) {
 			case "=":
@@ -738,6 +991,52 @@ public class Parser {
 		}
 	}
 
+	private static Expression parseConditionalOrExpression(ParseNode expression) {
+		Expression result = null;
+		BinaryOperator operator = null;
+
+		for (ParseNode child : expression.getChildren()) {
+			switch (child.getLabel()) {
+				case L.CONDITIONAL_AND_EXPRESSION:
+					result = result == null
+						? parseConditionalAndExpression(child)
+						: new BinaryExpression(child, result, operator, parseConditionalAndExpression(child));
+					break;
+				case L.OPERATOR:
+					operator = parseBinaryOperator(child);
+					break;
+				default:
+					assert false : child.getLabel();
+					break;
+			}
+		}
+
+		return result;
+	}
+
+	private static Expression parseConditionalAndExpression(ParseNode expression) {
+		Expression result = null;
+		BinaryOperator operator = null;
+
+		for (ParseNode child : expression.getChildren()) {
+			switch (child.getLabel()) {
+				case L.COMPARISON_EXPRESSION:
+					result = result == null
+						? parseComparisonExpression(child)
+						: new BinaryExpression(child, result, operator, parseComparisonExpression(child));
+					break;
+				case L.OPERATOR:
+					operator = parseBinaryOperator(child);
+					break;
+				default:
+					assert false : child.getLabel();
+					break;
+			}
+		}
+
+		return result;
+	}
+
 	private static Expression parseComparisonExpression(ParseNode expression) {
 		Expression result = null;
 		BinaryOperator operator = null;
@@ -883,8 +1182,8 @@ public class Parser {
 				case L.OPERATOR:
 					operators.add(parseUnaryOperator(child));
 					break;
-				case L.COMPARISON_EXPRESSION:
-					result = parseComparisonExpression(child);
+				case L.CONDITIONAL_OR_EXPRESSION:
+					result = parseConditionalOrExpression(child);
 					break;
 				case L.FUNCTION_CALL:
 					result = parseFunctionCall(child);
@@ -898,6 +1197,9 @@ public class Parser {
 				case L.MULTI_NAME:
 					result = new VariableExpression(child, new FQN(parseMultiName(child)));
 					break;
+				case L.INDEX:
+					result = new IndexExpression(child, result, parseConditionalOrExpression(child));
+					break;
 				default:
 					assert false : child.getLabel();
 					break;
@@ -920,8 +1222,8 @@ public class Parser {
 				case L.MULTI_NAME:
 					functionFQN = new FQN(parseMultiName(child));
 					break;
-				case L.COMPARISON_EXPRESSION:
-					arguments.add(parseComparisonExpression(child));
+				case L.CONDITIONAL_OR_EXPRESSION:
+					arguments.add(parseConditionalOrExpression(child));
 					break;
 				default:
 					assert false : child.getLabel();
@@ -962,6 +1264,10 @@ public class Parser {
 				return BinaryOperator.GREATER_OR_EQUAL;
 			case ">":
 				return BinaryOperator.GREATER;
+			case "&&":
+				return BinaryOperator.CONDITIONAL_AND;
+			case "||":
+				return BinaryOperator.CONDITIONAL_OR;
 			default:
 				assert false : operator.getContent();
 				return null;
@@ -982,6 +1288,28 @@ public class Parser {
 		}
 	}
 
+	// The type of an array is named after the type of its elements followed by its length, as in int[8]
+	private static FQN parseType(ParseNode type) {
+		FQN result = null;
+
+		for (ParseNode child : type.getChildren()) {
+			switch (child.getLabel()) {
+				case L.MULTI_NAME:
+					result = new FQN(parseMultiName(child));
+					break;
+				case L.LENGTH:
+					assert result != null;
+					result.setName(result.getName() + '[' + new BigInteger(child.getContent()).intValue() + ']');
+					break;
+				default:
+					assert false : child.getLabel();
+					break;
+			}
+		}
+
+		return result;
+	}
+
 	private static List<String> parseMultiName(ParseNode multiName) {
 		List<String> result = new ArrayList<>();
 
@@ -1029,6 +1357,7 @@ public class Parser {
 		public static final String FUNCTION_CALL = "function call";
 		public static final String COMMAND = "command";
 		public static final String OPERATOR = "operator";
+		public static final String INDEX = "index";
 		public static final String UNARY_EXPRESSION = "unary expression";
 		public static final String MULTIPLICATIVE_EXPRESSION = "multiplicative expression";
 		public static final String ADDITIVE_EXPRESSION = "additive expression";
@@ -1036,9 +1365,12 @@ public class Parser {
 		public static final String XOR_EXPRESSION = "xor expression";
 		public static final String OR_EXPRESSION = "or expression";
 		public static final String COMPARISON_EXPRESSION = "comparison expression";
+		public static final String CONDITIONAL_AND_EXPRESSION = "conditional and expression";
+		public static final String CONDITIONAL_OR_EXPRESSION = "conditional or expression";
 		public static final String BLOCK = "block";
 		public static final String NAME_AND_TYPE = "name and type";
 		public static final String TYPE = "type";
+		public static final String LENGTH = "length";
 		public static final String VARIABLE_DECLARATION_AND_ASSIGNMENT = "variable declaration and assignment";
 		public static final String VARIABLE_DECLARATION = "variable declaration";
 		public static final String VARIABLE_ASSIGNMENT = "variable assignment";
@@ -1046,10 +1378,21 @@ public class Parser {
 		public static final String IF_TRUE = "if true";
 		public static final String IF_FALSE = "if false";
 		public static final String WHILE_STATEMENT = "while statement";
+		public static final String SLICED = "sliced";
 		public static final String DO_WHILE_STATEMENT = "do-while statement";
+		public static final String MATCH_STATEMENT = "match statement";
+		public static final String MATCH_CASE = "match case";
+		public static final String MATCH_RANGE = "match range";
+		public static final String MATCH_ELSE = "match else";
+		public static final String YIELD_STATEMENT = "yield statement";
 		public static final String TYPE_DECLARATION = "type declaration";
 		public static final String FUNCTION_DEFINITION = "function definition";
 		public static final String TAG = "tag";
+		public static final String PERIOD = "period";
+		public static final String PHASE = "phase";
+		public static final String MEMO = "memo";
+		public static final String LIFETIME = "lifetime";
+		public static final String ASYNC = "async";
 		public static final String RETURN_TYPE = "return type";
 		public static final String UNIT = "unit";
 
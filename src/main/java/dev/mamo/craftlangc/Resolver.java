@@ -11,58 +11,147 @@ public class Resolver {
 
 	public static Map<FQN, Type> resolveTypes(Collection<Unit> units) {
 		Map<FQN, Type> types = new LinkedHashMap<>();
+		Map<FQN, TypeDeclaration> declarations = new LinkedHashMap<>();
 
 		for (Unit unit : units) {
 			Namespace namespace = unit.getNamespace();
 
 			for (TypeDeclaration type : unit.getTypeDeclarations()) {
-				types.put(new FQN(namespace, type.getName()), null);
+				FQN typeFQN = new FQN(namespace, type.getName());
+
+				if (declarations.containsKey(typeFQN)) {
+					throw new ResolveException(type.getSource().getBeginIndex(), "Type already defined: " + typeFQN);
+				}
+
+				declarations.put(typeFQN, type);
 			}
 		}
 
 		types.putIfAbsent(new FQN("bool"), PrimitiveType.BOOLEAN);
 		types.putIfAbsent(new FQN("int"), PrimitiveType.INTEGER);
 
-		List<Runnable> addMember = new ArrayList<>();
-		List<Runnable> checkMember = new ArrayList<>();
+		for (Map.Entry<FQN, TypeDeclaration> entry : declarations.entrySet()) {
+			resolveType(entry.getKey(), null, entry.getValue().getSource().getBeginIndex(), declarations, types, new HashSet<>());
+		}
 
+		// Array types aren't declared: one is made for each length an element type is used with
+		Map<FQN, Integer> usedTypes = new LinkedHashMap<>();
 		for (Unit unit : units) {
-			Namespace namespace = unit.getNamespace();
+			for (VariableDeclarationStatement variableDeclaration : unit.getVariableDeclarations()) {
+				usedTypes.putIfAbsent(variableDeclaration.getVariableTypeFQN(), variableDeclaration.getSource().getBeginIndex());
+			}
 
-			for (TypeDeclaration type : unit.getTypeDeclarations()) {
-				Map<String, Type> members = new LinkedHashMap<>();
+			for (FunctionDefinition function : unit.getFunctionDefinitions()) {
+				for (TypeAndName parameter : function.getParameters()) {
+					usedTypes.putIfAbsent(parameter.getTypeFQN(), parameter.getSource().getBeginIndex());
+				}
+				if (function.getReturnTypeFQN() != null) {
+					usedTypes.putIfAbsent(function.getReturnTypeFQN(), function.getSource().getBeginIndex());
+				}
+				collectUsedTypes(function.getBody(), usedTypes);
+			}
+		}
 
-				for (TypeAndName member : type.getMembers()) {
-					FQN[] memberTypeFQN = {member.getTypeFQN()};
-					String memberName = memberTypeFQN[0].getName();
+		for (Map.Entry<FQN, Integer> entry : usedTypes.entrySet()) {
+			resolveType(entry.getKey(), null, entry.getValue(), declarations, types, new HashSet<>());
+		}
 
-					if (!types.containsKey(memberTypeFQN[0])) {
-						memberTypeFQN[0] = new FQN(namespace, memberName);
-					}
-					if (!types.containsKey(memberTypeFQN[0])) {
-						throw new ResolveException(member.getSource().getBeginIndex(), "Undeclared type " + memberTypeFQN[0]);
-					}
+		return types;
+	}
 
-					addMember.add(() -> members.put(memberName, types.get(memberTypeFQN[0])));
-					checkMember.add(() -> {
-						if (members.get(memberName).isRecursive()) {
-							throw new ResolveException(member.getSource().getBeginIndex(), "Recursive types are not allowed");
-						}
-					});
+	// Returns the type with the FQN, resolving it first if it's a compound type or an array type, or null if there's no
+	// such type. The members of a compound type are resolved before the type itself, so that it knows their sizes; the
+	// types being resolved are kept in pending, since a type can't contain itself. Names without a namespace are also
+	// looked up in the fallback namespace, if any
+	private static Type resolveType(FQN typeFQN, Namespace fallback, int position, Map<FQN, TypeDeclaration> declarations, Map<FQN, Type> types, Set<FQN> pending) {
+		Type type = types.get(typeFQN);
+		if (type != null) {
+			return type;
+		}
+
+		TypeDeclaration declaration = declarations.get(typeFQN);
+		if (declaration != null) {
+			if (!pending.add(typeFQN)) {
+				throw new ResolveException(position, "Recursive types are not allowed");
+			}
+
+			Map<String, Type> members = new LinkedHashMap<>();
+			for (TypeAndName member : declaration.getMembers()) {
+				int memberPosition = member.getSource().getBeginIndex();
+				Type memberType = resolveType(member.getTypeFQN(), typeFQN.getNamespace(), memberPosition, declarations, types, pending);
+				if (memberType == null) {
+					throw new ResolveException(memberPosition, "Undeclared type " + member.getTypeFQN());
+				}
+				if (members.put(member.getName(), memberType) != null) {
+					throw new ResolveException(memberPosition, "Member already declared: " + member.getName());
 				}
+			}
+
+			pending.remove(typeFQN);
+			type = new CompoundType(members);
+			types.put(typeFQN, type);
+			return type;
+		}
 
-				types.put(new FQN(namespace, type.getName()), new CompoundType(members));
+		String name = typeFQN.getName();
+		if (typeFQN.getNamespace() == null && fallback != null) {
+			type = resolveType(new FQN(fallback, name), null, position, declarations, types, pending);
+			if (type != null) {
+				return type;
 			}
 		}
 
-		addMember.forEach(Runnable::run);
-		checkMember.forEach(Runnable::run);
+		int bracket = name.lastIndexOf('[');
+		if (bracket < 0) {
+			return null;
+		}
 
-		return types;
+		Type elementType = resolveType(new FQN(typeFQN.getNamespace(), name.substring(0, bracket)), fallback, position, declarations, types, pending);
+		if (elementType == null) {
+			return null;
+		}
+
+		int length = Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+		if (length <= 0) {
+			throw new ResolveException(position, "Invalid array length: " + length);
+		}
+		type = new ArrayType(elementType, length);
+		if (fallback == null) {
+			types.put(typeFQN, type);
+		}
+		return type;
 	}
 
+	private static void collectUsedTypes(List<Statement> block, Map<FQN, Integer> usedTypes) {
+		for (Statement statement : block) {
+			if (statement instanceof VariableDeclarationStatement) {
+				usedTypes.putIfAbsent(((VariableDeclarationStatement) statement).getVariableTypeFQN(), statement.getSource().getBeginIndex());
+			} else if (statement instanceof VariableDeclarationAndAssignmentStatement) {
+				FQN typeFQN = ((VariableDeclarationAndAssignmentStatement) statement).getVariableTypeFQN();
+				if (typeFQN != null) {
+					usedTypes.putIfAbsent(typeFQN, statement.getSource().getBeginIndex());
+				}
+			} else if (statement instanceof IfStatement) {
+				collectUsedTypes(((IfStatement) statement).getTrueBranch(), usedTypes);
+				collectUsedTypes(((IfStatement) statement).getFalseBranch(), usedTypes);
+			} else if (statement instanceof WhileStatement) {
+				collectUsedTypes(((WhileStatement) statement).getBody(), usedTypes);
+			} else if (statement instanceof DoWhileStatement) {
+				collectUsedTypes(((DoWhileStatement) statement).getBody(), usedTypes);
+			} else if (statement instanceof MatchStatement) {
+				for (MatchCase matchCase : ((MatchStatement) statement).getCases()) {
+					collectUsedTypes(matchCase.getBody(), usedTypes);
+				}
+				collectUsedTypes(((MatchStatement) statement).getOtherwise(), usedTypes);
+			}
+		}
+	}
+
+	// Globals are kept in a single objective, each of their scores under its own fake player. The slot of a global only
+	// depends on its FQN, so that adding or removing other globals doesn't move it and a reloaded data pack keeps its
+	// values. Globals whose slots clash are moved to the next free ones, in the order of their FQNs
 	public static Map<FQN, Store> resolveGlobals(Collection<Unit> units, Map<FQN, Type> types) {
-		Map<FQN, Store> globals = new LinkedHashMap<>();
+		Map<FQN, Type> globalTypes = new LinkedHashMap<>();
 
 		for (Unit unit : units) {
 			Namespace namespace = unit.getNamespace();
@@ -70,14 +159,42 @@ public class Resolver {
 			for (VariableDeclarationStatement variableDeclaration : unit.getVariableDeclarations()) {
 				FQN variableFQN = new FQN(namespace, variableDeclaration.getVariableName());
 
-				if (globals.containsKey(variableFQN)) {
+				if (globalTypes.containsKey(variableFQN)) {
 					throw new ResolveException(variableDeclaration.getSource().getBeginIndex(), "Variable already defined: " + variableFQN);
 				}
 
-				globals.put(variableFQN, new Store(types.get(variableDeclaration.getVariableTypeFQN()), variableFQN.hashCode()));
+				FQN typeFQN = variableDeclaration.getVariableTypeFQN();
+				Type type = types.get(typeFQN);
+				if (type == null) {
+					throw new ResolveException(variableDeclaration.getSource().getBeginIndex(), "Undeclared type " + typeFQN);
+				}
+
+				globalTypes.put(variableFQN, type);
+			}
+		}
+
+		List<FQN> sortedFQNs = new ArrayList<>(globalTypes.keySet());
+		sortedFQNs.sort(Comparator.comparing(FQN::toString));
+
+		Set<Integer> taken = new HashSet<>();
+		Map<FQN, Integer> slots = new HashMap<>();
+		for (FQN variableFQN : sortedFQNs) {
+			int size = globalTypes.get(variableFQN).size();
+			int slot = variableFQN.toString().hashCode();
+			while (!isFree(taken, slot, size)) {
+				slot++;
+			}
+
+			for (int i = 0; i < size; i++) {
+				taken.add(slot + i);
 			}
+			slots.put(variableFQN, slot);
 		}
 
+		Map<FQN, Store> globals = new LinkedHashMap<>();
+		for (Map.Entry<FQN, Type> entry : globalTypes.entrySet()) {
+			globals.put(entry.getKey(), new Store(entry.getValue(), slots.get(entry.getKey())));
+		}
 		return globals;
 	}
 
@@ -130,6 +247,63 @@ public class Resolver {
 		return tags;
 	}
 
+	// Groups the periodic functions by period and then by phase. Functions which don't ask for a phase are given the one
+	// with the fewest functions of the same period, so that they're spread over different ticks
+	public static Map<Integer, Map<Integer, List<FQN>>> resolveWheels(Collection<Unit> units) {
+		Map<Integer, Map<Integer, List<FQN>>> wheels = new TreeMap<>();
+		Map<FQN, Integer> unphased = new LinkedHashMap<>();
+
+		for (Unit unit : units) {
+			for (FunctionDefinition function : unit.getFunctionDefinitions()) {
+				// The cache of a memoized function with a lifetime is cleared as often as a periodic function would run
+				Integer lifetime = function.getLifetime();
+				if (lifetime != null) {
+					if (lifetime <= 0) {
+						throw new ResolveException(function.getSource().getBeginIndex(), "Invalid lifetime: " + lifetime);
+					}
+					wheels.computeIfAbsent(lifetime, p -> new TreeMap<>());
+					unphased.put(Compiler.getForgetFQN(new FQN(unit.getNamespace(), function.getName())), lifetime);
+				}
+
+				Integer period = function.getPeriod();
+				if (period == null) {
+					continue;
+				}
+
+				if (!function.getParameters().isEmpty()) {
+					throw new ResolveException(function.getSource().getBeginIndex(), "Can't run a function with a non-empty parameter list periodically");
+				}
+				if (period <= 0) {
+					throw new ResolveException(function.getSource().getBeginIndex(), "Invalid period: " + period);
+				}
+
+				Integer phase = function.getPhase();
+				wheels.computeIfAbsent(period, p -> new TreeMap<>());
+				if (phase == null) {
+					unphased.put(new FQN(unit.getNamespace(), function.getName()), period);
+				} else if (phase < 0 || phase >= period) {
+					throw new ResolveException(function.getSource().getBeginIndex(), "Invalid phase: " + phase);
+				} else {
+					wheels.get(period).computeIfAbsent(phase, p -> new ArrayList<>()).add(new FQN(unit.getNamespace(), function.getName()));
+				}
+			}
+		}
+
+		for (Map.Entry<FQN, Integer> entry : unphased.entrySet()) {
+			int period = entry.getValue();
+			Map<Integer, List<FQN>> wheel = wheels.get(period);
+			int phase = 0;
+			for (int i = 1; i < period && wheel.getOrDefault(phase, Collections.emptyList()).size() > 0; i++) {
+				if (wheel.getOrDefault(i, Collections.emptyList()).size() < wheel.get(phase).size()) {
+					phase = i;
+				}
+			}
+			wheel.computeIfAbsent(phase, p -> new ArrayList<>()).add(entry.getKey());
+		}
+
+		return wheels;
+	}
+
 	public static class ResolveException extends RuntimeException {
 		private final int position;
 
@@ -142,4 +316,13 @@ public class Resolver {
 			return position;
 		}
 	}
+
+	private static boolean isFree(Set<Integer> taken, int slot, int size) {
+		for (int i = 0; i < size; i++) {
+			if (taken.contains(slot + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,539 @@
+package dev.mamo.craftlangc;
+
+import dev.mamo.craftlangc.ast.*;
+import dev.mamo.craftlangc.ast.expression.*;
+import dev.mamo.craftlangc.ast.statement.*;
+import dev.mamo.craftlangc.core.parser.*;
+import dev.mamo.craftlangc.type.*;
+
+import java.util.*;
+
+// Clones functions for the arguments which are constant at their call sites. A clone only takes the remaining
+// arguments, reads the constant ones as literals and drops the branches the constants decide. Calls are redirected to
+// the clones, which are specialized in turn. Functions running raw commands are left alone, since the commands may rely
+// on the addresses of the parameters
+public class Specializer {
+	private static final int MAX_SIZE = 64;
+	private static final int MAX_CLONES = 4;
+
+	private final Map<FQN, Type> types;
+	private final Map<FQN, FunctionDefinition> functions;
+	private final Interpreter interpreter;
+	private final Map<FQN, Namespace> namespaces = new HashMap<>();
+	private final Map<List<Object>, FQN> clones = new HashMap<>();
+	private final Map<FQN, Integer> cloneCounts = new HashMap<>();
+	private final Deque<FQN> pending = new ArrayDeque<>();
+
+	public Specializer(Map<FQN, Type> types, Map<FQN, FunctionDefinition> functions, Interpreter interpreter) {
+		this.types = types;
+		this.functions = functions;
+		this.interpreter = interpreter;
+	}
+
+	// Adds the clones to the functions and redirects the calls to them
+	public void specialize() {
+		pending.addAll(functions.keySet());
+		while (!pending.isEmpty()) {
+			FQN functionFQN = pending.pop();
+			Namespace namespace = getNamespace(functionFQN);
+			for (Statement statement : functions.get(functionFQN).getBody()) {
+				statement.accept(new CallVisitor(namespace));
+			}
+		}
+	}
+
+	// The namespace the names used by the function are resolved in, which for clones is the one of the original
+	public Namespace getNamespace(FQN functionFQN) {
+		return namespaces.getOrDefault(functionFQN, functionFQN.getNamespace());
+	}
+
+	private void specialize(CallExpression call, Namespace namespace) {
+		FQN calleeFQN = call.getFunctionFQN();
+		if (calleeFQN.getNamespace() == null) {
+			calleeFQN = new FQN(namespace, calleeFQN.getName());
+		}
+
+		FunctionDefinition callee = functions.get(calleeFQN);
+		List<Expression> arguments = call.getArguments();
+		if (callee == null || arguments.size() != callee.getParameters().size() || !isSpecializable(callee)) {
+			return;
+		}
+
+		// Calls which can be evaluated right away don't need a clone
+		if (interpreter.evaluate(call, namespace) != null) {
+			return;
+		}
+
+		List<Object> key = new ArrayList<>();
+		key.add(calleeFQN);
+		List<Expression> remainingArguments = new ArrayList<>();
+		for (int i = 0, argumentCount = arguments.size(); i < argumentCount; i++) {
+			Object value = interpreter.evaluate(arguments.get(i), namespace);
+			Type type = types.get(callee.getParameters().get(i).getTypeFQN());
+			if (!(value instanceof Integer && PrimitiveType.INTEGER.equals(type) || value instanceof Boolean && PrimitiveType.BOOLEAN.equals(type))) {
+				value = null;
+				remainingArguments.add(arguments.get(i));
+			}
+			key.add(value);
+		}
+		if (remainingArguments.size() == arguments.size()) {
+			return;
+		}
+
+		FQN cloneFQN = clones.get(key);
+		if (cloneFQN == null) {
+			int cloneCount = cloneCounts.getOrDefault(calleeFQN, 0);
+			if (cloneCount >= MAX_CLONES) {
+				return;
+			}
+			cloneCounts.put(calleeFQN, cloneCount + 1);
+
+			Namespace calleeNamespace = getNamespace(calleeFQN);
+			cloneFQN = new FQN(Compiler.getCraftlangNamespace(calleeNamespace), calleeFQN.getName() + ".c" + cloneCount);
+			clones.put(key, cloneFQN);
+			functions.put(cloneFQN, createClone(callee, key.subList(1, key.size()), calleeNamespace));
+			namespaces.put(cloneFQN, calleeNamespace);
+			if (interpreter.isPure(calleeFQN)) {
+				interpreter.addPureFunction(cloneFQN, calleeNamespace);
+			}
+			pending.push(cloneFQN);
+		}
+
+		call.setFunctionFQN(cloneFQN);
+		call.setArguments(remainingArguments);
+	}
+
+	// Parameters which are never assigned to are replaced by their values; the other ones become initialized locals
+	private FunctionDefinition createClone(FunctionDefinition function, List<Object> values, Namespace namespace) {
+		Set<String> assigned = new HashSet<>();
+		for (Statement statement : function.getBody()) {
+			statement.accept(new AssignmentVisitor(assigned));
+		}
+
+		List<TypeAndName> parameters = new ArrayList<>();
+		List<Statement> body = new ArrayList<>();
+		Map<String, Object> constants = new HashMap<>();
+		for (int i = 0, parameterCount = values.size(); i < parameterCount; i++) {
+			TypeAndName parameter = function.getParameters().get(i);
+			Object value = values.get(i);
+			if (value == null) {
+				parameters.add(parameter);
+			} else if (assigned.contains(parameter.getName())) {
+				body.add(new VariableDeclarationAndAssignmentStatement(parameter.getSource(), null, parameter.getName(), getLiteral(parameter.getSource(), value)));
+			} else {
+				constants.put(parameter.getName(), value);
+			}
+		}
+
+		Rewriter rewriter = new Rewriter(constants, namespace);
+		for (Statement statement : function.getBody()) {
+			body.addAll(statement.accept(rewriter));
+		}
+
+		return new FunctionDefinition(function.getSource(), Collections.emptyList(), function.getReturnTypeFQN(), function.getName(), parameters, body);
+	}
+
+	// Async functions are left alone, since each of them keeps its own suspended frames, and so are memoized ones, whose
+	// clones wouldn't share their cache
+	private static boolean isSpecializable(FunctionDefinition function) {
+		if (function.isAsync() || function.isMemo()) {
+			return false;
+		}
+
+		SizeVisitor visitor = new SizeVisitor();
+		for (Statement statement : function.getBody()) {
+			statement.accept(visitor);
+		}
+		return !visitor.command && visitor.size <= MAX_SIZE;
+	}
+
+	private static Expression getLiteral(ParseNode source, Object value) {
+		if (value instanceof Boolean) {
+			return new VariableExpression(source, new FQN((Boolean) value ? "true" : "false"));
+		}
+		return new IntegerExpression(source, (Integer) value);
+	}
+
+	private static boolean declares(List<Statement> block) {
+		return block.stream().anyMatch(s -> s instanceof VariableDeclarationStatement || s instanceof VariableDeclarationAndAssignmentStatement);
+	}
+
+	// Visits the calls of a function, arguments first
+	private class CallVisitor implements StatementVisitor<Void, RuntimeException>, ExpressionVisitor<Void, RuntimeException> {
+		private final Namespace namespace;
+
+		private CallVisitor(Namespace namespace) {
+			this.namespace = namespace;
+		}
+
+		@Override
+		public Void visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) {
+			return statement.getAssignedValue().accept(this);
+		}
+
+		@Override
+		public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+			if (statement.getIndex() != null) {
+				statement.getIndex().accept(this);
+			}
+			return statement.getValue().accept(this);
+		}
+
+		@Override
+		public Void visitIfStatement(IfStatement statement) {
+			statement.getCondition().accept(this);
+			statement.getTrueBranch().forEach(s -> s.accept(this));
+			statement.getFalseBranch().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStatement(WhileStatement statement) {
+			statement.getCondition().accept(this);
+			statement.getBody().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitDoWhileStatement(DoWhileStatement statement) {
+			statement.getBody().forEach(s -> s.accept(this));
+			return statement.getCondition().accept(this);
+		}
+
+		@Override
+		public Void visitMatchStatement(MatchStatement statement) {
+			statement.getValue().accept(this);
+			statement.getCases().forEach(c -> c.getBody().forEach(s -> s.accept(this)));
+			statement.getOtherwise().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStatement(ExpressionStatement statement) {
+			return statement.getExpression().accept(this);
+		}
+
+		@Override
+		public Void visitBinaryExpression(BinaryExpression expression) {
+			expression.getLeft().accept(this);
+			return expression.getRight().accept(this);
+		}
+
+		@Override
+		public Void visitUnaryExpression(UnaryExpression expression) {
+			return expression.getOperand().accept(this);
+		}
+
+		@Override
+		public Void visitFunctionCallExpression(CallExpression expression) {
+			for (Expression argument : expression.getArguments()) {
+				argument.accept(this);
+			}
+			specialize(expression, namespace);
+			return null;
+		}
+
+		@Override
+		public Void visitIndexExpression(IndexExpression expression) {
+			expression.getArray().accept(this);
+			return expression.getIndex().accept(this);
+		}
+	}
+
+	// Copies the statements of a function, replacing the constant parameters with their values and dropping the
+	// branches they decide. Blocks are only merged into the enclosing one if they don't declare variables
+	private class Rewriter implements StatementVisitor<List<Statement>, RuntimeException>, ExpressionVisitor<Expression, RuntimeException> {
+		private final Map<String, Object> constants;
+		private final Namespace namespace;
+
+		private Rewriter(Map<String, Object> constants, Namespace namespace) {
+			this.constants = constants;
+			this.namespace = namespace;
+		}
+
+		@Override
+		public List<Statement> visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) {
+			return Collections.singletonList(new VariableDeclarationAndAssignmentStatement(
+				statement.getSource(),
+				statement.getVariableTypeFQN(),
+				statement.getVariableName(),
+				rewrite(statement.getAssignedValue())
+			));
+		}
+
+		@Override
+		public List<Statement> visitVariableDeclarationStatement(VariableDeclarationStatement statement) {
+			return Collections.singletonList(new VariableDeclarationStatement(statement.getSource(), statement.getVariableTypeFQN(), statement.getVariableName()));
+		}
+
+		@Override
+		public List<Statement> visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+			return Collections.singletonList(new VariableAssignmentStatement(
+				statement.getSource(),
+				statement.getVariableFQN(),
+				statement.getIndex() != null ? rewrite(statement.getIndex()) : null,
+				statement.getOperator(),
+				rewrite(statement.getValue())
+			));
+		}
+
+		@Override
+		public List<Statement> visitIfStatement(IfStatement statement) {
+			Expression condition = rewrite(statement.getCondition());
+			List<Statement> trueBranch = rewrite(statement.getTrueBranch());
+			List<Statement> falseBranch = rewrite(statement.getFalseBranch());
+
+			Object value = interpreter.evaluate(condition, namespace);
+			if (!(value instanceof Boolean)) {
+				return Collections.singletonList(new IfStatement(statement.getSource(), condition, trueBranch, falseBranch));
+			}
+
+			List<Statement> branch = (Boolean) value ? trueBranch : falseBranch;
+			if (branch.isEmpty() || !declares(branch)) {
+				return branch;
+			}
+			return Collections.singletonList(new IfStatement(statement.getSource(), getLiteral(condition.getSource(), true), branch, Collections.emptyList()));
+		}
+
+		@Override
+		public List<Statement> visitWhileStatement(WhileStatement statement) {
+			Expression condition = rewrite(statement.getCondition());
+			if (Boolean.FALSE.equals(interpreter.evaluate(condition, namespace))) {
+				return Collections.emptyList();
+			}
+			return Collections.singletonList(new WhileStatement(statement.getSource(), statement.getSlice(), condition, rewrite(statement.getBody())));
+		}
+
+		@Override
+		public List<Statement> visitDoWhileStatement(DoWhileStatement statement) {
+			return Collections.singletonList(new DoWhileStatement(statement.getSource(), rewrite(statement.getBody()), rewrite(statement.getCondition())));
+		}
+
+		@Override
+		public List<Statement> visitMatchStatement(MatchStatement statement) {
+			Expression value = rewrite(statement.getValue());
+			List<MatchCase> cases = new ArrayList<>();
+			for (MatchCase matchCase : statement.getCases()) {
+				cases.add(new MatchCase(matchCase.getSource(), matchCase.getRanges(), rewrite(matchCase.getBody())));
+			}
+			List<Statement> otherwise = rewrite(statement.getOtherwise());
+
+			Object constant = interpreter.evaluate(value, namespace);
+			if (!(constant instanceof Integer)) {
+				return Collections.singletonList(new MatchStatement(statement.getSource(), value, cases, otherwise));
+			}
+
+			List<Statement> branch = otherwise;
+			for (MatchCase matchCase : cases) {
+				if (matchCase.getRanges().stream().anyMatch(r -> r.getMin() <= (Integer) constant && (Integer) constant <= r.getMax())) {
+					branch = matchCase.getBody();
+					break;
+				}
+			}
+			if (branch.isEmpty() || !declares(branch)) {
+				return branch;
+			}
+			return Collections.singletonList(new IfStatement(statement.getSource(), getLiteral(value.getSource(), true), branch, Collections.emptyList()));
+		}
+
+		@Override
+		public List<Statement> visitExpressionStatement(ExpressionStatement statement) {
+			return Collections.singletonList(new ExpressionStatement(statement.getSource(), rewrite(statement.getExpression())));
+		}
+
+		@Override
+		public Expression visitBinaryExpression(BinaryExpression expression) {
+			return new BinaryExpression(expression.getSource(), rewrite(expression.getLeft()), expression.getOperator(), rewrite(expression.getRight()));
+		}
+
+		@Override
+		public Expression visitUnaryExpression(UnaryExpression expression) {
+			return new UnaryExpression(expression.getSource(), expression.getOperator(), rewrite(expression.getOperand()));
+		}
+
+		@Override
+		public Expression visitIntegerExpression(IntegerExpression expression) {
+			return new IntegerExpression(expression.getSource(), expression.getValue());
+		}
+
+		@Override
+		public Expression visitCommandExpression(CommandExpression expression) {
+			return new CommandExpression(expression.getSource(), expression.getCommand());
+		}
+
+		@Override
+		public Expression visitFunctionCallExpression(CallExpression expression) {
+			List<Expression> arguments = new ArrayList<>();
+			for (Expression argument : expression.getArguments()) {
+				arguments.add(rewrite(argument));
+			}
+			return new CallExpression(expression.getSource(), expression.getFunctionFQN(), arguments);
+		}
+
+		@Override
+		public Expression visitVariableExpression(VariableExpression expression) {
+			FQN variableFQN = expression.getFQN();
+			if (variableFQN.getNamespace() == null && constants.containsKey(variableFQN.getName())) {
+				return getLiteral(expression.getSource(), constants.get(variableFQN.getName()));
+			}
+			return new VariableExpression(expression.getSource(), variableFQN);
+		}
+
+		@Override
+		public Expression visitIndexExpression(IndexExpression expression) {
+			return new IndexExpression(expression.getSource(), rewrite(expression.getArray()), rewrite(expression.getIndex()));
+		}
+
+		private Expression rewrite(Expression expression) {
+			return expression.accept(this);
+		}
+
+		private List<Statement> rewrite(List<Statement> block) {
+			List<Statement> result = new ArrayList<>();
+			for (Statement statement : block) {
+				result.addAll(statement.accept(this));
+			}
+			return result;
+		}
+	}
+
+	// Collects the names of the local variables assigned to
+	private static class AssignmentVisitor implements StatementVisitor<Void, RuntimeException> {
+		private final Set<String> assigned;
+
+		private AssignmentVisitor(Set<String> assigned) {
+			this.assigned = assigned;
+		}
+
+		@Override
+		public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+			if (statement.getVariableFQN().getNamespace() == null) {
+				assigned.add(statement.getVariableFQN().getName());
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitIfStatement(IfStatement statement) {
+			statement.getTrueBranch().forEach(s -> s.accept(this));
+			statement.getFalseBranch().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStatement(WhileStatement statement) {
+			statement.getBody().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitDoWhileStatement(DoWhileStatement statement) {
+			statement.getBody().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitMatchStatement(MatchStatement statement) {
+			statement.getCases().forEach(c -> c.getBody().forEach(s -> s.accept(this)));
+			statement.getOtherwise().forEach(s -> s.accept(this));
+			return null;
+		}
+	}
+
+	// Counts the statements of a function and checks whether it runs raw commands
+	private static class SizeVisitor implements StatementVisitor<Void, RuntimeException>, ExpressionVisitor<Void, RuntimeException> {
+		private int size = 0;
+		private boolean command = false;
+
+		@Override
+		public Void visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) {
+			size++;
+			return statement.getAssignedValue().accept(this);
+		}
+
+		@Override
+		public Void visitVariableDeclarationStatement(VariableDeclarationStatement statement) {
+			size++;
+			return null;
+		}
+
+		@Override
+		public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+			size++;
+			if (statement.getIndex() != null) {
+				statement.getIndex().accept(this);
+			}
+			return statement.getValue().accept(this);
+		}
+
+		@Override
+		public Void visitIfStatement(IfStatement statement) {
+			size++;
+			statement.getCondition().accept(this);
+			statement.getTrueBranch().forEach(s -> s.accept(this));
+			statement.getFalseBranch().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStatement(WhileStatement statement) {
+			size++;
+			statement.getCondition().accept(this);
+			statement.getBody().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitDoWhileStatement(DoWhileStatement statement) {
+			size++;
+			statement.getBody().forEach(s -> s.accept(this));
+			return statement.getCondition().accept(this);
+		}
+
+		@Override
+		public Void visitMatchStatement(MatchStatement statement) {
+			size++;
+			statement.getValue().accept(this);
+			statement.getCases().forEach(c -> c.getBody().forEach(s -> s.accept(this)));
+			statement.getOtherwise().forEach(s -> s.accept(this));
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStatement(ExpressionStatement statement) {
+			size++;
+			return statement.getExpression().accept(this);
+		}
+
+		@Override
+		public Void visitBinaryExpression(BinaryExpression expression) {
+			expression.getLeft().accept(this);
+			return expression.getRight().accept(this);
+		}
+
+		@Override
+		public Void visitUnaryExpression(UnaryExpression expression) {
+			return expression.getOperand().accept(this);
+		}
+
+		@Override
+		public Void visitCommandExpression(CommandExpression expression) {
+			command = true;
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionCallExpression(CallExpression expression) {
+			for (Expression argument : expression.getArguments()) {
+				argument.accept(this);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitIndexExpression(IndexExpression expression) {
+			expression.getArray().accept(this);
+			return expression.getIndex().accept(this);
+		}
+	}
+}
\ No newline at end of file
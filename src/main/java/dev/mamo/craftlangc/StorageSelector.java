@@ -0,0 +1,325 @@
+package dev.mamo.craftlangc;
+
+import dev.mamo.craftlangc.ast.*;
+import dev.mamo.craftlangc.ast.expression.*;
+import dev.mamo.craftlangc.ast.statement.*;
+import dev.mamo.craftlangc.core.*;
+import dev.mamo.craftlangc.type.*;
+
+import java.util.*;
+
+// Picks the compound types whose values are kept in NBT data instead of scores: locals in the data of the stack frame
+// marker, globals, arguments and returned values in a data storage. A stored record is copied, passed and returned by a
+// single command, while every member access takes a command of its own to move the member between its tag and a score,
+// so a type is only stored if it's large and its values are copied more than their members are used. Types which are
+// part of other types or contain arrays are always kept in scores, and so are the ones used by functions which save
+// their frame (async functions and sliced loops) or run raw commands, which may rely on the addresses of the scores
+public class StorageSelector {
+	private static final int MIN_STORED_SIZE = 4;
+
+	private final Map<FQN, Type> types;
+	private final Map<FQN, Store> globals;
+	private final Map<FQN, FunctionDefinition> functions;
+	private final Map<Type, Integer> copies = new HashMap<>();
+	private final Map<Type, Integer> accesses = new HashMap<>();
+	private final Set<Type> excluded = new HashSet<>();
+
+	private StorageSelector(Map<FQN, Type> types, Map<FQN, Store> globals, Map<FQN, FunctionDefinition> functions) {
+		this.types = types;
+		this.globals = globals;
+		this.functions = functions;
+	}
+
+	public static Set<Type> select(Map<FQN, Type> types, Map<FQN, Store> globals, Map<FQN, FunctionDefinition> functions, Specializer specializer) {
+		if (!Compiler.getTarget().hasMarkers()) {
+			return Collections.emptySet();
+		}
+
+		StorageSelector selector = new StorageSelector(types, globals, functions);
+		for (Map.Entry<FQN, FunctionDefinition> entry : functions.entrySet()) {
+			selector.scan(entry.getValue(), specializer.getNamespace(entry.getKey()));
+		}
+
+		Set<Type> contained = new HashSet<>();
+		for (Type type : types.values()) {
+			collectParts(type, contained);
+		}
+
+		Set<Type> stored = new HashSet<>();
+		for (Type type : types.values()) {
+			int size = type.size();
+			int copyCount = selector.copies.getOrDefault(type, 0);
+			int accessCount = selector.accesses.getOrDefault(type, 0);
+			if (type instanceof CompoundType && size >= MIN_STORED_SIZE && !hasArray(type) && !contained.contains(type) && !selector.excluded.contains(type) && copyCount * (size - 1) > accessCount) {
+				stored.add(type);
+			}
+		}
+		return stored;
+	}
+
+	private static void collectParts(Type type, Set<Type> parts) {
+		if (type instanceof CompoundType) {
+			for (Type member : ((CompoundType) type).getMembers().values()) {
+				parts.add(member);
+				collectParts(member, parts);
+			}
+		} else if (type instanceof ArrayType) {
+			Type elementType = ((ArrayType) type).getElementType();
+			parts.add(elementType);
+			collectParts(elementType, parts);
+		}
+	}
+
+	private static boolean hasArray(Type type) {
+		if (type instanceof ArrayType) {
+			return true;
+		}
+		return type instanceof CompoundType && ((CompoundType) type).getMembers().values().stream().anyMatch(StorageSelector::hasArray);
+	}
+
+	private void scan(FunctionDefinition function, Namespace namespace) {
+		Scanner scanner = new Scanner(namespace);
+		for (TypeAndName parameter : function.getParameters()) {
+			scanner.define(parameter.getName(), types.get(parameter.getTypeFQN()));
+		}
+		FQN returnTypeFQN = function.getReturnTypeFQN();
+		if (returnTypeFQN != null) {
+			scanner.define(function.getName(), types.get(returnTypeFQN));
+		}
+		scanner.scan(function.getBody());
+
+		if (function.isAsync() || scanner.restricted) {
+			excluded.addAll(scanner.used);
+		} else {
+			scanner.copies.forEach((type, count) -> copies.merge(type, count, Integer::sum));
+			scanner.accesses.forEach((type, count) -> accesses.merge(type, count, Integer::sum));
+		}
+	}
+
+	// Counts the copies of whole records and the accesses to their members in a function, by the type of the variable
+	// the record belongs to. Variables are resolved the same way the function compiler does
+	private class Scanner implements StatementVisitor<Void, RuntimeException>, ExpressionVisitor<Void, RuntimeException> {
+		private final Namespace namespace;
+		private final Map<Type, Integer> copies = new HashMap<>();
+		private final Map<Type, Integer> accesses = new HashMap<>();
+		private final Set<Type> used = new HashSet<>();
+		private Scope<String, Type> locals = new Scope<>();
+		private boolean restricted = false;
+
+		private Scanner(Namespace namespace) {
+			this.namespace = namespace;
+		}
+
+		private void define(String name, Type type) {
+			if (type != null) {
+				locals.define(name, type);
+				used.add(type);
+			}
+		}
+
+		private void scan(List<Statement> block) {
+			locals = new Scope<>(locals);
+			block.forEach(s -> s.accept(this));
+			locals = locals.getParent();
+		}
+
+		// The types of the variable the FQN refers to, followed by the ones of the members leading to the referenced one
+		private List<Type> resolveVariable(FQN variableFQN) {
+			List<String> components = new ArrayList<>();
+			if (variableFQN.getNamespace() != null) {
+				components.addAll(variableFQN.getNamespace().getComponents());
+			}
+			components.add(variableFQN.getName());
+
+			for (int i = components.size(); i > 0; i--) {
+				Type type = resolveStore(new FQN(components.subList(0, i)));
+				if (type == null) {
+					continue;
+				}
+
+				List<Type> path = new ArrayList<>(Collections.singletonList(type));
+				for (String member : components.subList(i, components.size())) {
+					type = type instanceof CompoundType ? ((CompoundType) type).getMembers().get(member) : null;
+					if (type == null) {
+						return null;
+					}
+					path.add(type);
+				}
+				return path;
+			}
+			return null;
+		}
+
+		private Type resolveStore(FQN variableFQN) {
+			if (variableFQN.getNamespace() == null) {
+				Type type = locals.get(variableFQN.getName());
+				if (type != null) {
+					return type;
+				}
+				variableFQN = new FQN(namespace, variableFQN.getName());
+			}
+			Store store = globals.get(variableFQN);
+			return store != null ? store.getType() : null;
+		}
+
+		private FunctionDefinition resolveFunction(CallExpression expression) {
+			if (Intrinsic.resolve(expression.getFunctionFQN(), namespace, functions) != null) {
+				return null;
+			}
+			FQN functionFQN = expression.getFunctionFQN();
+			return functions.get(functionFQN.getNamespace() == null ? new FQN(namespace, functionFQN.getName()) : functionFQN);
+		}
+
+		private Type getType(Expression expression) {
+			if (expression instanceof VariableExpression) {
+				List<Type> path = resolveVariable(((VariableExpression) expression).getFQN());
+				return path != null ? path.get(path.size() - 1) : null;
+			}
+			if (expression instanceof CallExpression) {
+				FunctionDefinition callee = resolveFunction((CallExpression) expression);
+				return callee != null && callee.getReturnTypeFQN() != null ? types.get(callee.getReturnTypeFQN()) : null;
+			}
+			if (expression instanceof IndexExpression) {
+				Type arrayType = getType(((IndexExpression) expression).getArray());
+				return arrayType instanceof ArrayType ? ((ArrayType) arrayType).getElementType() : null;
+			}
+			return null;
+		}
+
+		// A whole variable given as a value is copied as a record, anything else is evaluated member by member
+		private void scanValue(Expression expression) {
+			List<Type> path = expression instanceof VariableExpression ? resolveVariable(((VariableExpression) expression).getFQN()) : null;
+			if (path != null && path.size() == 1 && path.get(0) instanceof CompoundType) {
+				copies.merge(path.get(0), 1, Integer::sum);
+				return;
+			}
+			expression.accept(this);
+		}
+
+		@Override
+		public Void visitVariableDeclarationAndAssignmentStatement(VariableDeclarationAndAssignmentStatement statement) {
+			scanValue(statement.getAssignedValue());
+			FQN typeFQN = statement.getVariableTypeFQN();
+			define(statement.getVariableName(), typeFQN != null ? types.get(typeFQN) : getType(statement.getAssignedValue()));
+			return null;
+		}
+
+		@Override
+		public Void visitVariableDeclarationStatement(VariableDeclarationStatement statement) {
+			define(statement.getVariableName(), types.get(statement.getVariableTypeFQN()));
+			return null;
+		}
+
+		@Override
+		public Void visitVariableAssignmentStatement(VariableAssignmentStatement statement) {
+			if (statement.getIndex() != null) {
+				statement.getIndex().accept(this);
+			}
+
+			List<Type> path = resolveVariable(statement.getVariableFQN());
+			if (path != null && path.size() > 1) {
+				int size = path.get(path.size() - 1).size();
+				accesses.merge(path.get(0), statement.getOperator() == AssignmentOperator.EQUAL ? size : 2 * size, Integer::sum);
+			}
+			if (statement.getOperator() == AssignmentOperator.EQUAL) {
+				scanValue(statement.getValue());
+			} else {
+				statement.getValue().accept(this);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitIfStatement(IfStatement statement) {
+			statement.getCondition().accept(this);
+			scan(statement.getTrueBranch());
+			scan(statement.getFalseBranch());
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStatement(WhileStatement statement) {
+			restricted |= statement.getSlice() != null;
+			statement.getCondition().accept(this);
+			scan(statement.getBody());
+			return null;
+		}
+
+		@Override
+		public Void visitDoWhileStatement(DoWhileStatement statement) {
+			scan(statement.getBody());
+			return statement.getCondition().accept(this);
+		}
+
+		@Override
+		public Void visitMatchStatement(MatchStatement statement) {
+			statement.getValue().accept(this);
+			statement.getCases().forEach(c -> scan(c.getBody()));
+			scan(statement.getOtherwise());
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStatement(ExpressionStatement statement) {
+			return statement.getExpression().accept(this);
+		}
+
+		@Override
+		public Void visitBinaryExpression(BinaryExpression expression) {
+			expression.getLeft().accept(this);
+			return expression.getRight().accept(this);
+		}
+
+		@Override
+		public Void visitUnaryExpression(UnaryExpression expression) {
+			return expression.getOperand().accept(this);
+		}
+
+		@Override
+		public Void visitCommandExpression(CommandExpression expression) {
+			restricted = true;
+			return null;
+		}
+
+		// Each argument is copied into its parameter, and the returned value out of the callee
+		@Override
+		public Void visitFunctionCallExpression(CallExpression expression) {
+			FunctionDefinition callee = resolveFunction(expression);
+			if (callee == null) {
+				expression.getArguments().forEach(a -> a.accept(this));
+				return null;
+			}
+
+			expression.getArguments().forEach(this::scanValue);
+			for (TypeAndName parameter : callee.getParameters()) {
+				Type type = types.get(parameter.getTypeFQN());
+				if (type != null) {
+					used.add(type);
+				}
+			}
+			Type returnType = getType(expression);
+			if (returnType instanceof CompoundType) {
+				used.add(returnType);
+				copies.merge(returnType, 1, Integer::sum);
+			}
+			return null;
+		}
+
+		// A whole record used in an expression has all of its members loaded
+		@Override
+		public Void visitVariableExpression(VariableExpression expression) {
+			List<Type> path = resolveVariable(expression.getFQN());
+			if (path != null) {
+				used.add(path.get(0));
+				accesses.merge(path.get(0), path.get(path.size() - 1).size(), Integer::sum);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitIndexExpression(IndexExpression expression) {
+			expression.getArray().accept(this);
+			return expression.getIndex().accept(this);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package dev.mamo.craftlangc;
+
+import java.util.*;
+
+// The data pack format the output is meant for, which decides the commands the compiler can pick from
+public class Target {
+	public static final int MIN_PACK_FORMAT = 4;
+	public static final String GLOBAL_HOLDER_PREFIX = "#g";
+
+	private final int packFormat;
+
+	public Target(int packFormat) {
+		if (packFormat < MIN_PACK_FORMAT) {
+			throw new IllegalArgumentException("Unsupported pack format: " + packFormat);
+		}
+		this.packFormat = packFormat;
+	}
+
+	public int getPackFormat() {
+		return packFormat;
+	}
+
+	// Marker entities (1.17 and later) are never ticked and can't be seen, unlike the area effect clouds used before
+	public boolean hasMarkers() {
+		return packFormat >= 7;
+	}
+
+	// Functions can contain macros, lines with arguments filled in when the function is called, from 1.20.2 on
+	public boolean hasMacros() {
+		return packFormat >= 18;
+	}
+
+	// The fake player the global in the slot is kept under. Macros can only paste numbers in decimal, so the slots are
+	// written in decimal when they're available, to let an element of a global array be addressed by its slot
+	public String getGlobalHolder(int slot) {
+		return GLOBAL_HOLDER_PREFIX + (hasMacros() ? Integer.toString(slot) : Integer.toHexString(slot));
+	}
+
+	// The entity the stack frames and the saved state of waiting functions are kept in
+	public String getFrameEntity() {
+		return hasMarkers() ? "minecraft:marker" : "minecraft:area_effect_cloud";
+	}
+
+	// Summons a frame entity with the tag. Area effect clouds vanish once their wait time and duration are over (30
+	// seconds by default) and show particles, so the ones kept across ticks get no wait time, so that the sum can't
+	// overflow, the longest duration, no radius and invisible particles
+	public String getSummon(String tag, boolean lasting) {
+		String data = "Tags:[\"" + tag + "\"]";
+		if (lasting && !hasMarkers()) {
+			data += ",WaitTime:0,Duration:2147483647,Radius:0f,Particle:\"block air\"";
+		}
+		return "summon " + getFrameEntity() + " ~ ~ ~ {" + data + "}";
+	}
+
+	// Selects the frame entities with the tag. Filtering by type first lets the game skip the other entities
+	public String getFrameSelector(String tag) {
+		return "@e[type=" + getFrameEntity() + ",tag=" + tag + "]";
+	}
+
+	// Creates a stack frame and gives it the id the frame pointer is moved to. The new entity is the only frame with no
+	// id yet
+	public List<String> getPushFrame() {
+		return Arrays.asList(
+			getSummon("cr_frame", false),
+			"execute as " + getFrameSelector("cr_frame") + " unless score @s cr_id matches -2147483648.. store result score @s cr_id run scoreboard players add #cr cr_fp 1"
+		);
+	}
+
+	public List<String> getPopFrame() {
+		return Arrays.asList(
+			getAsFrame() + "run kill @s",
+			"scoreboard players remove #cr cr_fp 1"
+		);
+	}
+
+	// The start of an execute command running as the current stack frame
+	public String getAsFrame() {
+		return "execute as " + getFrameSelector("cr_frame") + " if score @s cr_id = #cr cr_fp ";
+	}
+}
\ No newline at end of file
@@ -14,14 +14,24 @@ public class FunctionDefinition implements Node, Serializable {
 	private String name;
 	private List<TypeAndName> parameters;
 	private List<Statement> body;
+	private boolean async;
+	private Integer period;
+	private Integer phase;
+	private boolean memo;
+	private Integer lifetime;
 
 	public FunctionDefinition(ParseNode source, List<FQN> tags, FQN returnTypeFQN, String name, List<TypeAndName> parameters, List<Statement> body) {
+		this(source, tags, returnTypeFQN, name, parameters, body, false);
+	}
+
+	public FunctionDefinition(ParseNode source, List<FQN> tags, FQN returnTypeFQN, String name, List<TypeAndName> parameters, List<Statement> body, boolean async) {
 		setSource(source);
 		setTags(tags);
 		setReturnTypeFQN(returnTypeFQN);
 		setName(name);
 		setParameters(parameters);
 		setBody(body);
+		setAsync(async);
 	}
 
 	@Override
@@ -74,6 +84,51 @@ public class FunctionDefinition implements Node, Serializable {
 		this.body = Objects.requireNonNull(body);
 	}
 
+	// Whether the function may suspend itself with yield or wait
+	public boolean isAsync() {
+		return async;
+	}
+
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	// The number of ticks between two runs of the function, or null if it isn't run periodically
+	public Integer getPeriod() {
+		return period;
+	}
+
+	public void setPeriod(Integer period) {
+		this.period = period;
+	}
+
+	// The tick within the period the function runs on, or null if any will do
+	public Integer getPhase() {
+		return phase;
+	}
+
+	public void setPhase(Integer phase) {
+		this.phase = phase;
+	}
+
+	// Whether the results of the function are cached by its arguments
+	public boolean isMemo() {
+		return memo;
+	}
+
+	public void setMemo(boolean memo) {
+		this.memo = memo;
+	}
+
+	// The number of ticks the cache of a memoized function is kept for, or null if it's never cleared
+	public Integer getLifetime() {
+		return lifetime;
+	}
+
+	public void setLifetime(Integer lifetime) {
+		this.lifetime = lifetime;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (!(obj instanceof FunctionDefinition)) {
@@ -85,7 +140,12 @@ public class FunctionDefinition implements Node, Serializable {
 			&& Objects.equals(functionDefinition.getReturnTypeFQN(), getReturnTypeFQN())
 			&& functionDefinition.getName().equals(getName())
 			&& functionDefinition.getParameters().equals(getParameters())
-			&& functionDefinition.getBody().equals(getBody());
+			&& functionDefinition.getBody().equals(getBody())
+			&& functionDefinition.isAsync() == isAsync()
+			&& Objects.equals(functionDefinition.getPeriod(), getPeriod())
+			&& Objects.equals(functionDefinition.getPhase(), getPhase())
+			&& functionDefinition.isMemo() == isMemo()
+			&& Objects.equals(functionDefinition.getLifetime(), getLifetime());
 	}
 
 	@Override
@@ -96,7 +156,12 @@ public class FunctionDefinition implements Node, Serializable {
 			getReturnTypeFQN(),
 			getName(),
 			getParameters(),
-			getBody()
+			getBody(),
+			isAsync(),
+			getPeriod(),
+			getPhase(),
+			isMemo(),
+			getLifetime()
 		);
 	}
 }
\ No newline at end of file
@@ -24,4 +24,8 @@ public interface ExpressionVisitor<T, E extends Throwable> {
 	default T visitVariableExpression(VariableExpression expression) throws E {
 		return null;
 	}
+
+	default T visitIndexExpression(IndexExpression expression) throws E {
+		return null;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package dev.mamo.craftlangc.ast.expression;
+
+import dev.mamo.craftlangc.core.parser.*;
+
+import java.io.*;
+import java.util.*;
+
+public class IndexExpression implements Expression, Serializable {
+	private ParseNode source;
+	private Expression array;
+	private Expression index;
+
+	public IndexExpression(ParseNode source, Expression array, Expression index) {
+		setSource(source);
+		setArray(array);
+		setIndex(index);
+	}
+
+	@Override
+	public ParseNode getSource() {
+		return source;
+	}
+
+	@Override
+	public void setSource(ParseNode source) {
+		this.source = Objects.requireNonNull(source);
+	}
+
+	public Expression getArray() {
+		return array;
+	}
+
+	public void setArray(Expression array) {
+		this.array = Objects.requireNonNull(array);
+	}
+
+	public Expression getIndex() {
+		return index;
+	}
+
+	public void setIndex(Expression index) {
+		this.index = Objects.requireNonNull(index);
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(ExpressionVisitor<T, E> visitor) throws E {
+		return visitor.visitIndexExpression(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof IndexExpression)) {
+			return false;
+		}
+		IndexExpression expression = (IndexExpression) obj;
+		return expression.getSource().equals(getSource())
+			&& expression.getArray().equals(getArray())
+			&& expression.getIndex().equals(getIndex());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getSource(),
+			getArray(),
+			getIndex()
+		);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package dev.mamo.craftlangc.ast.statement;
+
+import dev.mamo.craftlangc.ast.*;
+import dev.mamo.craftlangc.core.parser.*;
+
+import java.io.*;
+import java.util.*;
+
+public class MatchCase implements Node, Serializable {
+	private ParseNode source;
+	private List<MatchRange> ranges;
+	private List<Statement> body;
+
+	public MatchCase(ParseNode source, List<MatchRange> ranges, List<Statement> body) {
+		setSource(source);
+		setRanges(ranges);
+		setBody(body);
+	}
+
+	@Override
+	public ParseNode getSource() {
+		return source;
+	}
+
+	@Override
+	public void setSource(ParseNode source) {
+		this.source = Objects.requireNonNull(source);
+	}
+
+	public List<MatchRange> getRanges() {
+		return ranges;
+	}
+
+	public void setRanges(List<MatchRange> ranges) {
+		this.ranges = Objects.requireNonNull(ranges);
+	}
+
+	public List<Statement> getBody() {
+		return body;
+	}
+
+	public void setBody(List<Statement> body) {
+		this.body = Objects.requireNonNull(body);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof MatchCase)) {
+			return false;
+		}
+		MatchCase matchCase = (MatchCase) obj;
+		return matchCase.getSource().equals(getSource())
+			&& matchCase.getRanges().equals(getRanges())
+			&& matchCase.getBody().equals(getBody());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getSource(),
+			getRanges(),
+			getBody()
+		);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package dev.mamo.craftlangc.ast.statement;
+
+import dev.mamo.craftlangc.ast.*;
+import dev.mamo.craftlangc.core.parser.*;
+
+import java.io.*;
+import java.util.*;
+
+// The values from min to max, both included
+public class MatchRange implements Node, Serializable {
+	private ParseNode source;
+	private int min;
+	private int max;
+
+	public MatchRange(ParseNode source, int min, int max) {
+		setSource(source);
+		setMin(min);
+		setMax(max);
+	}
+
+	@Override
+	public ParseNode getSource() {
+		return source;
+	}
+
+	@Override
+	public void setSource(ParseNode source) {
+		this.source = Objects.requireNonNull(source);
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public void setMin(int min) {
+		this.min = min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public void setMax(int max) {
+		this.max = max;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof MatchRange)) {
+			return false;
+		}
+		MatchRange range = (MatchRange) obj;
+		return range.getSource().equals(getSource())
+			&& range.getMin() == getMin()
+			&& range.getMax() == getMax();
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getSource(),
+			getMin(),
+			getMax()
+		);
+	}
+}
\ No newline at end of file
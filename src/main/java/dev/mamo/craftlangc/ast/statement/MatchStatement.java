@@ -0,0 +1,83 @@
+package dev.mamo.craftlangc.ast.statement;
+
+import dev.mamo.craftlangc.ast.expression.*;
+import dev.mamo.craftlangc.core.parser.*;
+
+import java.io.*;
+import java.util.*;
+
+public class MatchStatement implements Statement, Serializable {
+	private ParseNode source;
+	private Expression value;
+	private List<MatchCase> cases;
+	private List<Statement> otherwise;
+
+	public MatchStatement(ParseNode source, Expression value, List<MatchCase> cases, List<Statement> otherwise) {
+		setSource(source);
+		setValue(value);
+		setCases(cases);
+		setOtherwise(otherwise);
+	}
+
+	@Override
+	public ParseNode getSource() {
+		return source;
+	}
+
+	@Override
+	public void setSource(ParseNode source) {
+		this.source = Objects.requireNonNull(source);
+	}
+
+	public Expression getValue() {
+		return value;
+	}
+
+	public void setValue(Expression value) {
+		this.value = Objects.requireNonNull(value);
+	}
+
+	public List<MatchCase> getCases() {
+		return cases;
+	}
+
+	public void setCases(List<MatchCase> cases) {
+		this.cases = Objects.requireNonNull(cases);
+	}
+
+	// The statements run when no case matches the value
+	public List<Statement> getOtherwise() {
+		return otherwise;
+	}
+
+	public void setOtherwise(List<Statement> otherwise) {
+		this.otherwise = Objects.requireNonNull(otherwise);
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(StatementVisitor<T, E> visitor) throws E {
+		return visitor.visitMatchStatement(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof MatchStatement)) {
+			return false;
+		}
+		MatchStatement statement = (MatchStatement) obj;
+		return statement.getSource().equals(getSource())
+			&& statement.getValue().equals(getValue())
+			&& statement.getCases().equals(getCases())
+			&& statement.getOtherwise().equals(getOtherwise());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getSource(),
+			getValue(),
+			getCases(),
+			getOtherwise()
+		);
+	}
+}
\ No newline at end of file
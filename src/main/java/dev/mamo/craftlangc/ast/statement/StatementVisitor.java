@@ -25,7 +25,15 @@ public interface StatementVisitor<T, E extends Throwable> {
 		return null;
 	}
 
+	default T visitMatchStatement(MatchStatement statement) throws E {
+		return null;
+	}
+
 	default T visitExpressionStatement(ExpressionStatement statement) throws E {
 		return null;
 	}
+
+	default T visitYieldStatement(YieldStatement statement) throws E {
+		return null;
+	}
 }
\ No newline at end of file
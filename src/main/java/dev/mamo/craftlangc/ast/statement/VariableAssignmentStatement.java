@@ -10,16 +10,22 @@ import java.util.*;
 public class VariableAssignmentStatement implements Statement, Serializable {
 	private ParseNode source;
 	private FQN variableFQN;
+	private Expression index;
 	private AssignmentOperator operator;
 	private Expression value;
 
-	public VariableAssignmentStatement(ParseNode source, FQN variableFQN, AssignmentOperator operator, Expression value) {
+	public VariableAssignmentStatement(ParseNode source, FQN variableFQN, Expression index, AssignmentOperator operator, Expression value) {
 		setSource(source);
 		setVariableFQN(variableFQN);
+		setIndex(index);
 		setOperator(operator);
 		setValue(value);
 	}
 
+	public VariableAssignmentStatement(ParseNode source, FQN variableFQN, AssignmentOperator operator, Expression value) {
+		this(source, variableFQN, null, operator, value);
+	}
+
 	@Override
 	public ParseNode getSource() {
 		return source;
@@ -38,6 +44,15 @@ public class VariableAssignmentStatement implements Statement, Serializable {
 		this.variableFQN = Objects.requireNonNull(variableFQN);
 	}
 
+	// The element of the array variable being assigned, if any
+	public Expression getIndex() {
+		return index;
+	}
+
+	public void setIndex(Expression index) {
+		this.index = index;
+	}
+
 	public AssignmentOperator getOperator() {
 		return operator;
 	}
@@ -67,6 +82,7 @@ public class VariableAssignmentStatement implements Statement, Serializable {
 		VariableAssignmentStatement statement = (VariableAssignmentStatement) obj;
 		return statement.getSource().equals(getSource())
 			&& statement.getVariableFQN().equals(getVariableFQN())
+			&& Objects.equals(statement.getIndex(), getIndex())
 			&& statement.getOperator().equals(getOperator())
 			&& statement.getValue().equals(getValue());
 	}
@@ -75,6 +91,7 @@ public class VariableAssignmentStatement implements Statement, Serializable {
 	public int hashCode() {
 		return Objects.hash(getSource(),
 			getVariableFQN(),
+			getIndex(),
 			getOperator(),
 			getValue()
 		);
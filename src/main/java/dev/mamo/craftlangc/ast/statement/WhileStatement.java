@@ -7,12 +7,20 @@ import java.io.*;
 import java.util.*;
 
 public class WhileStatement implements Statement, Serializable {
+	public static final int DEFAULT_SLICE = 256;
+
 	private ParseNode source;
+	private Integer slice;
 	private Expression condition;
 	private List<Statement> body;
 
 	public WhileStatement(ParseNode source, Expression condition, List<Statement> body) {
+		this(source, null, condition, body);
+	}
+
+	public WhileStatement(ParseNode source, Integer slice, Expression condition, List<Statement> body) {
 		setSource(source);
+		setSlice(slice);
 		setCondition(condition);
 		setBody(body);
 	}
@@ -27,6 +35,15 @@ public class WhileStatement implements Statement, Serializable {
 		this.source = Objects.requireNonNull(source);
 	}
 
+	// The number of iterations run per tick, or null if the loop isn't sliced
+	public Integer getSlice() {
+		return slice;
+	}
+
+	public void setSlice(Integer slice) {
+		this.slice = slice;
+	}
+
 	public Expression getCondition() {
 		return condition;
 	}
@@ -55,6 +72,7 @@ public class WhileStatement implements Statement, Serializable {
 		}
 		WhileStatement statement = (WhileStatement) obj;
 		return statement.getSource().equals(getSource())
+			&& Objects.equals(statement.getSlice(), getSlice())
 			&& statement.getCondition().equals(getCondition())
 			&& statement.getBody().equals(getBody());
 	}
@@ -62,6 +80,7 @@ public class WhileStatement implements Statement, Serializable {
 	@Override
 	public int hashCode() {
 		return Objects.hash(getSource(),
+			getSlice(),
 			getCondition(),
 			getBody()
 		);
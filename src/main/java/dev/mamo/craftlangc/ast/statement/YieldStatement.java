@@ -0,0 +1,59 @@
+package dev.mamo.craftlangc.ast.statement;
+
+import dev.mamo.craftlangc.ast.expression.*;
+import dev.mamo.craftlangc.core.parser.*;
+
+import java.io.*;
+import java.util.*;
+
+public class YieldStatement implements Statement, Serializable {
+	private ParseNode source;
+	private Expression ticks;
+
+	public YieldStatement(ParseNode source, Expression ticks) {
+		setSource(source);
+		setTicks(ticks);
+	}
+
+	@Override
+	public ParseNode getSource() {
+		return source;
+	}
+
+	@Override
+	public void setSource(ParseNode source) {
+		this.source = Objects.requireNonNull(source);
+	}
+
+	// The number of ticks to wait for, or null for a plain yield
+	public Expression getTicks() {
+		return ticks;
+	}
+
+	public void setTicks(Expression ticks) {
+		this.ticks = ticks;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(StatementVisitor<T, E> visitor) throws E {
+		return visitor.visitYieldStatement(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof YieldStatement)) {
+			return false;
+		}
+		YieldStatement statement = (YieldStatement) obj;
+		return statement.getSource().equals(getSource())
+			&& Objects.equals(statement.getTicks(), getTicks());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getSource(),
+			getTicks()
+		);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+// Adds a constant to a score, which is rendered as a removal when the constant is negative
+public class AddInstruction implements Instruction, Serializable {
+	private final Score target;
+	private final int value;
+
+	public AddInstruction(Score target, int value) {
+		this.target = Objects.requireNonNull(target);
+		this.value = value;
+	}
+
+	public Score getTarget() {
+		return target;
+	}
+
+	public int getValue() {
+		return value;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitAddInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof AddInstruction)) {
+			return false;
+		}
+		AddInstruction instruction = (AddInstruction) obj;
+		return instruction.getTarget().equals(getTarget())
+			&& instruction.getValue() == getValue();
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getTarget(),
+			getValue()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return "add " + getTarget() + ' ' + getValue();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,57 @@
+package dev.mamo.craftlangc.ir;
+
+import dev.mamo.craftlangc.*;
+
+import java.io.*;
+import java.util.*;
+
+public class CallInstruction implements Instruction, Serializable {
+	private final FQN functionFQN;
+	private final String storage;
+
+	public CallInstruction(FQN functionFQN) {
+		this(functionFQN, null);
+	}
+
+	// A call with a storage runs a function containing macros, whose arguments are taken from the storage
+	public CallInstruction(FQN functionFQN, String storage) {
+		this.functionFQN = Objects.requireNonNull(functionFQN);
+		this.storage = storage;
+	}
+
+	public FQN getFunctionFQN() {
+		return functionFQN;
+	}
+
+	public String getStorage() {
+		return storage;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitCallInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CallInstruction)) {
+			return false;
+		}
+		CallInstruction instruction = (CallInstruction) obj;
+		return instruction.getFunctionFQN().equals(getFunctionFQN())
+			&& Objects.equals(instruction.getStorage(), getStorage());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getFunctionFQN(),
+			getStorage()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return getStorage() != null ? "call " + getFunctionFQN() + " with " + getStorage() : "call " + getFunctionFQN();
+	}
+}
\ No newline at end of file
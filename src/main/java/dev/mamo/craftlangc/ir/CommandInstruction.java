@@ -0,0 +1,36 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+public class CommandInstruction implements Instruction, Serializable {
+	private final String command;
+
+	public CommandInstruction(String command) {
+		this.command = Objects.requireNonNull(command);
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitCommandInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof CommandInstruction && ((CommandInstruction) obj).getCommand().equals(getCommand());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getCommand());
+	}
+
+	@Override
+	public String toString() {
+		return '/' + getCommand();
+	}
+}
\ No newline at end of file
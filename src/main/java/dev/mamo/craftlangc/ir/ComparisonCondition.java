@@ -0,0 +1,72 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+public class ComparisonCondition implements Condition, Serializable {
+	private final boolean negated;
+	private final Score left;
+	private final ComparisonOperator operator;
+	private final Score right;
+
+	public ComparisonCondition(boolean negated, Score left, ComparisonOperator operator, Score right) {
+		this.negated = negated;
+		this.left = Objects.requireNonNull(left);
+		this.operator = Objects.requireNonNull(operator);
+		this.right = Objects.requireNonNull(right);
+	}
+
+	@Override
+	public boolean isNegated() {
+		return negated;
+	}
+
+	public Score getLeft() {
+		return left;
+	}
+
+	public ComparisonOperator getOperator() {
+		return operator;
+	}
+
+	public Score getRight() {
+		return right;
+	}
+
+	@Override
+	public ComparisonCondition negate() {
+		return new ComparisonCondition(!isNegated(), getLeft(), getOperator(), getRight());
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(ConditionVisitor<T, E> visitor) throws E {
+		return visitor.visitComparisonCondition(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ComparisonCondition)) {
+			return false;
+		}
+		ComparisonCondition condition = (ComparisonCondition) obj;
+		return condition.isNegated() == isNegated()
+			&& condition.getLeft().equals(getLeft())
+			&& condition.getOperator().equals(getOperator())
+			&& condition.getRight().equals(getRight());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			isNegated(),
+			getLeft(),
+			getOperator(),
+			getRight()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return (isNegated() ? "unless " : "if ") + getLeft() + ' ' + getOperator().getSymbol() + ' ' + getRight();
+	}
+}
\ No newline at end of file
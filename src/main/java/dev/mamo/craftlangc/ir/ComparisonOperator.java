@@ -0,0 +1,35 @@
+package dev.mamo.craftlangc.ir;
+
+public enum ComparisonOperator {
+	EQUAL("="),
+	LESS("<"),
+	LESS_OR_EQUAL("<="),
+	GREATER(">"),
+	GREATER_OR_EQUAL(">=");
+
+	private final String symbol;
+
+	ComparisonOperator(String symbol) {
+		this.symbol = symbol;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	// The operator to use once the operands are swapped
+	public ComparisonOperator mirror() {
+		switch (this) {
+			case LESS:
+				return GREATER;
+			case LESS_OR_EQUAL:
+				return GREATER_OR_EQUAL;
+			case GREATER:
+				return LESS;
+			case GREATER_OR_EQUAL:
+				return LESS_OR_EQUAL;
+			default:
+				return this;
+		}
+	}
+}
\ No newline at end of file
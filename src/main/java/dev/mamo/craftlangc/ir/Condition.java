@@ -0,0 +1,9 @@
+package dev.mamo.craftlangc.ir;
+
+public interface Condition {
+	boolean isNegated();
+
+	Condition negate();
+
+	<T, E extends Throwable> T accept(ConditionVisitor<T, E> visitor) throws E;
+}
\ No newline at end of file
@@ -0,0 +1,11 @@
+package dev.mamo.craftlangc.ir;
+
+public interface ConditionVisitor<T, E extends Throwable> {
+	default T visitComparisonCondition(ComparisonCondition condition) throws E {
+		return null;
+	}
+
+	default T visitMatchesCondition(MatchesCondition condition) throws E {
+		return null;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+// A score of the constant pool, which is set once when the data pack is loaded and never changes afterwards
+public class ConstantScore implements Score, Serializable {
+	public static final String OBJECTIVE = "cr_const";
+
+	private final int value;
+
+	public ConstantScore(int value) {
+		this.value = value;
+	}
+
+	public int getValue() {
+		return value;
+	}
+
+	@Override
+	public String getHolder() {
+		return "#c" + getValue();
+	}
+
+	@Override
+	public String getObjective() {
+		return OBJECTIVE;
+	}
+
+	@Override
+	public boolean isTemporary() {
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ConstantScore)) {
+			return false;
+		}
+		ConstantScore score = (ConstantScore) obj;
+		return score.getValue() == getValue();
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getValue());
+	}
+
+	@Override
+	public String toString() {
+		return getHolder() + ' ' + getObjective();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+// Copies a whole compound tag, however many members it has
+public class CopyDataInstruction implements Instruction, Serializable {
+	private final DataLocation target;
+	private final DataLocation source;
+
+	public CopyDataInstruction(DataLocation target, DataLocation source) {
+		this.target = Objects.requireNonNull(target);
+		this.source = Objects.requireNonNull(source);
+	}
+
+	public DataLocation getTarget() {
+		return target;
+	}
+
+	public DataLocation getSource() {
+		return source;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitCopyDataInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CopyDataInstruction)) {
+			return false;
+		}
+		CopyDataInstruction instruction = (CopyDataInstruction) obj;
+		return instruction.getTarget().equals(getTarget())
+			&& instruction.getSource().equals(getSource());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getTarget(),
+			getSource()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return "copy " + getTarget() + " = " + getSource();
+	}
+}
\ No newline at end of file
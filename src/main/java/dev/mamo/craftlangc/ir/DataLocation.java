@@ -0,0 +1,50 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+// A path in the NBT data of the current stack frame entity, or in the data storage shared by the whole data pack
+public class DataLocation implements Serializable {
+	private final boolean frame;
+	private final String path;
+
+	public DataLocation(boolean frame, String path) {
+		this.frame = frame;
+		this.path = Objects.requireNonNull(path);
+	}
+
+	public boolean isFrame() {
+		return frame;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public DataLocation getMember(String name) {
+		return new DataLocation(isFrame(), getPath() + '.' + name);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DataLocation)) {
+			return false;
+		}
+		DataLocation location = (DataLocation) obj;
+		return location.isFrame() == isFrame()
+			&& location.getPath().equals(getPath());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			isFrame(),
+			getPath()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return (isFrame() ? "@s " : "storage ") + getPath();
+	}
+}
\ No newline at end of file
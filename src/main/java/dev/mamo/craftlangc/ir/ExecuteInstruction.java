@@ -0,0 +1,81 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+public class ExecuteInstruction implements Instruction, Serializable {
+	private final List<Condition> conditions;
+	private final Score store;
+	private final Instruction body;
+
+	public ExecuteInstruction(List<Condition> conditions, Score store, Instruction body) {
+		if (store == null && body == null) {
+			throw new IllegalArgumentException("Either a store or a body is required");
+		}
+		this.conditions = Collections.unmodifiableList(new ArrayList<>(conditions));
+		this.store = store;
+		this.body = body;
+	}
+
+	public ExecuteInstruction(Condition condition, Score store) {
+		this(Collections.singletonList(condition), store, null);
+	}
+
+	public ExecuteInstruction(Condition condition, Instruction body) {
+		this(Collections.singletonList(condition), null, body);
+	}
+
+	public List<Condition> getConditions() {
+		return conditions;
+	}
+
+	public Score getStore() {
+		return store;
+	}
+
+	public Instruction getBody() {
+		return body;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitExecuteInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ExecuteInstruction)) {
+			return false;
+		}
+		ExecuteInstruction instruction = (ExecuteInstruction) obj;
+		return instruction.getConditions().equals(getConditions())
+			&& Objects.equals(instruction.getStore(), getStore())
+			&& Objects.equals(instruction.getBody(), getBody());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getConditions(),
+			getStore(),
+			getBody()
+		);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("execute");
+		Score store = getStore();
+		if (store != null) {
+			result.append(" store success ").append(store);
+		}
+		for (Condition condition : getConditions()) {
+			result.append(' ').append(condition);
+		}
+		Instruction body = getBody();
+		if (body != null) {
+			result.append(" run ").append(body);
+		}
+		return result.toString();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+public class FrameScore implements Score, Serializable {
+	private final int address;
+	private final boolean temporary;
+
+	public FrameScore(int address, boolean temporary) {
+		this.address = address;
+		this.temporary = temporary;
+	}
+
+	public int getAddress() {
+		return address;
+	}
+
+	@Override
+	public String getHolder() {
+		return "@s";
+	}
+
+	@Override
+	public String getObjective() {
+		return "cr_" + getAddress();
+	}
+
+	@Override
+	public boolean isTemporary() {
+		return temporary;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof FrameScore)) {
+			return false;
+		}
+		FrameScore score = (FrameScore) obj;
+		return score.getAddress() == getAddress()
+			&& score.isTemporary() == isTemporary();
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getAddress(),
+			isTemporary()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return isTemporary() ? "@s %" + getAddress() : getHolder() + ' ' + getObjective();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,5 @@
+package dev.mamo.craftlangc.ir;
+
+public interface Instruction {
+	<T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E;
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+package dev.mamo.craftlangc.ir;
+
+public interface InstructionVisitor<T, E extends Throwable> {
+	default T visitSetInstruction(SetInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitAddInstruction(AddInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitOperationInstruction(OperationInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitExecuteInstruction(ExecuteInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitCallInstruction(CallInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitCommandInstruction(CommandInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitPushFrameInstruction(PushFrameInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitPopFrameInstruction(PopFrameInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitParkFrameInstruction(ParkFrameInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitSetDataInstruction(SetDataInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitCopyDataInstruction(CopyDataInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitLoadDataInstruction(LoadDataInstruction instruction) throws E {
+		return null;
+	}
+
+	default T visitSaveDataInstruction(SaveDataInstruction instruction) throws E {
+		return null;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,421 @@
+package dev.mamo.craftlangc.ir;
+
+import dev.mamo.craftlangc.*;
+
+import java.util.*;
+import java.util.function.*;
+
+public class Instructions {
+	private Instructions() {}
+
+	public static Set<Score> getScores(Condition condition) {
+		Set<Score> scores = new LinkedHashSet<>();
+		condition.accept(new ConditionVisitor<Void, RuntimeException>() {
+			@Override
+			public Void visitComparisonCondition(ComparisonCondition condition) {
+				scores.add(condition.getLeft());
+				scores.add(condition.getRight());
+				return null;
+			}
+
+			@Override
+			public Void visitMatchesCondition(MatchesCondition condition) {
+				scores.add(condition.getScore());
+				return null;
+			}
+		});
+		return scores;
+	}
+
+	public static Set<Score> getScores(Instruction instruction) {
+		Set<Score> scores = getReads(instruction);
+		scores.addAll(getWrites(instruction));
+		return scores;
+	}
+
+	// The scores whose value may be observed by the instruction
+	public static Set<Score> getReads(Instruction instruction) {
+		Set<Score> reads = new LinkedHashSet<>();
+		instruction.accept(new InstructionVisitor<Void, RuntimeException>() {
+			@Override
+			public Void visitAddInstruction(AddInstruction instruction) {
+				reads.add(instruction.getTarget());
+				return null;
+			}
+
+			@Override
+			public Void visitOperationInstruction(OperationInstruction instruction) {
+				if (instruction.getOperator() != ScoreOperator.ASSIGN) {
+					reads.add(instruction.getTarget());
+				}
+				reads.add(instruction.getSource());
+				return null;
+			}
+
+			@Override
+			public Void visitExecuteInstruction(ExecuteInstruction instruction) {
+				for (Condition condition : instruction.getConditions()) {
+					reads.addAll(getScores(condition));
+				}
+				Instruction body = instruction.getBody();
+				if (body != null) {
+					reads.addAll(getReads(body));
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitParkFrameInstruction(ParkFrameInstruction instruction) {
+				for (int i = 0, size = instruction.getSize(); i <= size; i++) {
+					reads.add(new PlayerScore("#cr", "cr_" + i));
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitSaveDataInstruction(SaveDataInstruction instruction) {
+				reads.add(instruction.getSource());
+				return null;
+			}
+		});
+		return reads;
+	}
+
+	// The scores whose value may be changed by the instruction
+	public static Set<Score> getWrites(Instruction instruction) {
+		Set<Score> writes = new LinkedHashSet<>();
+		instruction.accept(new InstructionVisitor<Void, RuntimeException>() {
+			@Override
+			public Void visitSetInstruction(SetInstruction instruction) {
+				writes.add(instruction.getTarget());
+				return null;
+			}
+
+			@Override
+			public Void visitAddInstruction(AddInstruction instruction) {
+				writes.add(instruction.getTarget());
+				return null;
+			}
+
+			@Override
+			public Void visitOperationInstruction(OperationInstruction instruction) {
+				writes.add(instruction.getTarget());
+				if (instruction.getOperator() == ScoreOperator.SWAP) {
+					writes.add(instruction.getSource());
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitExecuteInstruction(ExecuteInstruction instruction) {
+				Score store = instruction.getStore();
+				if (store != null) {
+					writes.add(store);
+				}
+				Instruction body = instruction.getBody();
+				if (body != null) {
+					writes.addAll(getWrites(body));
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitLoadDataInstruction(LoadDataInstruction instruction) {
+				writes.add(instruction.getTarget());
+				return null;
+			}
+		});
+		return writes;
+	}
+
+	// The scores which are always overwritten by the instruction without their previous value being observed
+	public static Set<Score> getKills(Instruction instruction) {
+		Set<Score> kills = new LinkedHashSet<>();
+		instruction.accept(new InstructionVisitor<Void, RuntimeException>() {
+			@Override
+			public Void visitSetInstruction(SetInstruction instruction) {
+				kills.add(instruction.getTarget());
+				return null;
+			}
+
+			@Override
+			public Void visitOperationInstruction(OperationInstruction instruction) {
+				if (instruction.getOperator() == ScoreOperator.ASSIGN) {
+					kills.add(instruction.getTarget());
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitExecuteInstruction(ExecuteInstruction instruction) {
+				// A store is only guaranteed to happen when the chain can't stop before its last condition
+				Score store = instruction.getStore();
+				if (store != null && instruction.getBody() == null && instruction.getConditions().size() == 1 && !getScores(instruction.getConditions().get(0)).contains(store)) {
+					kills.add(store);
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitLoadDataInstruction(LoadDataInstruction instruction) {
+				kills.add(instruction.getTarget());
+				return null;
+			}
+		});
+		return kills;
+	}
+
+	// Whether the instruction may observe or change scores other than the ones it explicitly references
+	public static boolean isBarrier(Instruction instruction) {
+		return instruction.accept(new InstructionVisitor<Boolean, RuntimeException>() {
+			@Override
+			public Boolean visitSetInstruction(SetInstruction instruction) {
+				return false;
+			}
+
+			@Override
+			public Boolean visitAddInstruction(AddInstruction instruction) {
+				return false;
+			}
+
+			@Override
+			public Boolean visitOperationInstruction(OperationInstruction instruction) {
+				return false;
+			}
+
+			@Override
+			public Boolean visitExecuteInstruction(ExecuteInstruction instruction) {
+				Instruction body = instruction.getBody();
+				return body != null && isBarrier(body);
+			}
+
+			@Override
+			public Boolean visitCallInstruction(CallInstruction instruction) {
+				return true;
+			}
+
+			@Override
+			public Boolean visitCommandInstruction(CommandInstruction instruction) {
+				return true;
+			}
+
+			@Override
+			public Boolean visitPushFrameInstruction(PushFrameInstruction instruction) {
+				return true;
+			}
+
+			@Override
+			public Boolean visitPopFrameInstruction(PopFrameInstruction instruction) {
+				return true;
+			}
+
+			@Override
+			public Boolean visitParkFrameInstruction(ParkFrameInstruction instruction) {
+				return true;
+			}
+
+			@Override
+			public Boolean visitSetDataInstruction(SetDataInstruction instruction) {
+				return false;
+			}
+
+			@Override
+			public Boolean visitCopyDataInstruction(CopyDataInstruction instruction) {
+				return false;
+			}
+
+			@Override
+			public Boolean visitLoadDataInstruction(LoadDataInstruction instruction) {
+				return false;
+			}
+
+			@Override
+			public Boolean visitSaveDataInstruction(SaveDataInstruction instruction) {
+				return false;
+			}
+		});
+	}
+
+	// The data locations read or written by the instruction
+	public static Set<DataLocation> getLocations(Instruction instruction) {
+		Set<DataLocation> locations = new LinkedHashSet<>();
+		instruction.accept(new InstructionVisitor<Void, RuntimeException>() {
+			@Override
+			public Void visitExecuteInstruction(ExecuteInstruction instruction) {
+				Instruction body = instruction.getBody();
+				if (body != null) {
+					locations.addAll(getLocations(body));
+				}
+				return null;
+			}
+
+			@Override
+			public Void visitSetDataInstruction(SetDataInstruction instruction) {
+				locations.add(instruction.getTarget());
+				return null;
+			}
+
+			@Override
+			public Void visitCopyDataInstruction(CopyDataInstruction instruction) {
+				locations.add(instruction.getTarget());
+				locations.add(instruction.getSource());
+				return null;
+			}
+
+			@Override
+			public Void visitLoadDataInstruction(LoadDataInstruction instruction) {
+				locations.add(instruction.getSource());
+				return null;
+			}
+
+			@Override
+			public Void visitSaveDataInstruction(SaveDataInstruction instruction) {
+				locations.add(instruction.getTarget());
+				return null;
+			}
+		});
+		return locations;
+	}
+
+	public static Condition map(Condition condition, Function<Score, Score> mapper) {
+		return condition.accept(new ConditionVisitor<Condition, RuntimeException>() {
+			@Override
+			public Condition visitComparisonCondition(ComparisonCondition condition) {
+				return new ComparisonCondition(condition.isNegated(), mapper.apply(condition.getLeft()), condition.getOperator(), mapper.apply(condition.getRight()));
+			}
+
+			@Override
+			public Condition visitMatchesCondition(MatchesCondition condition) {
+				return new MatchesCondition(condition.isNegated(), mapper.apply(condition.getScore()), condition.getMin(), condition.getMax());
+			}
+		});
+	}
+
+	// Replaces every score referenced by the instruction. Reading and writing positions are mapped separately
+	public static Instruction map(Instruction instruction, Function<Score, Score> readMapper, Function<Score, Score> writeMapper) {
+		return instruction.accept(new InstructionVisitor<Instruction, RuntimeException>() {
+			@Override
+			public Instruction visitSetInstruction(SetInstruction instruction) {
+				return new SetInstruction(writeMapper.apply(instruction.getTarget()), instruction.getValue());
+			}
+
+			@Override
+			public Instruction visitAddInstruction(AddInstruction instruction) {
+				Score target = instruction.getTarget();
+				if (!readMapper.apply(target).equals(writeMapper.apply(target))) {
+					return instruction;
+				}
+				return new AddInstruction(writeMapper.apply(target), instruction.getValue());
+			}
+
+			@Override
+			public Instruction visitOperationInstruction(OperationInstruction instruction) {
+				ScoreOperator operator = instruction.getOperator();
+				Score target = instruction.getTarget();
+				Score source = instruction.getSource();
+
+				// Read-modify-write operands can only be replaced if both mappings agree
+				if (operator != ScoreOperator.ASSIGN && !readMapper.apply(target).equals(writeMapper.apply(target))) {
+					return instruction;
+				}
+				if (operator == ScoreOperator.SWAP && !readMapper.apply(source).equals(writeMapper.apply(source))) {
+					return instruction;
+				}
+
+				return new OperationInstruction(writeMapper.apply(target), operator, readMapper.apply(source));
+			}
+
+			@Override
+			public Instruction visitExecuteInstruction(ExecuteInstruction instruction) {
+				List<Condition> conditions = new ArrayList<>();
+				for (Condition condition : instruction.getConditions()) {
+					conditions.add(map(condition, readMapper));
+				}
+				Score store = instruction.getStore();
+				Instruction body = instruction.getBody();
+				return new ExecuteInstruction(
+					conditions,
+					store != null ? writeMapper.apply(store) : null,
+					body != null ? map(body, readMapper, writeMapper) : null
+				);
+			}
+
+			@Override
+			public Instruction visitCallInstruction(CallInstruction instruction) {
+				return instruction;
+			}
+
+			@Override
+			public Instruction visitCommandInstruction(CommandInstruction instruction) {
+				return instruction;
+			}
+
+			@Override
+			public Instruction visitPushFrameInstruction(PushFrameInstruction instruction) {
+				return instruction;
+			}
+
+			@Override
+			public Instruction visitPopFrameInstruction(PopFrameInstruction instruction) {
+				return instruction;
+			}
+
+			@Override
+			public Instruction visitParkFrameInstruction(ParkFrameInstruction instruction) {
+				return instruction;
+			}
+
+			@Override
+			public Instruction visitSetDataInstruction(SetDataInstruction instruction) {
+				return instruction;
+			}
+
+			@Override
+			public Instruction visitCopyDataInstruction(CopyDataInstruction instruction) {
+				return instruction;
+			}
+
+			@Override
+			public Instruction visitLoadDataInstruction(LoadDataInstruction instruction) {
+				return new LoadDataInstruction(writeMapper.apply(instruction.getTarget()), instruction.getSource());
+			}
+
+			@Override
+			public Instruction visitSaveDataInstruction(SaveDataInstruction instruction) {
+				return new SaveDataInstruction(instruction.getTarget(), readMapper.apply(instruction.getSource()));
+			}
+		});
+	}
+
+	public static Instruction map(Instruction instruction, Function<Score, Score> mapper) {
+		return map(instruction, mapper, mapper);
+	}
+
+	// Replaces the function called by the instruction, if any
+	public static Instruction mapCalls(Instruction instruction, Function<FQN, FQN> mapper) {
+		if (instruction instanceof CallInstruction) {
+			CallInstruction call = (CallInstruction) instruction;
+			return new CallInstruction(mapper.apply(call.getFunctionFQN()), call.getStorage());
+		}
+		if (instruction instanceof ExecuteInstruction) {
+			ExecuteInstruction execute = (ExecuteInstruction) instruction;
+			Instruction body = execute.getBody();
+			if (body != null) {
+				return new ExecuteInstruction(execute.getConditions(), execute.getStore(), mapCalls(body, mapper));
+			}
+		}
+		return instruction;
+	}
+
+	// The function called or scheduled by the instruction, if any
+	public static FQN getCall(Instruction instruction) {
+		if (instruction instanceof ExecuteInstruction) {
+			Instruction body = ((ExecuteInstruction) instruction).getBody();
+			return body != null ? getCall(body) : null;
+		}
+		if (instruction instanceof ParkFrameInstruction) {
+			return ((ParkFrameInstruction) instruction).getResumeFQN();
+		}
+		return instruction instanceof CallInstruction ? ((CallInstruction) instruction).getFunctionFQN() : null;
+	}
+}
\ No newline at end of file
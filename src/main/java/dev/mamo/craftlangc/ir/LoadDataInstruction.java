@@ -0,0 +1,51 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+// Reads a number from the data into a score. A missing tag reads as 0
+public class LoadDataInstruction implements Instruction, Serializable {
+	private final Score target;
+	private final DataLocation source;
+
+	public LoadDataInstruction(Score target, DataLocation source) {
+		this.target = Objects.requireNonNull(target);
+		this.source = Objects.requireNonNull(source);
+	}
+
+	public Score getTarget() {
+		return target;
+	}
+
+	public DataLocation getSource() {
+		return source;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitLoadDataInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof LoadDataInstruction)) {
+			return false;
+		}
+		LoadDataInstruction instruction = (LoadDataInstruction) obj;
+		return instruction.getTarget().equals(getTarget())
+			&& instruction.getSource().equals(getSource());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getTarget(),
+			getSource()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return "load " + getTarget() + " = " + getSource();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+public class MatchesCondition implements Condition, Serializable {
+	private final boolean negated;
+	private final Score score;
+	private final Integer min;
+	private final Integer max;
+
+	public MatchesCondition(boolean negated, Score score, Integer min, Integer max) {
+		if (min == null && max == null) {
+			throw new IllegalArgumentException("At least one bound is required");
+		}
+		this.negated = negated;
+		this.score = Objects.requireNonNull(score);
+		this.min = min;
+		this.max = max;
+	}
+
+	public MatchesCondition(boolean negated, Score score, int value) {
+		this(negated, score, value, value);
+	}
+
+	@Override
+	public boolean isNegated() {
+		return negated;
+	}
+
+	public Score getScore() {
+		return score;
+	}
+
+	public Integer getMin() {
+		return min;
+	}
+
+	public Integer getMax() {
+		return max;
+	}
+
+	public String getRange() {
+		Integer min = getMin();
+		Integer max = getMax();
+		if (min != null && min.equals(max)) {
+			return min.toString();
+		}
+		return (min != null ? min.toString() : "") + ".." + (max != null ? max.toString() : "");
+	}
+
+	@Override
+	public MatchesCondition negate() {
+		return new MatchesCondition(!isNegated(), getScore(), getMin(), getMax());
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(ConditionVisitor<T, E> visitor) throws E {
+		return visitor.visitMatchesCondition(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof MatchesCondition)) {
+			return false;
+		}
+		MatchesCondition condition = (MatchesCondition) obj;
+		return condition.isNegated() == isNegated()
+			&& condition.getScore().equals(getScore())
+			&& Objects.equals(condition.getMin(), getMin())
+			&& Objects.equals(condition.getMax(), getMax());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			isNegated(),
+			getScore(),
+			getMin(),
+			getMax()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return (isNegated() ? "unless " : "if ") + getScore() + " matches " + getRange();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,58 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+public class OperationInstruction implements Instruction, Serializable {
+	private final Score target;
+	private final ScoreOperator operator;
+	private final Score source;
+
+	public OperationInstruction(Score target, ScoreOperator operator, Score source) {
+		this.target = Objects.requireNonNull(target);
+		this.operator = Objects.requireNonNull(operator);
+		this.source = Objects.requireNonNull(source);
+	}
+
+	public Score getTarget() {
+		return target;
+	}
+
+	public ScoreOperator getOperator() {
+		return operator;
+	}
+
+	public Score getSource() {
+		return source;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitOperationInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof OperationInstruction)) {
+			return false;
+		}
+		OperationInstruction instruction = (OperationInstruction) obj;
+		return instruction.getTarget().equals(getTarget())
+			&& instruction.getOperator().equals(getOperator())
+			&& instruction.getSource().equals(getSource());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getTarget(),
+			getOperator(),
+			getSource()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return getTarget() + " " + getOperator().getSymbol() + ' ' + getSource();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,58 @@
+package dev.mamo.craftlangc.ir;
+
+import dev.mamo.craftlangc.*;
+
+import java.io.*;
+import java.util.*;
+
+// Saves the first registers in a new entity with the given tag and schedules the function resuming it. The register
+// after them holds the number of ticks the entity has to wait for, which is counted down in its cr_id score
+public class ParkFrameInstruction implements Instruction, Serializable {
+	private final String tag;
+	private final int size;
+	private final FQN resumeFQN;
+
+	public ParkFrameInstruction(String tag, int size, FQN resumeFQN) {
+		this.tag = Objects.requireNonNull(tag);
+		this.size = size;
+		this.resumeFQN = Objects.requireNonNull(resumeFQN);
+	}
+
+	public String getTag() {
+		return tag;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public FQN getResumeFQN() {
+		return resumeFQN;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitParkFrameInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ParkFrameInstruction)) {
+			return false;
+		}
+		ParkFrameInstruction instruction = (ParkFrameInstruction) obj;
+		return instruction.getTag().equals(getTag())
+			&& instruction.getSize() == getSize()
+			&& instruction.getResumeFQN().equals(getResumeFQN());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getTag(), getSize(), getResumeFQN());
+	}
+
+	@Override
+	public String toString() {
+		return "park frame " + getTag() + ' ' + getSize() + " until " + getResumeFQN();
+	}
+}
\ No newline at end of file
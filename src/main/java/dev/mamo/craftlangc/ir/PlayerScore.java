@@ -0,0 +1,52 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+public class PlayerScore implements Score, Serializable {
+	private final String holder;
+	private final String objective;
+
+	public PlayerScore(String holder, String objective) {
+		this.holder = Objects.requireNonNull(holder);
+		this.objective = Objects.requireNonNull(objective);
+	}
+
+	@Override
+	public String getHolder() {
+		return holder;
+	}
+
+	@Override
+	public String getObjective() {
+		return objective;
+	}
+
+	@Override
+	public boolean isTemporary() {
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PlayerScore)) {
+			return false;
+		}
+		PlayerScore score = (PlayerScore) obj;
+		return score.getHolder().equals(getHolder())
+			&& score.getObjective().equals(getObjective());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getHolder(),
+			getObjective()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return getHolder() + ' ' + getObjective();
+	}
+}
\ No newline at end of file
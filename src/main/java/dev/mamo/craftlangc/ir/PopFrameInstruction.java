@@ -0,0 +1,25 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+
+public class PopFrameInstruction implements Instruction, Serializable {
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitPopFrameInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof PopFrameInstruction;
+	}
+
+	@Override
+	public int hashCode() {
+		return PopFrameInstruction.class.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "pop frame";
+	}
+}
\ No newline at end of file
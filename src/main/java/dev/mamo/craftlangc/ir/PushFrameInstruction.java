@@ -0,0 +1,25 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+
+public class PushFrameInstruction implements Instruction, Serializable {
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitPushFrameInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof PushFrameInstruction;
+	}
+
+	@Override
+	public int hashCode() {
+		return PushFrameInstruction.class.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "push frame";
+	}
+}
\ No newline at end of file
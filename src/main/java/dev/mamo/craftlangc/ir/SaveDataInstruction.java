@@ -0,0 +1,51 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+// Writes the value of a score into the data as an int tag
+public class SaveDataInstruction implements Instruction, Serializable {
+	private final DataLocation target;
+	private final Score source;
+
+	public SaveDataInstruction(DataLocation target, Score source) {
+		this.target = Objects.requireNonNull(target);
+		this.source = Objects.requireNonNull(source);
+	}
+
+	public DataLocation getTarget() {
+		return target;
+	}
+
+	public Score getSource() {
+		return source;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitSaveDataInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SaveDataInstruction)) {
+			return false;
+		}
+		SaveDataInstruction instruction = (SaveDataInstruction) obj;
+		return instruction.getTarget().equals(getTarget())
+			&& instruction.getSource().equals(getSource());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getTarget(),
+			getSource()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return "save " + getTarget() + " = " + getSource();
+	}
+}
\ No newline at end of file
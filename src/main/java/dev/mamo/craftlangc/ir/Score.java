@@ -0,0 +1,9 @@
+package dev.mamo.craftlangc.ir;
+
+public interface Score {
+	String getHolder();
+
+	String getObjective();
+
+	boolean isTemporary();
+}
\ No newline at end of file
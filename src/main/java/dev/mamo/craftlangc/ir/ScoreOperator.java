@@ -0,0 +1,23 @@
+package dev.mamo.craftlangc.ir;
+
+public enum ScoreOperator {
+	ASSIGN("="),
+	ADD("+="),
+	SUBTRACT("-="),
+	MULTIPLY("*="),
+	DIVIDE("/="),
+	REMAINDER("%="),
+	MIN("<"),
+	MAX(">"),
+	SWAP("><");
+
+	private final String symbol;
+
+	ScoreOperator(String symbol) {
+		this.symbol = symbol;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+}
\ No newline at end of file
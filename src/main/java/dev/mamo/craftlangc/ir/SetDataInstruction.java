@@ -0,0 +1,51 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+// Sets a tag to a constant written in SNBT, such as a compound with all of its members
+public class SetDataInstruction implements Instruction, Serializable {
+	private final DataLocation target;
+	private final String value;
+
+	public SetDataInstruction(DataLocation target, String value) {
+		this.target = Objects.requireNonNull(target);
+		this.value = Objects.requireNonNull(value);
+	}
+
+	public DataLocation getTarget() {
+		return target;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitSetDataInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SetDataInstruction)) {
+			return false;
+		}
+		SetDataInstruction instruction = (SetDataInstruction) obj;
+		return instruction.getTarget().equals(getTarget())
+			&& instruction.getValue().equals(getValue());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getTarget(),
+			getValue()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return "set " + getTarget() + " " + getValue();
+	}
+}
\ No newline at end of file
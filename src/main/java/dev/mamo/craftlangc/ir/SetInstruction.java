@@ -0,0 +1,50 @@
+package dev.mamo.craftlangc.ir;
+
+import java.io.*;
+import java.util.*;
+
+public class SetInstruction implements Instruction, Serializable {
+	private final Score target;
+	private final int value;
+
+	public SetInstruction(Score target, int value) {
+		this.target = Objects.requireNonNull(target);
+		this.value = value;
+	}
+
+	public Score getTarget() {
+		return target;
+	}
+
+	public int getValue() {
+		return value;
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(InstructionVisitor<T, E> visitor) throws E {
+		return visitor.visitSetInstruction(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SetInstruction)) {
+			return false;
+		}
+		SetInstruction instruction = (SetInstruction) obj;
+		return instruction.getTarget().equals(getTarget())
+			&& instruction.getValue() == getValue();
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getTarget(),
+			getValue()
+		);
+	}
+
+	@Override
+	public String toString() {
+		return "set " + getTarget() + ' ' + getValue();
+	}
+}
\ No newline at end of file
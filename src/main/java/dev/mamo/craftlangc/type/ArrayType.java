@@ -0,0 +1,64 @@
+package dev.mamo.craftlangc.type;
+
+import java.io.*;
+import java.util.*;
+
+// A fixed number of elements of the same type, laid out one after the other
+public class ArrayType implements Type, Serializable {
+	private final Type elementType;
+	private final int length;
+
+	public ArrayType(Type elementType, int length) {
+		if (length <= 0) {
+			throw new IllegalArgumentException("An array needs at least one element");
+		}
+		this.elementType = Objects.requireNonNull(elementType);
+		this.length = length;
+	}
+
+	public Type getElementType() {
+		return elementType;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public boolean isPrimitive() {
+		return false;
+	}
+
+	@Override
+	public boolean isRecursive() {
+		return getElementType().isRecursive();
+	}
+
+	@Override
+	public int size() {
+		return getElementType().size() * getLength();
+	}
+
+	@Override
+	public <T, E extends Throwable> T accept(TypeVisitor<T, E> visitor) throws E {
+		return visitor.visitArrayType(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ArrayType)) {
+			return false;
+		}
+		ArrayType type = (ArrayType) obj;
+		return type.getElementType().equals(getElementType())
+			&& type.getLength() == getLength();
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(
+			getElementType(),
+			getLength()
+		);
+	}
+}
\ No newline at end of file
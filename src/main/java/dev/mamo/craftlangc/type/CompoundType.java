@@ -21,6 +21,11 @@ public class CompoundType implements Type, Serializable {
 			}
 			return false;
 		}
+
+		@Override
+		public Boolean visitArrayType(ArrayType type) {
+			return type.getElementType() == CompoundType.this || type.getElementType().accept(this);
+		}
 	};
 
 	public CompoundType(Map<String, Type> members) {
@@ -35,6 +40,18 @@ public class CompoundType implements Type, Serializable {
 		return members;
 	}
 
+	// The position of the first score of the member among the scores of the type, or -1 if there's no such member
+	public int getOffset(String name) {
+		int offset = 0;
+		for (Entry<String, Type> entry : getMembers().entrySet()) {
+			if (entry.getKey().equals(name)) {
+				return offset;
+			}
+			offset += entry.getValue().size();
+		}
+		return -1;
+	}
+
 	@Override
 	public boolean isPrimitive() {
 		return false;
@@ -52,7 +69,11 @@ public class CompoundType implements Type, Serializable {
 
 	@Override
 	public int size() {
-		return getMembers().size();
+		int size = 0;
+		for (Type member : getMembers().values()) {
+			size += member.size();
+		}
+		return size;
 	}
 
 	@Override
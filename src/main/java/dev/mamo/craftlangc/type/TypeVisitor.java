@@ -8,4 +8,8 @@ public interface TypeVisitor<T, E extends Throwable> {
 	default T visitCompoundType(CompoundType type) throws E {
 		return null;
 	}
+
+	default T visitArrayType(ArrayType type) throws E {
+		return null;
+	}
 }
\ No newline at end of file